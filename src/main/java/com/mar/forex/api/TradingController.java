@@ -2,44 +2,75 @@ package com.mar.forex.api;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.UUID;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mar.forex.config.AppProperties;
+import com.mar.forex.config.PropsOverrides;
 import com.mar.forex.domain.model.Candle;
+import com.mar.forex.domain.model.CurvePage;
+import com.mar.forex.domain.model.JobPriority;
 import com.mar.forex.domain.model.JobResponse;
+import com.mar.forex.domain.model.JobStatus;
+import com.mar.forex.domain.model.ResultComparison;
+import com.mar.forex.domain.model.ResultMeta;
+import com.mar.forex.domain.model.StoredResult;
+import com.mar.forex.domain.model.SweepGrid;
+import com.mar.forex.domain.model.SweepRow;
+import com.mar.forex.domain.model.TrainResult;
 import com.mar.forex.infrastructure.messaging.SseHub;
+import com.mar.forex.infrastructure.storage.ResultStore;
 import com.mar.forex.service.DataService;
 import com.mar.forex.service.MLService;
 import com.mar.forex.service.BacktesterService;
+import com.mar.forex.service.JobKeys;
+import com.mar.forex.service.JobScheduler;
+import com.mar.forex.service.PortfolioBacktestService;
+import com.mar.forex.service.SweepService;
+import com.mar.forex.util.BacktestUtils;
 
 @RestController
 @RequestMapping("/api/v1")
 @RequiredArgsConstructor
 @Slf4j
 public class TradingController {
+    private static final int MAX_CURVE_PAGE = 50_000;
 
     private final AppProperties props;
+    private final PropsOverrides propsOverrides;
     private final MLService mlService;
     private final BacktesterService backtesterService;
+    private final PortfolioBacktestService portfolioBacktestService;
+    private final SweepService sweepService;
     private final DataService dataService;
 
-    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final JobScheduler scheduler;
 
     private final SseHub hub;
 
+    private final ResultStore resultStore;
+
+    private final JobKeys jobKeys;
+
     private final ObjectMapper objectMapper;
 
     @GetMapping("/config")
@@ -49,155 +80,256 @@ public class TradingController {
 
     @PostMapping("/train")
     public JobResponse train(
-            @RequestBody(required = false) JsonNode body
+            @RequestBody(required = false) JsonNode body,
+            @RequestParam(defaultValue = "TRAIN") JobPriority priority
     ) {
-        AppProperties incoming = (body != null) ? objectMapper.convertValue(body, AppProperties.class) : null;
-
-        if (incoming != null) {
-            try {
-                if (incoming.getTrading() != null) {
-                    objectMapper.updateValue(props.getTrading(), incoming.getTrading());
-                }
-                if (incoming.getPaper() != null) {
-                    objectMapper.updateValue(props.getPaper(), incoming.getPaper());
-                }
-                if (incoming.getMarketData() != null) {
-                    objectMapper.updateValue(props.getMarketData(), incoming.getMarketData());
-                }
-                if (incoming.getExecution() != null) {
-                    objectMapper.updateValue(props.getExecution(), incoming.getExecution());
-                }
-                if (incoming.getRisk() != null) {
-                    objectMapper.updateValue(props.getRisk(), incoming.getRisk());
-                }
-                if (incoming.getFilter() != null) {
-                    objectMapper.updateValue(props.getFilter(), incoming.getFilter());
-                }
-            } catch (JsonMappingException e) {
-                throw new RuntimeException(e);
-            }
-        }
+        AppProperties cfg = propsOverrides.snapshot(body);
 
-        String jobId = "train-" + System.currentTimeMillis();
-        pool.submit(() -> {
-            try {
-                List<Candle> candles = dataService.loadCandlesPaged(
-                    props.getTrading().getInstrument(),
-                    props.getTrading().getGranularity(),
-                    candlesCountFromYears(props.getTraining().getYears(),
-                        props.getTrading().getGranularity(), props.getTrading().getWarmup())
-                );
-                mlService.trainClassifier(
-                    candles,
-                    props.getTrading().getInstrument(),
-                    props.getTrading().getFastSma(),
-                    props.getTrading().getSlowSma(),
-                    props.getPaper().getAtrPeriod()
-                );
-            } catch (Exception e) {
-                emit(jobId, e.getMessage());
-            } finally {
-                complete(jobId);
-            }
-        });
+        String jobId = newJobId("train");
+        int count = BacktestUtils.candlesCountFromYears(cfg.getTraining().getYears(),
+            cfg.getTrading().getGranularity(), cfg.getTrading().getWarmup());
+        // training rewrites the model and calibration files, so it is single-flighted but never answered from cache
+        String key = jobKeys.trainKey(cfg, count);
+        String submitted = scheduler.submitOnce(key, jobId, priority, () -> {
+            List<Candle> candles = dataService.loadCandlesPaged(
+                cfg.getTrading().getInstrument(),
+                cfg.getTrading().getGranularity(),
+                count
+            );
+            TrainResult tr = mlService.trainClassifier(
+                cfg,
+                candles,
+                cfg.getTrading().getInstrument(),
+                cfg.getTrading().getFastSma(),
+                cfg.getTrading().getSlowSma(),
+                cfg.getPaper().getAtrPeriod()
+            );
+            Map<String, Object> metrics = mlService.summarize(tr);
+            resultStore.save(new StoredResult(jobId, "train", key, Instant.now(), cfg.getTrading().getInstrument(),
+                cfg.getTrading().getGranularity(), metrics, resultStore.configOf(cfg), new double[0], new double[0],
+                List.of()));
+            hub.emit(jobId, "result", objectMapper.writeValueAsString(metrics));
+        }, (state, error) -> finish(jobId, state, error));
 
-        return new JobResponse(jobId);
+        return response(jobId, submitted);
     }
 
     @PostMapping("/backtest")
     public JobResponse backtest(
+        @RequestBody(required = false) JsonNode body,
+        @RequestParam(defaultValue = "BACKTEST") JobPriority priority
+    ) {
+        AppProperties cfg = propsOverrides.snapshot(body);
+
+        String jobId = newJobId("bt");
+        int count = BacktestUtils.candlesCountFromYears(cfg.getTraining().getYears(), cfg.getTrading().getGranularity(),
+            cfg.getTrading().getWarmup());
+        String key = jobKeys.backtestKey("backtest", cfg, count);
+        var cached = resultStore.findByKey(key);
+        if (cached.isPresent()) return cached(cached.get().jobId());
+
+        String submitted = scheduler.submitOnce(key, jobId, priority, () -> {
+            List<Candle> candles = dataService.loadCandlesPaged(
+                cfg.getTrading().getInstrument(),
+                cfg.getTrading().getGranularity(),
+                count
+            );
+            backtesterService.runForUI(cfg, candles, jobId, key);
+        }, (state, error) -> finish(jobId, state, error));
+        return response(jobId, submitted);
+    }
+
+    @PostMapping("/backtest/portfolio")
+    public JobResponse backtestPortfolio(
         @RequestBody(required = false) JsonNode body
     ) {
-        AppProperties incoming = (body != null) ? objectMapper.convertValue(body, AppProperties.class) : null;
+        AppProperties cfg = propsOverrides.snapshot(body);
 
-        if (incoming != null) {
-            try {
-                if (incoming.getTrading() != null) {
-                    objectMapper.updateValue(props.getTrading(), incoming.getTrading());
-                }
-                if (incoming.getPaper() != null) {
-                    objectMapper.updateValue(props.getPaper(), incoming.getPaper());
-                }
-                if (incoming.getMarketData() != null) {
-                    objectMapper.updateValue(props.getMarketData(), incoming.getMarketData());
-                }
-                if (incoming.getExecution() != null) {
-                    objectMapper.updateValue(props.getExecution(), incoming.getExecution());
-                }
-                if (incoming.getRisk() != null) {
-                    objectMapper.updateValue(props.getRisk(), incoming.getRisk());
-                }
-                if (incoming.getFilter() != null) {
-                    objectMapper.updateValue(props.getFilter(), incoming.getFilter());
-                }
-            } catch (JsonMappingException e) {
-                throw new RuntimeException(e);
-            }
-        }
+        String jobId = newJobId("pf");
+        List<String> instruments = List.copyOf(cfg.getPortfolio().getInstruments());
+        int count = BacktestUtils.candlesCountFromYears(cfg.getTraining().getYears(), cfg.getTrading().getGranularity(),
+            cfg.getTrading().getWarmup());
+        String key = jobKeys.backtestKey("portfolio", cfg, count);
+        var cached = resultStore.findByKey(key);
+        if (cached.isPresent()) return cached(cached.get().jobId());
 
-        String jobId = "bt-" + System.currentTimeMillis();
-        pool.submit(() -> {
-            try {
-                List<Candle> candles = dataService.loadCandlesPaged(
-                    props.getTrading().getInstrument(),
-                    props.getTrading().getGranularity(),
-                    candlesCountFromYears(props.getTraining().getYears(), props.getTrading().getGranularity(),
-                        props.getTrading().getWarmup())
-                );
-                backtesterService.runForUI(candles, jobId);
-            } catch (Exception e) {
-                emit(jobId, e.getMessage());
-            } finally {
-                complete(jobId);
-            }
-        });
+        String submitted = scheduler.submitOnce(key, jobId, JobPriority.EXPLORATORY,
+            () -> portfolioBacktestService.run(cfg, instruments, count, jobId, key),
+            (state, error) -> finish(jobId, state, error));
+        return response(jobId, submitted);
+    }
+
+    @PostMapping("/sweep")
+    public JobResponse sweep(
+        @RequestBody(required = false) JsonNode body
+    ) {
+        // one body: the grid fields at the top level, config overrides in their sections beside them
+        SweepGrid effective = (body != null && body.isObject())
+            ? objectMapper.convertValue(body, SweepGrid.class)
+            : new SweepGrid();
+        AppProperties cfg = propsOverrides.snapshot(body);
+        String jobId = newJobId("sweep");
+        scheduler.submit(jobId, JobPriority.EXPLORATORY, () -> {
+            List<Candle> candles = dataService.loadCandlesPaged(
+                cfg.getTrading().getInstrument(),
+                cfg.getTrading().getGranularity(),
+                BacktestUtils.candlesCountFromYears(cfg.getTraining().getYears(), cfg.getTrading().getGranularity(),
+                    cfg.getTrading().getWarmup())
+            );
+            List<SweepRow> rows = sweepService.sweep(cfg, candles, effective);
+            hub.emit(jobId, "result", objectMapper.writeValueAsString(Map.of("rows", rows)));
+        }, (state, error) -> finish(jobId, state, error));
         return new JobResponse(jobId);
     }
 
+    @GetMapping("/jobs")
+    public List<JobStatus> jobs() {
+        return scheduler.list();
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public JobStatus job(@PathVariable String jobId) {
+        return scheduler.status(jobId)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown job " + jobId));
+    }
+
+    @DeleteMapping("/jobs/{jobId}")
+    public JobStatus cancel(@PathVariable String jobId) {
+        return scheduler.cancel(jobId)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown job " + jobId));
+    }
+
     @GetMapping(path = "/stream/{jobId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter streamPath(@PathVariable String jobId) {
-        return hub.connect(jobId);
+    public SseEmitter streamPath(@PathVariable String jobId,
+                                 @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return hub.connect(jobId, lastEventId);
     }
 
     @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter stream(@RequestParam String jobId) {
-        return hub.connect(jobId);
+    public SseEmitter stream(@RequestParam String jobId,
+                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return hub.connect(jobId, lastEventId);
     }
 
+    /**
+     * The stored result of a completed job, or the latest streamed event of one that is still running.
+     */
     @GetMapping(value = "/result/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getResult(@PathVariable String jobId) {
-        return hub.getLast(jobId);
+    public String getResult(
+        @PathVariable String jobId,
+        @RequestParam(required = false) Integer points
+    ) throws JsonProcessingException {
+        var stored = resultStore.load(jobId);
+        int resolution = points != null ? points : props.getResults().getCurvePoints();
+        return stored.isPresent()
+            ? objectMapper.writeValueAsString(view(stored.get(), resolution))
+            : hub.getLast(jobId);
     }
 
-    private void emit(String jobId, String data) {
-        hub.emit(jobId, "error", data);
+    /**
+     * Pages through a stored full-resolution curve ({@code equityCurve} or {@code equityCurveUSD}).
+     */
+    @GetMapping("/result/{jobId}/curve")
+    public CurvePage getCurve(
+        @PathVariable String jobId,
+        @RequestParam(defaultValue = "equityCurve") String series,
+        @RequestParam(defaultValue = "0") int offset,
+        @RequestParam(defaultValue = "5000") int limit
+    ) {
+        StoredResult r = resultStore.load(jobId)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown result " + jobId));
+        double[] full = switch (series) {
+            case "equityCurve" -> r.equityCurve();
+            case "equityCurveUSD" -> r.equityCurveUSD();
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown series " + series);
+        };
+        int from = Math.max(0, Math.min(offset, full.length));
+        int to = Math.min(full.length, from + Math.max(0, Math.min(limit, MAX_CURVE_PAGE)));
+        return new CurvePage(jobId, series, from, full.length, Arrays.copyOfRange(full, from, to));
     }
 
-    private void complete(String jobId) {
-        hub.complete(jobId);
+    @GetMapping("/results")
+    public List<ResultMeta> results(
+        @RequestParam(required = false) String kind,
+        @RequestParam(defaultValue = "50") int limit
+    ) {
+        return resultStore.list(kind, limit);
     }
 
-    private int candlesCountFromYears(int years, String granularity, int warmup) {
-        int perDay;
-        try {
-            if (granularity.startsWith("M")) {
-                int minutes = Integer.parseInt(granularity.substring(1));
-                perDay = (24 * 60) / Math.max(1, minutes);
-            } else if (granularity.startsWith("H")) {
-                int hours = Integer.parseInt(granularity.substring(1));
-                perDay = 24 / Math.max(1, hours);
-            } else if (granularity.equals("D")) {
-                perDay = 1;
-            } else {
-                // default assume M5
-                perDay = (24 * 60) / 5;
+    @GetMapping("/results/compare")
+    public ResultComparison compareResults(@RequestParam List<String> ids) {
+        for (String id : ids) {
+            if (resultStore.meta(id).isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown result " + id);
             }
-        } catch (Exception e) {
-            // fallback to M5 if parsing fails
-            perDay = (24 * 60) / 5;
         }
-        int base = years * 365 * perDay;
-        int buffer = Math.max(500, warmup * 5);
-        return base + buffer;
+        return resultStore.compare(ids);
+    }
+
+    /**
+     * Same top-level shape as the streamed "result" event, plus the ledger and the effective config. Curves are
+     * downsampled to {@code points}; 0 returns them at full resolution.
+     */
+    private static Map<String, Object> view(StoredResult r, int points) {
+        Map<String, Object> out = new LinkedHashMap<>(r.metrics());
+        out.put("jobId", r.jobId());
+        out.put("kind", r.kind());
+        out.put("createdAt", r.createdAt());
+        out.put("instrument", r.instrument());
+        out.put("granularity", r.granularity());
+        int resolution = points > 0 ? points : Integer.MAX_VALUE;
+        BacktestUtils.putCurve(out, "equityCurve", r.equityCurve(), resolution);
+        BacktestUtils.putCurve(out, "equityCurveUSD", r.equityCurveUSD(), resolution);
+        out.put("ledger", r.ledger());
+        out.put("config", r.config());
+        return out;
+    }
+
+    // unique across concurrent submissions and restarts: the scheduler, SSE replay and result store all key on it
+    private static String newJobId(String kind) {
+        return kind + "-" + UUID.randomUUID();
+    }
+
+    private static JobResponse response(String jobId, String submitted) {
+        return submitted.equals(jobId)
+            ? new JobResponse(jobId)
+            : new JobResponse(submitted, JobResponse.Reuse.ATTACHED);
+    }
+
+    /**
+     * Answers an identical submission with the stored job. If that job's stream has already been evicted, its stored
+     * result is published again so the usual stream/result flow works unchanged.
+     */
+    private JobResponse cached(String jobId) {
+        if (!hub.isKnown(jobId)) {
+            resultStore.load(jobId).ifPresent(r -> {
+                try {
+                    var payload = view(r, props.getResults().getCurvePoints());
+                    hub.emit(jobId, "result", objectMapper.writeValueAsString(payload));
+                } catch (JsonProcessingException e) {
+                    log.warn("Could not republish result {}: {}", jobId, e.getMessage());
+                }
+                hub.complete(jobId);
+            });
+        }
+        log.info("Backtest answered from stored result | jobId={}", jobId);
+        return new JobResponse(jobId, JobResponse.Reuse.CACHED);
+    }
+
+    private void emit(String jobId, String data) {
+        hub.emit(jobId, "error", data);
+    }
+
+    private void finish(String jobId, JobStatus.State state, Throwable error) {
+        if (state == JobStatus.State.FAILED) {
+            emit(jobId, error.getMessage());
+        } else if (state == JobStatus.State.CANCELLED) {
+            hub.emit(jobId, "cancelled", "{\"jobId\":\"" + jobId + "\"}");
+        }
+        complete(jobId);
+    }
+
+    private void complete(String jobId) {
+        hub.complete(jobId);
     }
 }
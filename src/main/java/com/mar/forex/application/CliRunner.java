@@ -4,20 +4,37 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.mar.forex.config.AppProperties;
+import com.mar.forex.config.PropsOverrides;
+import com.mar.forex.infrastructure.broker.OandaPriceStream;
+import com.mar.forex.util.BacktestUtils;
+import com.mar.forex.util.ThreadModeBenchmark;
+import com.mar.forex.service.AccountState;
 import com.mar.forex.service.DataService;
+import com.mar.forex.service.HeadlessBacktestService;
+import com.mar.forex.service.IntrabarFillService;
 import com.mar.forex.service.MLService;
 import com.mar.forex.service.BacktesterService;
+import com.mar.forex.service.LiveLatency;
+import com.mar.forex.service.LiveReplay;
+import com.mar.forex.service.LiveScheduler;
 import com.mar.forex.service.LiveTradingService;
 
 @Configuration
 public class CliRunner {
 
     @Bean
-    CommandLineRunner runner(BacktesterService backtesterService, LiveTradingService live, AppProperties props, DataService data, MLService ml) {
+    CommandLineRunner runner(BacktesterService backtesterService, LiveScheduler liveScheduler, AppProperties props, DataService data, MLService ml,
+                             IntrabarFillService intrabarFill, HeadlessBacktestService headless,
+                             PropsOverrides propsOverrides, OandaPriceStream priceStream,
+                             AccountState accountState, LiveTradingService liveTrading,
+                             LiveLatency liveLatency, LiveReplay liveReplay) {
         return args -> {
             if (args.length == 0) {
-                System.out.println("Usage: backtest|train|live [--instrument EUR_USD] [--granularity M5] [--years 1]");
+                System.out.println("Usage: backtest|batch|train|live|replay|stream|fetch-intrabar|bench-threads [--instrument EUR_USD] [--granularity M5] [--years 1] [--manifest runs.json] [--out results] [--instruments EUR_USD,GBP_USD --seconds N --source POLL|STREAM] [--bars N --speed X] [--tasks 2000 --latency 50 --pool 32]");
                 return;
             }
             String cmd = args[0];
@@ -26,7 +43,22 @@ public class CliRunner {
             int years = Integer.parseInt(getArg(args, "--years", "1"));
 
             switch (cmd) {
-                case "backtest" -> { /*backtester.run(instrument, granularity, years);*/}
+                case "backtest" -> {
+                    var cfg = propsOverrides.snapshot(overrides(instrument, granularity, years));
+                    var summary = headless.run(cfg, "bt-" + System.currentTimeMillis(), java.nio.file.Path.of(getArg(args, "--out", "results")));
+                    System.out.printf("trades=%d winRate=%.1f totalR=%.2f pf=%.3f maxDDR=%.2f endBalance=%.2f%n",
+                            summary.trades(), summary.winRate(), summary.totalR(), summary.profitFactor(),
+                            summary.maxDrawdownR(), summary.endBalance());
+                }
+                case "batch" -> {
+                    String manifest = getArg(args, "--manifest", null);
+                    if (manifest == null) {
+                        System.err.println("batch requires --manifest <file.json>");
+                        return;
+                    }
+                    var results = headless.runManifest(java.nio.file.Path.of(manifest));
+                    System.out.println("Completed " + results.size() + " backtests");
+                }
                 case "train" -> {
                     var candles = data.loadCandles(instrument, granularity, Math.min(5000, years*365*24*12));
                     var tr = ml.trainClassifier(candles, instrument,
@@ -38,19 +70,90 @@ public class CliRunner {
                     System.out.println("Saved model to " + path.toAbsolutePath());
                 }
                 case "live" -> {
-                    var modelPath = new FileSystemResource("models/model.zip");
-                    if (!modelPath.exists()) {
-                        System.err.println("Missing models/model.zip. Run 'train' first.");
+                    var instruments = java.util.List.of(
+                            getArg(args, "--instruments", String.join(",", liveScheduler.configuredInstruments())).split(","));
+                    String liveGranularity = getArg(args, "--granularity", liveScheduler.configuredGranularity());
+                    long seconds = Long.parseLong(getArg(args, "--seconds", "0"));
+                    String source = getArg(args, "--source", props.getLive().getSource()).toUpperCase();
+                    try {
+                        liveScheduler.start(instruments, liveGranularity, source);
+                    } catch (IllegalStateException e) {
+                        System.err.println(e.getMessage());
                         return;
                     }
-                    live.loadModel(modelPath);
-                    live.tick(instrument, granularity);
+                    if (seconds <= 0) return; // keep running with the application
+                    Thread.sleep(seconds * 1000);
+                    liveScheduler.stop();
+                    var stats = liveScheduler.stats();
+                    System.out.printf("cycles=%d instruments=%d meanCycleMs=%.1f lastCycleMs=%d scored=%d%n",
+                            stats.cycles(), stats.instruments(), stats.meanCycleMs(), stats.lastCycleMs(), stats.scored());
+                    System.out.println("account " + accountState.stats() + " " + accountState.snapshot());
+                    System.out.println("entry rejections " + liveTrading.rejections());
+                    liveLatency.summary().forEach((stage, summary) -> System.out.println("latency " + stage + " " + summary));
+                }
+                case "replay" -> {
+                    var instruments = java.util.List.of(
+                            getArg(args, "--instruments", String.join(",", liveScheduler.configuredInstruments())).split(","));
+                    String replayGranularity = getArg(args, "--granularity", liveScheduler.configuredGranularity());
+                    int bars = Integer.parseInt(getArg(args, "--bars", "5000"));
+                    double speed = Double.parseDouble(getArg(args, "--speed", "0"));
+                    try {
+                        var candles = new java.util.LinkedHashMap<String, java.util.List<com.mar.forex.domain.model.Candle>>();
+                        for (String i : instruments) candles.put(i, data.loadCandles(i, replayGranularity, bars));
+                        var r = liveReplay.replay(candles, replayGranularity, speed);
+                        System.out.printf("bars=%d seconds=%.2f barsPerSecond=%.0f scored=%d intents=%d (not sent)%n",
+                                r.bars(), r.seconds(), r.barsPerSecond(), r.scored(), r.orders());
+                        liveLatency.summary().forEach((stage, summary) -> System.out.println("latency " + stage + " " + summary));
+                        System.out.println(r.mismatches() == 0
+                                ? "PARITY OK: " + r.compared() + " decisions (" + r.entries() + " entries) match the backtest's filter"
+                                : "PARITY FAIL: " + r.mismatches() + " of " + r.compared() + " decisions differ, first " + r.firstMismatch());
+                    } catch (IllegalStateException | IllegalArgumentException e) {
+                        System.err.println(e.getMessage());
+                    }
+                }
+                case "stream" -> {
+                    var instruments = java.util.List.of(
+                            getArg(args, "--instruments", String.join(",", liveScheduler.configuredInstruments())).split(","));
+                    long seconds = Long.parseLong(getArg(args, "--seconds", "30"));
+                    var received = new java.util.concurrent.atomic.AtomicLong();
+                    try (var sub = priceStream.subscribe(t -> received.incrementAndGet())) {
+                        priceStream.start(instruments);
+                        Thread.sleep(seconds * 1000);
+                        priceStream.stop();
+                    }
+                    var stats = priceStream.stats();
+                    System.out.printf("ticks=%d ticks/s=%.0f heartbeats=%d reconnects=%d replayedDropped=%d parseErrors=%d%n",
+                            received.get(), received.get() / (double) seconds, stats.heartbeats(), stats.reconnects(),
+                            stats.replayedDropped(), stats.parseErrors());
+                }
+                case "fetch-intrabar" -> {
+                    String fine = props.getFill().getFineGranularity();
+                    int count = BacktestUtils.barsPerDayFor(fine) * 365 * years;
+                    int written = intrabarFill.fetch(instrument, count);
+                    System.out.println("Stored " + written + " " + fine + " bars for " + instrument);
+                }
+                case "bench-threads" -> {
+                    int tasks = Integer.parseInt(getArg(args, "--tasks", "2000"));
+                    long latency = Long.parseLong(getArg(args, "--latency", "50"));
+                    int pool = Integer.parseInt(getArg(args, "--pool", String.valueOf(props.getThreads().getIoPoolSize())));
+                    for (var r : ThreadModeBenchmark.compare(tasks, latency, pool)) {
+                        System.out.printf("%-20s tasks=%d latencyMs=%d wallMs=%d tasks/s=%.0f peakPlatformThreads=%d%n",
+                                r.mode(), r.tasks(), r.latencyMs(), r.wallMs(), r.tasksPerSecond(), r.peakPlatformThreads());
+                    }
                 }
                 default -> System.out.println("Unknown command: " + cmd);
             }
         };
     }
 
+    // command-line overrides in the AppProperties-shaped body PropsOverrides merges and validates
+    private static JsonNode overrides(String instrument, String granularity, int years) {
+        ObjectNode body = JsonNodeFactory.instance.objectNode();
+        body.putObject("trading").put("instrument", instrument).put("granularity", granularity);
+        body.putObject("training").put("years", years);
+        return body;
+    }
+
     private static String getArg(String[] args, String key, String def) {
         for (int i=0;i<args.length-1;i++) {
             if (args[i].equals(key)) return args[i+1];
@@ -4,12 +4,21 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
 import org.springframework.validation.annotation.Validated;
+import com.mar.forex.domain.model.Account;
 import com.mar.forex.domain.model.Execution;
 import com.mar.forex.domain.model.Filter;
+import com.mar.forex.domain.model.Fill;
+import com.mar.forex.domain.model.Jobs;
 import com.mar.forex.domain.model.Live;
 import com.mar.forex.domain.model.MarketData;
+import com.mar.forex.domain.model.Orders;
 import com.mar.forex.domain.model.Paper;
+import com.mar.forex.domain.model.Portfolio;
+import com.mar.forex.domain.model.Replay;
+import com.mar.forex.domain.model.Resampling;
+import com.mar.forex.domain.model.Results;
 import com.mar.forex.domain.model.Risk;
+import com.mar.forex.domain.model.Threads;
 import com.mar.forex.domain.model.Trading;
 import com.mar.forex.domain.model.Training;
 import com.mar.forex.infrastructure.broker.Oanda;
@@ -45,4 +54,31 @@ public class AppProperties {
 
     @NestedConfigurationProperty
     private Filter filter = new Filter();
+
+    @NestedConfigurationProperty
+    private Portfolio portfolio = new Portfolio();
+
+    @NestedConfigurationProperty
+    private Resampling resampling = new Resampling();
+
+    @NestedConfigurationProperty
+    private Fill fill = new Fill();
+
+    @NestedConfigurationProperty
+    private Jobs jobs = new Jobs();
+
+    @NestedConfigurationProperty
+    private Threads threads = new Threads();
+
+    @NestedConfigurationProperty
+    private Replay replay = new Replay();
+
+    @NestedConfigurationProperty
+    private Results results = new Results();
+
+    @NestedConfigurationProperty
+    private Orders orders = new Orders();
+
+    @NestedConfigurationProperty
+    private Account account = new Account();
 }
@@ -1,13 +1,23 @@
 package com.mar.forex.config;
 
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import java.util.concurrent.TimeUnit;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class HttpClientConfig {
     @Bean
-    public OkHttpClient okHttpClient() {
-        return new OkHttpClient();
+    public OkHttpClient okHttpClient(IoExecutor ioExecutor, AppProperties props) {
+        // Async calls run on the shared I/O executor; keep enough idle connections for concurrent paging
+        int perHost = Math.max(5, props.getThreads().getPagingConcurrency() * 2);
+        Dispatcher dispatcher = new Dispatcher(ioExecutor.executorService());
+        dispatcher.setMaxRequestsPerHost(perHost);
+        return new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .connectionPool(new ConnectionPool(perHost, 5, TimeUnit.MINUTES))
+            .build();
     }
 }
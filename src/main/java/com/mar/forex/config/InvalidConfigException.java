@@ -0,0 +1,18 @@
+package com.mar.forex.config;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A job's configuration overrides could not be applied or failed validation.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidConfigException extends RuntimeException {
+    public InvalidConfigException(String message) {
+        super(message);
+    }
+
+    public InvalidConfigException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
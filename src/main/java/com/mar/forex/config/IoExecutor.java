@@ -0,0 +1,65 @@
+package com.mar.forex.config;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.stereotype.Component;
+
+/**
+ * Executor for blocking I/O: HTTP fetches, history paging, SSE sends, order submission.
+ *
+ * With {@code forex.threads.virtual=true} every task gets its own virtual thread, so hundreds of in-flight requests
+ * or slow stream subscribers cost no platform threads. Otherwise a fixed platform pool of
+ * {@code forex.threads.ioPoolSize} is used. CPU-bound work (backtests, training) belongs on the JobScheduler pool,
+ * never here.
+ */
+@Slf4j
+@Component
+public class IoExecutor {
+    private final ExecutorService executor;
+    private final boolean virtual;
+
+    public IoExecutor(AppProperties props) {
+        this.virtual = props.getThreads().isVirtual();
+        if (virtual) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("io-v-", 0).factory());
+        } else {
+            AtomicInteger threadNo = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(props.getThreads().getIoPoolSize(), r -> {
+                Thread t = new Thread(r, "io-" + threadNo.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        log.info("IoExecutor | mode={} poolSize={}", virtual ? "virtual" : "platform",
+            virtual ? "unbounded" : props.getThreads().getIoPoolSize());
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * The underlying executor, for libraries that take one (e.g. OkHttp's dispatcher).
+     */
+    public ExecutorService executorService() {
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
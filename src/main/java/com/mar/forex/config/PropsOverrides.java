@@ -0,0 +1,77 @@
+package com.mar.forex.config;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Builds per-job configuration snapshots from the AppProperties defaults and an AppProperties-shaped JSON body (as
+ * sent by the UI or a batch manifest).
+ *
+ * A snapshot is a private, mutable deep copy: the shared AppProperties bean is never modified, so concurrent jobs
+ * cannot see each other's overrides. Overrides go in the body, where they are validated, rather than through setters
+ * on the returned copy; by convention the job that owns a snapshot only reads it.
+ */
+@Component
+@RequiredArgsConstructor
+public class PropsOverrides {
+    private final AppProperties props;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    /**
+     * Defaults with the sections and fields present in {@code body} applied on top, validated.
+     *
+     * @throws InvalidConfigException when the merged configuration violates a constraint
+     */
+    public AppProperties snapshot(JsonNode body) {
+        AppProperties cfg = objectMapper.convertValue(props, AppProperties.class);
+        if (body != null && body.isObject()) {
+            update(body, "trading", cfg.getTrading());
+            update(body, "paper", cfg.getPaper());
+            update(body, "marketData", cfg.getMarketData());
+            update(body, "execution", cfg.getExecution());
+            update(body, "risk", cfg.getRisk());
+            update(body, "filter", cfg.getFilter());
+            update(body, "training", cfg.getTraining());
+            update(body, "portfolio", cfg.getPortfolio());
+        }
+        validate(cfg);
+        return cfg;
+    }
+
+    private void update(JsonNode body, String section, Object target) {
+        JsonNode node = body.get(section);
+        if (node == null || !node.isObject()) return;
+        try {
+            objectMapper.readerForUpdating(target).readValue(node);
+        } catch (IOException e) {
+            throw new InvalidConfigException("Invalid '" + section + "' section: " + e.getMessage(), e);
+        }
+    }
+
+    private void validate(AppProperties cfg) {
+        List<String> errors = new ArrayList<>();
+        collect(errors, "trading", cfg.getTrading());
+        collect(errors, "paper", cfg.getPaper());
+        collect(errors, "marketData", cfg.getMarketData());
+        collect(errors, "execution", cfg.getExecution());
+        collect(errors, "risk", cfg.getRisk());
+        collect(errors, "filter", cfg.getFilter());
+        collect(errors, "training", cfg.getTraining());
+        collect(errors, "portfolio", cfg.getPortfolio());
+        if (!errors.isEmpty()) throw new InvalidConfigException("Invalid configuration: " + String.join("; ", errors));
+    }
+
+    private void collect(List<String> errors, String section, Object target) {
+        Set<ConstraintViolation<Object>> violations = validator.validate(target);
+        for (var v : violations) errors.add(section + "." + v.getPropertyPath() + " " + v.getMessage());
+    }
+}
@@ -0,0 +1,12 @@
+package com.mar.forex.domain.model;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+@Data
+public class Account {
+    @Min(1) private int pollSeconds = 5;                   // how often the transactions since the last one are pulled
+    @Positive @DecimalMax("0.1") private double riskFraction = 0.01; // balance risked per live order at its stop
+}
@@ -0,0 +1,18 @@
+package com.mar.forex.domain.model;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Immutable view of the broker account as of {@code lastTransactionId}.
+ *
+ * @param positions net units per instrument with an open position (long positive, short negative)
+ * @param asOf      when the broker last confirmed this state
+ */
+public record AccountSnapshot(String lastTransactionId, double balance, double nav, double unrealizedPl,
+                              double marginUsed, double marginAvailable, Map<String, Long> positions, Instant asOf) {
+
+    public long position(String instrument) {
+        return positions.getOrDefault(instrument, 0L);
+    }
+}
@@ -0,0 +1,31 @@
+package com.mar.forex.domain.model;
+
+import java.util.Map;
+
+/**
+ * Final metrics of one backtest run, as returned by the headless engine.
+ */
+public record BacktestSummary(
+    String instrument,
+    String granularity,
+    int candles,
+    int trades,
+    long wins,
+    long losses,
+    double winRate,
+    double totalR,
+    double avgR,
+    double profitFactor,
+    double maxDrawdownR,
+    double startBalance,
+    double endBalance,
+    double[] equityCurve,
+    double[] equityCurveUSD,
+    Map<String, Integer> rejections,
+    ResamplingReport resampling
+) {
+    public static BacktestSummary empty(String instrument, String granularity, int candles, double startBalance) {
+        return new BacktestSummary(instrument, granularity, candles, 0, 0, 0, 0.0, 0.0, 0.0, 0.0, 0.0,
+            startBalance, startBalance, new double[0], new double[0], Map.of(), null);
+    }
+}
@@ -0,0 +1,22 @@
+package com.mar.forex.domain.model;
+
+import lombok.Data;
+import java.util.ArrayList;
+import java.util.List;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A list of backtest configurations for a headless batch run.
+ */
+@Data
+public class BatchManifest {
+    private String outputDir = "results";
+    private int parallelism = 1;              // runs in flight at once
+    private List<Run> runs = new ArrayList<>();
+
+    @Data
+    public static class Run {
+        private String name;
+        private JsonNode config;              // AppProperties-shaped overrides on top of the defaults
+    }
+}
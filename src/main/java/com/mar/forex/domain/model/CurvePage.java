@@ -0,0 +1,13 @@
+package com.mar.forex.domain.model;
+
+/**
+ * A slice of a stored full-resolution curve: {@code values[k]} is point {@code offset + k} of {@code total}.
+ */
+public record CurvePage(
+    String jobId,
+    String series,
+    int offset,
+    int total,
+    double[] values
+) {
+}
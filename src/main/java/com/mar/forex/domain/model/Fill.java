@@ -0,0 +1,11 @@
+package com.mar.forex.domain.model;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+@Data
+public class Fill {
+    private boolean intrabar = false;            // resolve bars touching both stop and take from finer data
+    @NotBlank private String fineGranularity = "M1";
+    @NotBlank private String dataDir = "data";
+}
@@ -0,0 +1,11 @@
+package com.mar.forex.domain.model;
+
+/**
+ * Scheduling priority of a submitted job, highest first.
+ */
+public enum JobPriority {
+    LIVE,         // retrains feeding live trading
+    TRAIN,
+    BACKTEST,
+    EXPLORATORY   // sweeps, portfolio what-ifs
+}
@@ -4,5 +4,17 @@ import lombok.Data;
 
 @Data
 public class JobResponse {
+    public enum Reuse { NEW, ATTACHED, CACHED }
+
     private final String jobId;
+    private final Reuse reuse;
+
+    public JobResponse(String jobId, Reuse reuse) {
+        this.jobId = jobId;
+        this.reuse = reuse;
+    }
+
+    public JobResponse(String jobId) {
+        this(jobId, Reuse.NEW);
+    }
 }
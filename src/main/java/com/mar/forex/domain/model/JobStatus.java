@@ -0,0 +1,14 @@
+package com.mar.forex.domain.model;
+
+import java.time.Instant;
+
+public record JobStatus(
+    String jobId,
+    JobPriority priority,
+    State state,
+    Instant submittedAt,
+    Instant startedAt,
+    Instant finishedAt
+) {
+    public enum State { QUEUED, RUNNING, CANCELLING, DONE, FAILED, CANCELLED }
+}
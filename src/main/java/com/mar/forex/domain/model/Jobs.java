@@ -0,0 +1,10 @@
+package com.mar.forex.domain.model;
+
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+
+@Data
+public class Jobs {
+    @Min(0) private int workers = 0;          // 0 = one worker per available core
+    @Min(1) private int queueCapacity = 32;   // queued (not yet running) jobs before submissions get 429
+}
@@ -1,6 +1,9 @@
 package com.mar.forex.domain.model;
 
 import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import java.util.ArrayList;
+import java.util.List;
 import lombok.Data;
 
 /**
@@ -12,4 +15,21 @@ import lombok.Data;
 public class Live {
     private boolean enabled;
     @Min(1) private int pollSeconds;
+    private List<String> instruments = new ArrayList<>(); // empty = trading.instrument
+    private String granularity = "";                      // blank = trading.granularity
+    @Min(50) private int bootstrapBars = 500;             // history pulled once per instrument to seed indicators
+    @Min(2) private int fetchBars = 5;                    // bars pulled per cycle; must overlap the last one held
+    @Min(0) private int settleSeconds = 2;                // wait after a bar boundary before asking for the new bar
+
+    // POLL pulls candles from the REST API each bar; STREAM builds them from the pricing stream
+    @Pattern(regexp = "POLL|STREAM") private String source = "POLL";
+    private List<String> barGranularities = new ArrayList<>(List.of("S5", "M1", "M5", "H1"));
+    @Min(16) private int barHistory = 1024;               // completed bars kept per instrument and granularity
+
+    @Min(100) private long pricingRefreshMs = 1000;       // POLL: one batched pricing call for all instruments per period
+    @Min(1000) private long quoteMaxAgeMs = 30000;        // older quotes fail the spread gate (market closed, feed down)
+
+    // bars between ingestion and the order stage; idle stage threads spin (lowest latency, a core each), yield or park
+    @Min(16) private int ringSize = 1024;
+    @Pattern(regexp = "BUSY_SPIN|YIELD|PARK") private String waitStrategy = "PARK";
 }
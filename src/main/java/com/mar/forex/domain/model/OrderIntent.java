@@ -0,0 +1,19 @@
+package com.mar.forex.domain.model;
+
+import java.time.Instant;
+
+/**
+ * A market order the strategy wants placed. {@code clientId} is the idempotency key sent as the order's
+ * clientExtensions id: the same intent submitted twice, or retried, places at most one order.
+ *
+ * @param units signed: positive buys, negative sells
+ */
+public record OrderIntent(String clientId, String instrument, long units, Double stopLoss, Double takeProfit) {
+
+    /**
+     * Deterministic key for the signal on one bar, so a replayed bar (restart, reconnect) maps to the same order.
+     */
+    public static String clientIdFor(String instrument, Instant barTime, long units) {
+        return "fx-" + instrument + "-" + barTime.getEpochSecond() + (units >= 0 ? "-B" : "-S");
+    }
+}
@@ -0,0 +1,17 @@
+package com.mar.forex.domain.model;
+
+/**
+ * Final outcome of an order intent.
+ *
+ * @param status     FILLED; CANCELLED by the broker (FOK not filled, margin, market halted); REJECTED as invalid;
+ *                   FAILED when it is known not to have been placed; UNKNOWN when no attempt could establish
+ *                   whether the broker has it (reconcile by clientId)
+ * @param fillPrice  NaN unless filled
+ * @param attempts   HTTP submissions and lookups made
+ * @param latencyMs  intent to final outcome
+ */
+public record OrderResult(String clientId, Status status, String orderId, String tradeId, double fillPrice,
+                          String reason, int attempts, double latencyMs) {
+
+    public enum Status { FILLED, CANCELLED, REJECTED, FAILED, UNKNOWN }
+}
@@ -0,0 +1,13 @@
+package com.mar.forex.domain.model;
+
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+
+@Data
+public class Orders {
+    private boolean enabled = false;         // send live orders; off = log the intent only
+    @Min(1) private int maxInFlight = 8;     // orders awaiting a broker answer at once
+    @Min(1) private int maxAttempts = 3;     // submissions/lookups per order before its outcome is UNKNOWN
+    @Min(0) private long retryBackoffMs = 200; // first retry delay, doubled per attempt
+    private String tag = "forex-trader";     // clientExtensions tag on every order
+}
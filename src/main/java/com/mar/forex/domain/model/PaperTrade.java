@@ -5,7 +5,7 @@ import lombok.Data;
 import java.time.Instant;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class PaperTrade {
     public enum Side { BUY, SELL }
     public enum Status { OPEN, WON, LOST }
@@ -0,0 +1,13 @@
+package com.mar.forex.domain.model;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class Portfolio {
+    @NotEmpty private List<String> instruments = new ArrayList<>(List.of("EUR_USD"));
+    @Min(0) private int parallelism = 0;   // 0 = one worker per available core
+}
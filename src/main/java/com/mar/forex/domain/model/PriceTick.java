@@ -0,0 +1,17 @@
+package com.mar.forex.domain.model;
+
+import java.time.Instant;
+
+/**
+ * Top of book for one instrument from the pricing stream.
+ */
+public record PriceTick(String instrument, Instant time, double bid, double ask, boolean tradeable) {
+
+    public double mid() {
+        return (bid + ask) / 2;
+    }
+
+    public double spread() {
+        return ask - bid;
+    }
+}
@@ -0,0 +1,14 @@
+package com.mar.forex.domain.model;
+
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+
+@Data
+public class Replay {
+    @Min(1) private int ringEvents = 512;       // newest events kept in memory per job
+    @Min(1) private int maxMemoryMb = 64;       // in-memory replay across all jobs; older events spill to disk
+    @Min(1) private int maxDiskMb = 1024;       // spill files across all jobs; oldest jobs are dropped beyond this
+    @Min(1) private int maxJobs = 500;          // job logs retained
+    @Min(1) private int ttlMinutes = 120;       // jobs idle this long are evicted
+    private String dir = "data/sse";
+}
@@ -0,0 +1,17 @@
+package com.mar.forex.domain.model;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+@Data
+public class Resampling {
+    private boolean enabled = true;
+    @Pattern(regexp = "BOOTSTRAP|PERMUTATION|BLOCK")
+    private String method = "BOOTSTRAP";
+    @Min(1) private int simulations = 10000;
+    @Min(0) private int blockLength = 0;       // BLOCK only; 0 = sqrt(trades)
+    @Positive private double confidence = 0.95;
+    private long seed = 42L;
+}
@@ -0,0 +1,20 @@
+package com.mar.forex.domain.model;
+
+/**
+ * Confidence intervals and drawdown distribution from resampling a realized R-series.
+ */
+public record ResamplingReport(
+    String method,
+    int simulations,
+    int trades,
+    double confidence,
+    long seed,
+    Interval totalR,
+    Interval profitFactor,
+    Interval maxDrawdownR,
+    double probLoss,
+    double[] drawdownEdges,
+    int[] drawdownCounts
+) {
+    public record Interval(double lo, double median, double hi, double mean) {}
+}
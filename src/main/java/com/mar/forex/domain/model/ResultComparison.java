@@ -0,0 +1,16 @@
+package com.mar.forex.domain.model;
+
+import java.util.List;
+import java.util.Map;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Side-by-side view of stored runs: each metric and each differing config path maps to one value per run, in the
+ * order of {@code runs}. Config paths that are equal across all runs are left out.
+ */
+public record ResultComparison(
+    List<ResultMeta> runs,
+    Map<String, List<Object>> metrics,
+    Map<String, List<JsonNode>> configDiff
+) {
+}
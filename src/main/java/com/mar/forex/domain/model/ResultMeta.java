@@ -0,0 +1,19 @@
+package com.mar.forex.domain.model;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Index entry of a stored result, enough to list and compare runs without opening their files.
+ */
+public record ResultMeta(
+    String jobId,
+    String kind,
+    String inputKey,
+    Instant createdAt,
+    String instrument,
+    String granularity,
+    Map<String, Object> metrics,
+    long bytes
+) {
+}
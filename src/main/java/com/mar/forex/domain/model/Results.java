@@ -0,0 +1,12 @@
+package com.mar.forex.domain.model;
+
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+
+@Data
+public class Results {
+    private boolean enabled = true;         // persist completed backtest/portfolio/training results
+    private String dir = "data/results";
+    @Min(1) private int cacheMb = 64;       // decoded results kept in memory for the result endpoints
+    @Min(3) private int curvePoints = 500;  // equity curve points in result payloads (LTTB-downsampled)
+}
@@ -4,6 +4,8 @@ import lombok.Data;
 
 @Data
 public class Risk {
-    private Integer maxDailyLossR = 3;
-    private Integer maxConsecLosses = 5;
+    private Integer maxDailyLossR = 3;        // realised R lost in a UTC day before entries stop; null = no limit
+    private Integer maxConsecLosses = 5;      // losing trades in a row before entries stop for the day; null = no limit
+    private Double maxMarginUsage = 1.0;      // margin of open positions as a fraction of equity; null = no limit
+    private Double maxCurrencyExposure;       // net notional per currency as a multiple of equity; null = no limit
 }
@@ -0,0 +1,29 @@
+package com.mar.forex.domain.model;
+
+import java.time.Instant;
+
+/**
+ * Per-bar columns for one instrument: prices, indicators and the model's prediction.
+ *
+ * side is +1 for an UP (BUY) prediction, -1 for DOWN (SELL) and 0 when no example could be built.
+ * pWin is the calibrated win probability of the predicted side, NaN when scores were unavailable.
+ */
+public record SignalColumns(
+    String instrument,
+    Instant[] time,
+    double[] open,
+    double[] high,
+    double[] low,
+    double[] close,
+    double[] maFast,
+    double[] maSlow,
+    double[] rsi,
+    double[] atr,
+    double[] pWin,
+    byte[] side,
+    int warmup
+) {
+    public int size() {
+        return close.length;
+    }
+}
@@ -0,0 +1,29 @@
+package com.mar.forex.domain.model;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A completed job's persisted result: headline metrics, the effective configuration it ran with, equity curves and
+ * the closed-trade ledger. Curves and ledger are empty for training jobs. {@code inputKey} is the content key of the
+ * job's inputs (see JobKeys), used to answer identical submissions from the store.
+ */
+public record StoredResult(
+    String jobId,
+    String kind,
+    String inputKey,
+    Instant createdAt,
+    String instrument,
+    String granularity,
+    Map<String, Object> metrics,
+    JsonNode config,
+    double[] equityCurve,
+    double[] equityCurveUSD,
+    List<TradeEvent> ledger
+) {
+    public ResultMeta meta(long bytes) {
+        return new ResultMeta(jobId, kind, inputKey, createdAt, instrument, granularity, metrics, bytes);
+    }
+}
@@ -0,0 +1,23 @@
+package com.mar.forex.domain.model;
+
+import lombok.Data;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Candidate values per filter field for a parameter sweep. An empty list means "use the configured value".
+ */
+@Data
+public class SweepGrid {
+    private List<Double> evMargin = new ArrayList<>();
+    private List<Double> evMarginR = new ArrayList<>();
+    private List<Integer> atrPercentile = new ArrayList<>();
+    private List<String> session = new ArrayList<>();
+    private List<Integer> rsiLong = new ArrayList<>();
+    private List<Integer> rsiShort = new ArrayList<>();
+    private List<Boolean> onePerDay = new ArrayList<>();
+    private List<Double> signalThreshold = new ArrayList<>();
+
+    private String rankBy = "totalR";   // totalR | profitFactor | winRate | maxDrawdownR
+    private int top = 100;
+}
@@ -0,0 +1,20 @@
+package com.mar.forex.domain.model;
+
+/**
+ * Outcome of one filter combination in a parameter sweep.
+ */
+public record SweepRow(
+    double evMargin,
+    double evMarginR,
+    int atrPercentile,
+    String session,
+    int rsiLong,
+    int rsiShort,
+    boolean onePerDay,
+    double signalThreshold,
+    int trades,
+    double winRate,
+    double totalR,
+    double profitFactor,
+    double maxDrawdownR
+) {}
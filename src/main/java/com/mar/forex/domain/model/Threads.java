@@ -0,0 +1,11 @@
+package com.mar.forex.domain.model;
+
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+
+@Data
+public class Threads {
+    private boolean virtual = false;          // run blocking I/O (HTTP, SSE sends) on virtual threads
+    @Min(1) private int ioPoolSize = 32;      // platform I/O pool size when virtual=false
+    @Min(1) private int pagingConcurrency = 1; // concurrent history windows per fetch; 1 = sequential paging
+}
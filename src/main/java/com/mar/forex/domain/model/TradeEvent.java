@@ -0,0 +1,20 @@
+package com.mar.forex.domain.model;
+
+/**
+ * One closed backtest trade as streamed to the UI (batched into "trades" SSE events).
+ */
+public record TradeEvent(
+    int index,
+    String side,
+    double r,
+    double equityR,
+    String status,
+    double entry,
+    Double exit,
+    double stop,
+    double takeProfit,
+    String time,
+    double pnlUSD,
+    double equityUSD
+) {
+}
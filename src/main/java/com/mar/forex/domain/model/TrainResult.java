@@ -9,4 +9,6 @@ import org.tribuo.evaluation.Evaluation;
 public class TrainResult {
     private Model<Label> model;
     private Evaluation<Label> eval;
+    private int trainSize;
+    private int testSize;
 }
@@ -1,5 +1,6 @@
 package com.mar.forex.infrastructure.broker;
 
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Data;
 
@@ -9,4 +10,6 @@ public class Oanda {
     private String url;        // e.g. https://api-fxpractice.oanda.com/v3
     @NotBlank private String apiKey;
     @NotBlank private String accountId;
+    private String streamUrl = "https://stream-fxpractice.oanda.com/v3";
+    @Min(1) private int streamTimeoutSeconds = 15; // OANDA heartbeats every 5 s; silence this long means reconnect
 }
@@ -2,6 +2,8 @@ package com.mar.forex.infrastructure.broker;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -9,12 +11,16 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import org.springframework.stereotype.Component;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.OrderIntent;
 
 @Slf4j
 @Component
@@ -86,6 +92,47 @@ public class OandaClient {
         }
     }
 
+    /** GET /accounts/{accountId}: balance, margin, open positions and the last transaction id */
+    public String getAccount() throws IOException {
+        Request req = new Request.Builder()
+            .url(base() + "/accounts/" + accountId())
+            .header("Authorization", authHeader())
+            .get()
+            .build();
+
+        try (Response r = http.newCall(req).execute()) {
+            String body = r.body() != null ? r.body().string() : "";
+            if (!r.isSuccessful()) {
+                log.error("OANDA account failed: HTTP {} {}", r.code(), body);
+                throw new IOException("HTTP " + r.code() + " " + body);
+            }
+            return body;
+        }
+    }
+
+    /** GET /accounts/{accountId}/changes?sinceTransactionID=N: transactions and changed positions after N */
+    public String getAccountChanges(String sinceTransactionId) throws IOException {
+        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(base() + "/accounts/" + accountId() + "/changes"))
+                             .newBuilder()
+                             .addQueryParameter("sinceTransactionID", sinceTransactionId)
+                             .build();
+
+        Request req = new Request.Builder()
+            .url(url)
+            .header("Authorization", authHeader())
+            .get()
+            .build();
+
+        try (Response r = http.newCall(req).execute()) {
+            String body = r.body() != null ? r.body().string() : "";
+            if (!r.isSuccessful()) {
+                log.error("OANDA account changes failed: HTTP {} {}", r.code(), body);
+                throw new IOException("HTTP " + r.code() + " " + body);
+            }
+            return body;
+        }
+    }
+
     /** POST /accounts/{accountId}/orders (market order with optional SL/TP) */
     public String placeMarketOrder(String instrument, int units, Double slPrice, Double tpPrice) throws IOException {
         Map<String, Object> order = new LinkedHashMap<>();
@@ -93,8 +140,8 @@ public class OandaClient {
         order.put("instrument", instrument);
         order.put("units", String.valueOf(units));   // OANDA expects string for units
         order.put("timeInForce", "FOK");
-        if (slPrice != null) order.put("stopLossOnFill", Map.of("price", String.format("%.5f", slPrice)));
-        if (tpPrice != null) order.put("takeProfitOnFill", Map.of("price", String.format("%.5f", tpPrice)));
+        if (slPrice != null) order.put("stopLossOnFill", Map.of("price", priceString(instrument, slPrice)));
+        if (tpPrice != null) order.put("takeProfitOnFill", Map.of("price", priceString(instrument, tpPrice)));
 
         String body = mapper.writeValueAsString(Map.of("order", order));
 
@@ -114,6 +161,33 @@ public class OandaClient {
         }
     }
 
+    /** GET /instruments/{instrument}/candles for the [from, to) window; the window must hold at most 5000 bars. */
+    public String getCandlesRange(String instrument, String granularity, java.time.Instant from, java.time.Instant to)
+            throws IOException {
+        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(base() + "/instruments/" + instrument + "/candles"))
+                             .newBuilder()
+                             .addQueryParameter("granularity", granularity)
+                             .addQueryParameter("price", "M")
+                             .addQueryParameter("smooth", String.valueOf(false))
+                             .addQueryParameter("from", from.toString())
+                             .addQueryParameter("to", to.toString())
+                             .build();
+
+        Request req = new Request.Builder()
+            .url(url)
+            .header("Authorization", authHeader())
+            .build();
+
+        try (Response r = http.newCall(req).execute()) {
+            String body = r.body() != null ? r.body().string() : "";
+            if (!r.isSuccessful()) {
+                log.error("OANDA candles failed: HTTP {} {}", r.code(), body);
+                throw new IOException("HTTP " + r.code() + " " + body);
+            }
+            return body;
+        }
+    }
+
     public String getCandles(String instrument, String granularity, int count, java.time.Instant to) throws java.io.IOException {
         HttpUrl url = Objects.requireNonNull(HttpUrl.parse(base() + "/instruments/" + instrument + "/candles"))
                              .newBuilder()
@@ -138,4 +212,86 @@ public class OandaClient {
             return body;
         }
     }
+
+    /** HTTP status and body of an asynchronous call. */
+    public record Reply(int code, String body) {
+        public boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+    }
+
+    /**
+     * POST /accounts/{accountId}/orders for a FOK market order carrying the intent's clientExtensions id. Runs on the
+     * OkHttp dispatcher; completes with whatever the broker answered and fails only when no answer arrived.
+     */
+    public CompletableFuture<Reply> submitOrderAsync(OrderIntent intent, String tag) {
+        Map<String, Object> order = new LinkedHashMap<>();
+        order.put("type", "MARKET");
+        order.put("instrument", intent.instrument());
+        order.put("units", String.valueOf(intent.units()));
+        order.put("timeInForce", "FOK");
+        order.put("positionFill", "DEFAULT");
+        order.put("clientExtensions", Map.of("id", intent.clientId(), "tag", tag));
+        if (intent.stopLoss() != null) {
+            order.put("stopLossOnFill", Map.of("price", priceString(intent.instrument(), intent.stopLoss())));
+        }
+        if (intent.takeProfit() != null) {
+            order.put("takeProfitOnFill", Map.of("price", priceString(intent.instrument(), intent.takeProfit())));
+        }
+        String body;
+        try {
+            body = mapper.writeValueAsString(Map.of("order", order));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return async(new Request.Builder()
+            .url(base() + "/accounts/" + accountId() + "/orders")
+            .header("Authorization", authHeader())
+            .post(RequestBody.create(body, JSON))
+            .build());
+    }
+
+    /** GET /accounts/{accountId}/orders/@{clientId}: the order placed under a clientExtensions id, 404 if none. */
+    public CompletableFuture<Reply> getOrderByClientIdAsync(String clientId) {
+        return async(new Request.Builder()
+            .url(base() + "/accounts/" + accountId() + "/orders/@" + clientId)
+            .header("Authorization", authHeader())
+            .get()
+            .build());
+    }
+
+    /** GET /accounts/{accountId}/transactions/{transactionId} */
+    public CompletableFuture<Reply> getTransactionAsync(String transactionId) {
+        return async(new Request.Builder()
+            .url(base() + "/accounts/" + accountId() + "/transactions/" + transactionId)
+            .header("Authorization", authHeader())
+            .get()
+            .build());
+    }
+
+    private CompletableFuture<Reply> async(Request req) {
+        CompletableFuture<Reply> out = new CompletableFuture<>();
+        http.newCall(req).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                out.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response r) {
+                try (r) {
+                    out.complete(new Reply(r.code(), r.body() != null ? r.body().string() : ""));
+                } catch (IOException e) {
+                    out.completeExceptionally(e);
+                }
+            }
+        });
+        return out;
+    }
+
+    /** Price as OANDA expects it: a plain decimal string at the instrument's precision, independent of locale. */
+    static String priceString(String instrument, double price) {
+        int scale = instrument.endsWith("JPY") ? 3 : 5;
+        return BigDecimal.valueOf(price).setScale(scale, RoundingMode.HALF_UP).toPlainString();
+    }
 }
@@ -0,0 +1,285 @@
+package com.mar.forex.infrastructure.broker;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSource;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.PriceTick;
+
+/**
+ * Client for the OANDA pricing stream ({@code GET /accounts/{id}/pricing/stream}).
+ *
+ * One long-lived connection delivers newline-delimited JSON: PRICE messages and a HEARTBEAT every 5 s. Lines are
+ * read straight off the chunked response and parsed with the streaming JSON parser (no tree), keeping only the
+ * instrument, time, top bid/ask and tradeable flag. Ticks are handed to subscribers on the reader thread, so
+ * subscribers must return quickly and hand heavier work off.
+ *
+ * The socket read timeout ({@code forex.oanda.streamTimeoutSeconds}) doubles as the heartbeat watchdog: a silent
+ * connection fails the read and is reopened with exponential backoff (reset once data flows again). On reconnect
+ * OANDA replays the current price of every instrument; ticks not newer than the last one delivered for their
+ * instrument are dropped, so subscribers never see a tick twice or out of order across a reconnect.
+ *
+ * Each start tags its reader with a new generation; {@link #stop()} waits for the reader to exit, and a reader that
+ * outlives the wait delivers nothing once a later start has begun.
+ */
+@Slf4j
+@Component
+public class OandaPriceStream {
+    private static final long MIN_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30_000;
+    private static final long JOIN_TIMEOUT_MS = 5_000;
+
+    public record Stats(long ticks, long heartbeats, long reconnects, long replayedDropped, long parseErrors,
+                        Instant lastMessage) {
+    }
+
+    private final OkHttpClient http;
+    private final AppProperties props;
+    private final JsonFactory json = new JsonFactory();
+    private final List<Consumer<PriceTick>> subscribers = new CopyOnWriteArrayList<>();
+    private final Map<String, Instant> lastTick = new ConcurrentHashMap<>();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong replayedDropped = new AtomicLong();
+    private final AtomicLong parseErrors = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile long generation;
+    private volatile Instant lastMessage;
+    private volatile Call call;
+    private Thread reader;
+
+    public OandaPriceStream(OkHttpClient http, AppProperties props) {
+        this.http = http;
+        this.props = props;
+    }
+
+    /**
+     * Registers a tick consumer; closing the returned handle unsubscribes it.
+     */
+    public AutoCloseable subscribe(Consumer<PriceTick> subscriber) {
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    /**
+     * Opens the stream for the given instruments on a dedicated reader thread.
+     */
+    public synchronized void start(List<String> instruments) {
+        if (running) throw new IllegalStateException("Price stream already running");
+        if (instruments.isEmpty()) throw new IllegalArgumentException("No instruments to stream");
+        running = true;
+        long gen = ++generation;
+        OkHttpClient client = http.newBuilder()
+            .readTimeout(props.getOanda().getStreamTimeoutSeconds(), TimeUnit.SECONDS)
+            .build();
+        String csv = String.join(",", instruments);
+        reader = new Thread(() -> run(client, csv, gen), "oanda-price-stream");
+        reader.setDaemon(true);
+        reader.start();
+        log.info("Price stream started | instruments={}", csv);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        Call c = call;
+        if (c != null) c.cancel();
+        reader.interrupt();
+        try {
+            reader.join(JOIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (reader.isAlive()) {
+            log.warn("Price stream reader still running after {}ms; its ticks are dropped", JOIN_TIMEOUT_MS);
+        }
+        log.info("Price stream stopped | ticks={} heartbeats={} reconnects={}", ticks.get(), heartbeats.get(),
+            reconnects.get());
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public Stats stats() {
+        return new Stats(ticks.get(), heartbeats.get(), reconnects.get(), replayedDropped.get(), parseErrors.get(),
+            lastMessage);
+    }
+
+    // true while gen is the generation of the current start and the stream has not been stopped
+    private boolean live(long gen) {
+        return running && generation == gen;
+    }
+
+    private void run(OkHttpClient client, String instruments, long gen) {
+        long backoff = MIN_BACKOFF_MS;
+        while (live(gen)) {
+            Instant connectedAt = Instant.now();
+            try {
+                read(client, instruments, gen);
+                if (live(gen)) log.warn("Price stream ended by server; reconnecting");
+            } catch (IOException e) {
+                if (!live(gen)) break;
+                log.warn("Price stream interrupted: {}", e.toString());
+            }
+            if (!live(gen)) break;
+            Instant last = lastMessage;
+            if (last != null && last.isAfter(connectedAt)) backoff = MIN_BACKOFF_MS;
+            reconnects.incrementAndGet();
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    private void read(OkHttpClient client, String instruments, long gen) throws IOException {
+        var oanda = props.getOanda();
+        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(oanda.getStreamUrl() + "/accounts/" + oanda.getAccountId()
+                + "/pricing/stream"))
+            .newBuilder()
+            .addQueryParameter("instruments", instruments)
+            .build();
+        Request req = new Request.Builder()
+            .url(url)
+            .header("Authorization", "Bearer " + oanda.getApiKey())
+            .get()
+            .build();
+
+        Call c = client.newCall(req);
+        if (!live(gen)) return;
+        call = c;
+        if (!live(gen)) {
+            c.cancel();
+            return;
+        }
+        try (Response r = c.execute()) {
+            if (!r.isSuccessful() || r.body() == null) {
+                String body = r.body() != null ? r.body().string() : "";
+                throw new IOException("HTTP " + r.code() + " " + body);
+            }
+            // per-instrument time a replayed tick must exceed after a reconnect
+            Map<String, Instant> resumeAfter = new HashMap<>(lastTick);
+            BufferedSource source = r.body().source();
+            String line;
+            while (live(gen) && (line = source.readUtf8Line()) != null) {
+                if (line.isEmpty()) continue;
+                lastMessage = Instant.now();
+                handle(line, gen, resumeAfter);
+            }
+        }
+    }
+
+    private void handle(String line, long gen, Map<String, Instant> resumeAfter) {
+        String type = null;
+        String instrument = null;
+        String time = null;
+        double bid = Double.NaN;
+        double ask = Double.NaN;
+        boolean tradeable = true;
+        try (JsonParser p = json.createParser(line)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                parseErrors.incrementAndGet();
+                return;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "type" -> type = p.getText();
+                    case "instrument" -> instrument = p.getText();
+                    case "time" -> time = p.getText();
+                    case "tradeable" -> tradeable = value == JsonToken.VALUE_TRUE;
+                    case "bids" -> bid = firstPrice(p);
+                    case "asks" -> ask = firstPrice(p);
+                    default -> p.skipChildren();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            parseErrors.incrementAndGet();
+            log.debug("Unparseable stream line: {}", line);
+            return;
+        }
+
+        if ("HEARTBEAT".equals(type)) {
+            heartbeats.incrementAndGet();
+            return;
+        }
+        if (!"PRICE".equals(type) || instrument == null || time == null || Double.isNaN(bid) || Double.isNaN(ask)) {
+            parseErrors.incrementAndGet();
+            return;
+        }
+        Instant ts;
+        try {
+            ts = Instant.parse(time);
+        } catch (RuntimeException e) {
+            parseErrors.incrementAndGet();
+            return;
+        }
+        if (!resumeAfter.isEmpty()) {
+            Instant after = resumeAfter.get(instrument);
+            if (after != null) {
+                if (!ts.isAfter(after)) {
+                    replayedDropped.incrementAndGet();
+                    return;
+                }
+                resumeAfter.remove(instrument);
+            }
+        }
+        if (!live(gen)) return;
+        lastTick.put(instrument, ts);
+        ticks.incrementAndGet();
+
+        var tick = new PriceTick(instrument, ts, bid, ask, tradeable);
+        for (var s : subscribers) {
+            try {
+                s.accept(tick);
+            } catch (RuntimeException e) {
+                log.warn("Price subscriber failed: {}", e.toString());
+            }
+        }
+    }
+
+    // price of the first level of a bids/asks array; the parser is on START_ARRAY and is left on END_ARRAY
+    private static double firstPrice(JsonParser p) throws IOException {
+        double price = Double.NaN;
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return price;
+        }
+        while (p.nextToken() == JsonToken.START_OBJECT) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if ("price".equals(field) && Double.isNaN(price)) price = p.getValueAsDouble(Double.NaN);
+                else p.skipChildren();
+            }
+        }
+        return price;
+    }
+}
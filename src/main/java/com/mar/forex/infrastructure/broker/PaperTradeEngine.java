@@ -4,11 +4,16 @@ import lombok.RequiredArgsConstructor;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import org.springframework.stereotype.Service;
 import com.mar.forex.config.AppProperties;
 import com.mar.forex.domain.model.PaperTrade;
+import com.mar.forex.infrastructure.marketdata.IntrabarResolver;
 
-@Service
+/**
+ * Simulated book of open and closed trades for one run.
+ *
+ * Not thread-safe and deliberately not a bean: every backtest creates its own instance (see PaperTradeEngineFactory)
+ * and only the thread running it touches it. The live book confines its instance to a single writer thread.
+ */
 @RequiredArgsConstructor
 public class PaperTradeEngine {
 
@@ -17,6 +22,13 @@ public class PaperTradeEngine {
     private final List<PaperTrade> open = new ArrayList<>();
     private final List<PaperTrade> closed = new ArrayList<>();
 
+    // optional: resolves bars that touch both stop and take; null keeps the stop-first rule
+    private IntrabarResolver intrabarResolver;
+
+    public void setIntrabarResolver(IntrabarResolver intrabarResolver) {
+        this.intrabarResolver = intrabarResolver;
+    }
+
     public List<PaperTrade> getOpen() {
         return List.copyOf(open);
     }
@@ -25,6 +37,28 @@ public class PaperTradeEngine {
         return List.copyOf(closed);
     }
 
+    /**
+     * Closed trades from the given index onward, in close order; cheaper than getClosed() inside a bar loop.
+     */
+    public List<PaperTrade> getClosedSince(int fromIndex) {
+        if (fromIndex >= closed.size()) return List.of();
+        return List.copyOf(closed.subList(fromIndex, closed.size()));
+    }
+
+    public int closedCount() {
+        return closed.size();
+    }
+
+    /**
+     * Closed trades in close order, forgotten by the engine; for long-running books that hand them on as they close.
+     */
+    public List<PaperTrade> drainClosed() {
+        if (closed.isEmpty()) return List.of();
+        List<PaperTrade> out = List.copyOf(closed);
+        closed.clear();
+        return out;
+    }
+
     public void reset() {
         open.clear();
         closed.clear();
@@ -82,7 +116,18 @@ public class PaperTradeEngine {
         for (var t : snapshot) {
             if (!t.getInstrument().equals(instrument)) continue;
 
-            if (t.getSide() == PaperTrade.Side.BUY) {
+            boolean buy = t.getSide() == PaperTrade.Side.BUY;
+            boolean slHit = buy ? low <= t.getStop() : high >= t.getStop();
+            boolean tpHit = buy ? high >= t.getTake() : low <= t.getTake();
+            if (slHit && tpHit && intrabarResolver != null) {
+                var touch = intrabarResolver.firstTouch(instrument, ts, buy, t.getStop(), t.getTake());
+                if (touch == IntrabarResolver.Touch.TAKE) {
+                    closeAs(t, PaperTrade.Status.WON, t.getTake(), "TP", ts);
+                    continue;
+                }
+            }
+
+            if (buy) {
                 if (low <= t.getStop()) closeAs(t, PaperTrade.Status.LOST, t.getStop(), "SL", ts);
                 else if (high >= t.getTake()) closeAs(t, PaperTrade.Status.WON, t.getTake(), "TP", ts);
             } else {
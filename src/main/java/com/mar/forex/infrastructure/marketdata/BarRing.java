@@ -0,0 +1,57 @@
+package com.mar.forex.infrastructure.marketdata;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import com.mar.forex.domain.model.Candle;
+
+/**
+ * Fixed-capacity ring of completed bars held column-wise in primitive arrays; the oldest bar is overwritten once the
+ * ring is full. Not thread-safe; the aggregator guards it with the instrument's lock.
+ */
+final class BarRing {
+    private final long[] time;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final long[] volume;
+    private long count;
+
+    BarRing(int capacity) {
+        time = new long[capacity];
+        open = new double[capacity];
+        high = new double[capacity];
+        low = new double[capacity];
+        close = new double[capacity];
+        volume = new long[capacity];
+    }
+
+    void add(long epochSecond, double o, double h, double l, double c, long v) {
+        int i = (int) (count % time.length);
+        time[i] = epochSecond;
+        open[i] = o;
+        high[i] = h;
+        low[i] = l;
+        close[i] = c;
+        volume[i] = v;
+        count++;
+    }
+
+    int size() {
+        return (int) Math.min(count, time.length);
+    }
+
+    /**
+     * The newest {@code n} bars, oldest first.
+     */
+    List<Candle> last(int n) {
+        int k = Math.min(n, size());
+        List<Candle> out = new ArrayList<>(k);
+        for (long j = count - k; j < count; j++) {
+            int i = (int) (j % time.length);
+            out.add(new Candle(Instant.ofEpochSecond(time[i]), open[i], high[i], low[i], close[i], volume[i]));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,14 @@
+package com.mar.forex.infrastructure.marketdata;
+
+import java.time.Instant;
+
+/**
+ * Decides which of stop or take was touched first inside a bar that touched both.
+ */
+@FunctionalInterface
+public interface IntrabarResolver {
+
+    enum Touch { STOP, TAKE, UNKNOWN }
+
+    Touch firstTouch(String instrument, Instant barTime, boolean buy, double stop, double take);
+}
@@ -0,0 +1,127 @@
+package com.mar.forex.infrastructure.marketdata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import com.mar.forex.domain.model.Candle;
+
+/**
+ * A locally stored fine-granularity series as fixed-width records sorted by time:
+ * {@code long epochSecond, double open, high, low, close} (40 bytes each).
+ *
+ * Readers memory-map the file, so only the pages around looked-up timestamps are ever loaded, and find a bar's
+ * sub-bars by binary search on the time column.
+ */
+public class IntrabarStore {
+    static final int RECORD = 40;
+
+    private final MappedByteBuffer buf;
+    private final int size;
+
+    private IntrabarStore(MappedByteBuffer buf) {
+        this.buf = buf;
+        this.size = buf.capacity() / RECORD;
+    }
+
+    public static Path pathFor(Path dataDir, String instrument, String granularity) {
+        return dataDir.resolve(instrument + "_" + granularity + ".bars");
+    }
+
+    /**
+     * Maps an existing store read-only, or returns null if it does not exist.
+     */
+    public static IntrabarStore open(Path file) throws IOException {
+        if (!Files.exists(file)) return null;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new IntrabarStore(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    /**
+     * Writes candles as a sorted, de-duplicated store, replacing any existing file.
+     */
+    public static int write(Path file, List<Candle> candles) throws IOException {
+        List<Candle> sorted = new ArrayList<>(candles);
+        sorted.sort(Comparator.comparing(Candle::getTime));
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int written = 0;
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate(RECORD * 1024);
+            long last = Long.MIN_VALUE;
+            for (Candle c : sorted) {
+                long t = c.time.getEpochSecond();
+                if (t == last) continue;
+                last = t;
+                if (out.remaining() < RECORD) {
+                    out.flip();
+                    while (out.hasRemaining()) ch.write(out);
+                    out.clear();
+                }
+                out.putLong(t).putDouble(c.open).putDouble(c.high).putDouble(c.low).putDouble(c.close);
+                written++;
+            }
+            out.flip();
+            while (out.hasRemaining()) ch.write(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        return written;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long epochSecond(int idx) {
+        return buf.getLong(idx * RECORD);
+    }
+
+    public double high(int idx) {
+        return buf.getDouble(idx * RECORD + 16);
+    }
+
+    public double low(int idx) {
+        return buf.getDouble(idx * RECORD + 24);
+    }
+
+    /**
+     * Index of the first record at or after the given time (size() if none).
+     */
+    public int lowerBound(long epochSecond) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (epochSecond(mid) < epochSecond) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Replays the sub-bars in [barTime, barTime + barSeconds) and reports which level they touched first.
+     * A sub-bar that itself touches both is resolved stop-first, like the coarse rule.
+     */
+    public IntrabarResolver.Touch firstTouch(Instant barTime, long barSeconds, boolean buy, double stop, double take) {
+        long from = barTime.getEpochSecond();
+        long to = from + barSeconds;
+        for (int i = lowerBound(from); i < size; i++) {
+            if (epochSecond(i) >= to) break;
+            double hi = high(i), lo = low(i);
+            boolean sl = buy ? lo <= stop : hi >= stop;
+            boolean tp = buy ? hi >= take : lo <= take;
+            if (sl) return IntrabarResolver.Touch.STOP;
+            if (tp) return IntrabarResolver.Touch.TAKE;
+        }
+        return IntrabarResolver.Touch.UNKNOWN;
+    }
+}
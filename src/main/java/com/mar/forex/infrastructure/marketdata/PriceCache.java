@@ -0,0 +1,153 @@
+package com.mar.forex.infrastructure.marketdata;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.PriceTick;
+import com.mar.forex.infrastructure.broker.OandaClient;
+import com.mar.forex.infrastructure.broker.OandaPriceStream;
+import com.mar.forex.util.Indicators;
+
+/**
+ * Latest bid/ask per instrument for entry gating.
+ *
+ * Fed either by one batched {@code GET /pricing} for all instruments every {@code forex.live.pricingRefreshMs}, or
+ * by the pricing stream's ticks; in both cases the refresh cost is independent of how many callers read it. Each
+ * instrument's quote is an immutable {@link PriceTick} replaced in a {@link ConcurrentHashMap}, so reads never lock
+ * or wait.
+ *
+ * {@link #checkSpread} is the spread gate: it rejects an entry when there is no quote, the quote is older than
+ * {@code forex.live.quoteMaxAgeMs} (market closed, feed down), the instrument is not tradeable, or the spread is wider
+ * than {@code forex.trading.maxSpreadPips}.
+ */
+@Slf4j
+@Component
+public class PriceCache {
+    public static final int PASS = 0;
+    public static final int NO_QUOTE = 1;
+    public static final int STALE = 2;
+    public static final int NOT_TRADEABLE = 3;
+    public static final int SPREAD = 4;
+
+    private static final String[] REASONS = {"pass", "noQuote", "staleQuote", "notTradeable", "spread"};
+
+    public record Stats(long refreshes, long failures, long updates, int instruments) {
+    }
+
+    private final OandaClient oanda;
+    private final OandaPriceStream priceStream;
+    private final AppProperties props;
+    private final ObjectMapper mapper;
+    private final Map<String, PriceTick> quotes = new ConcurrentHashMap<>();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+
+    private ScheduledExecutorService poller;
+    private AutoCloseable subscription;
+
+    public PriceCache(OandaClient oanda, OandaPriceStream priceStream, AppProperties props, ObjectMapper mapper) {
+        this.oanda = oanda;
+        this.priceStream = priceStream;
+        this.props = props;
+        this.mapper = mapper;
+    }
+
+    public static String reason(int code) {
+        return REASONS[code];
+    }
+
+    /**
+     * Starts keeping the instruments' quotes current: from the pricing stream when {@code streaming} (whoever runs
+     * the stream starts it), otherwise by polling.
+     */
+    public synchronized void start(List<String> instruments, boolean streaming) {
+        stop();
+        quotes.clear();
+        if (streaming) {
+            subscription = priceStream.subscribe(this::onTick);
+        } else {
+            String csv = String.join(",", instruments);
+            poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "pricing-cache");
+                t.setDaemon(true);
+                return t;
+            });
+            poller.scheduleWithFixedDelay(() -> refresh(csv), 0, props.getLive().getPricingRefreshMs(),
+                TimeUnit.MILLISECONDS);
+        }
+        log.info("Price cache started | instruments={} source={}", instruments, streaming ? "STREAM" : "POLL");
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+        if (subscription != null) {
+            try {
+                subscription.close();
+            } catch (Exception e) {
+                log.debug("Unsubscribe failed: {}", e.toString());
+            }
+            subscription = null;
+        }
+    }
+
+    public void onTick(PriceTick tick) {
+        quotes.put(tick.instrument(), tick);
+        updates.incrementAndGet();
+    }
+
+    /**
+     * The latest quote, or null if none arrived yet. Never blocks.
+     */
+    public PriceTick quote(String instrument) {
+        return quotes.get(instrument);
+    }
+
+    /**
+     * Returns {@link #PASS} or the reason an entry in the instrument should not be taken now.
+     */
+    public int checkSpread(String instrument) {
+        PriceTick q = quotes.get(instrument);
+        if (q == null) return NO_QUOTE;
+        if (System.currentTimeMillis() - q.time().toEpochMilli() > props.getLive().getQuoteMaxAgeMs()) return STALE;
+        if (!q.tradeable()) return NOT_TRADEABLE;
+        return q.spread() / Indicators.pipSize(instrument) > props.getTrading().getMaxSpreadPips() ? SPREAD : PASS;
+    }
+
+    public Stats stats() {
+        return new Stats(refreshes.get(), failures.get(), updates.get(), quotes.size());
+    }
+
+    // one batched call for every instrument
+    private void refresh(String instrumentsCsv) {
+        try {
+            JsonNode root = mapper.readTree(oanda.getPricing(instrumentsCsv));
+            for (JsonNode p : root.path("prices")) {
+                double bid = p.path("bids").path(0).path("price").asDouble(Double.NaN);
+                double ask = p.path("asks").path(0).path("price").asDouble(Double.NaN);
+                if (Double.isNaN(bid) || Double.isNaN(ask)) continue;
+                onTick(new PriceTick(p.path("instrument").asText(), Instant.parse(p.path("time").asText()), bid, ask,
+                    p.path("tradeable").asBoolean(true)));
+            }
+            refreshes.incrementAndGet();
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            log.warn("Pricing refresh failed: {}", e.toString());
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.mar.forex.infrastructure.marketdata;
+
+import static com.mar.forex.util.BacktestUtils.granularitySeconds;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.springframework.stereotype.Component;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.Candle;
+import com.mar.forex.domain.model.PriceTick;
+
+/**
+ * Builds mid-price candles locally from bid/ask ticks, for several granularities at once
+ * ({@code forex.live.barGranularities}).
+ *
+ * Each instrument keeps one open bar per granularity as plain fields and its completed bars in a primitive
+ * {@link BarRing} of {@code forex.live.barHistory}, so a tick costs a map lookup and a few comparisons and allocates
+ * nothing. Bars are aligned to epoch multiples of their length (S5 to H12; D and W follow the broker's trading-day
+ * boundary and are rejected). Completed bars are {@link Candle}s like those {@code DataService} returns and are handed
+ * to listeners in time order per instrument and granularity.
+ *
+ * A bar completes when the first tick of a later bar arrives, or, in a quiet market, {@value #GRACE_MS} ms after
+ * its end. Like OANDA's candles, periods without ticks produce no bar, so a weekend is simply a gap.
+ * Out-of-order ticks inside an open bar update its high/low (and its open if they are the earliest); ticks for a bar
+ * that has already been emitted are counted as late and dropped. A tick identical to the instrument's previous one
+ * (same time, bid and ask) is dropped as a duplicate.
+ */
+@Slf4j
+@Component
+public class TickBarAggregator {
+    // how long after its end a bar waits for late ticks before it is closed without a successor
+    private static final long GRACE_MS = 1000;
+
+    @FunctionalInterface
+    public interface BarListener {
+        /**
+         * Called with the instrument's lock held: keep it short and hand heavier work off.
+         */
+        void onBar(String instrument, String granularity, Candle bar);
+    }
+
+    public record Stats(long ticks, long duplicates, long late, long bars) {
+    }
+
+    private final Map<String, InstrumentBars> instruments = new ConcurrentHashMap<>();
+    private final List<BarListener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService closer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "bar-closer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong late = new AtomicLong();
+    private final AtomicLong bars = new AtomicLong();
+    private final int history;
+    private volatile String[] granularities;
+    private volatile long[] barNanos;
+
+    public TickBarAggregator(AppProperties props) {
+        this.history = props.getLive().getBarHistory();
+        configure(props.getLive().getBarGranularities());
+        closer.scheduleAtFixedRate(() -> closeDue(System.currentTimeMillis() * 1_000_000L), GRACE_MS, GRACE_MS / 4,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the granularities to build and drops all open and completed bars.
+     *
+     * @throws IllegalArgumentException for a granularity that cannot be aligned to epoch multiples
+     */
+    public synchronized void configure(List<String> granularities) {
+        String[] g = granularities.stream().map(String::trim).filter(s -> !s.isEmpty()).distinct()
+            .toArray(String[]::new);
+        long[] nanos = new long[g.length];
+        for (int k = 0; k < g.length; k++) {
+            long secs = granularitySeconds(g[k]);
+            if (secs <= 0 || secs > 12 * 3600) throw new IllegalArgumentException("Cannot aggregate " + g[k]);
+            nanos[k] = TimeUnit.SECONDS.toNanos(secs);
+        }
+        instruments.clear();
+        this.barNanos = nanos;
+        this.granularities = g;
+        log.info("TickBarAggregator | granularities={} history={}", List.of(g), history);
+    }
+
+    public List<String> granularities() {
+        return List.of(granularities);
+    }
+
+    public AutoCloseable subscribe(BarListener listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    public void onTick(PriceTick tick) {
+        Instant t = tick.time();
+        onTick(tick.instrument(), t.getEpochSecond() * 1_000_000_000L + t.getNano(), tick.bid(), tick.ask());
+    }
+
+    public void onTick(String instrument, long epochNanos, double bid, double ask) {
+        InstrumentBars ib = instruments.get(instrument);
+        if (ib == null) ib = instruments.computeIfAbsent(instrument, InstrumentBars::new);
+        synchronized (ib) {
+            if (epochNanos == ib.lastNanos && bid == ib.lastBid && ask == ib.lastAsk) {
+                duplicates.incrementAndGet();
+                return;
+            }
+            ib.lastNanos = epochNanos;
+            ib.lastBid = bid;
+            ib.lastAsk = ask;
+            ticks.incrementAndGet();
+            double mid = (bid + ask) / 2;
+            boolean accepted = false;
+            for (int k = 0; k < ib.series.length; k++) {
+                accepted |= update(ib, ib.series[k], epochNanos, mid);
+            }
+            if (!accepted) late.incrementAndGet();
+        }
+    }
+
+    private boolean update(InstrumentBars ib, Series s, long t, double mid) {
+        long start = t - Math.floorMod(t, s.barNanos);
+        if (s.open) {
+            if (start < s.start) return false;
+            if (start > s.start) emit(ib, s);
+        } else if (start <= s.lastEmitted) {
+            return false;
+        }
+        if (!s.open) {
+            s.open = true;
+            s.start = start;
+            s.o = s.h = s.l = s.c = mid;
+            s.volume = 1;
+            s.firstNanos = s.lastNanos = t;
+            return true;
+        }
+        if (mid > s.h) s.h = mid;
+        if (mid < s.l) s.l = mid;
+        s.volume++;
+        if (t >= s.lastNanos) {
+            s.c = mid;
+            s.lastNanos = t;
+        }
+        if (t < s.firstNanos) {
+            s.o = mid;
+            s.firstNanos = t;
+        }
+        return true;
+    }
+
+    private void emit(InstrumentBars ib, Series s) {
+        long epochSecond = s.start / 1_000_000_000L;
+        s.ring.add(epochSecond, s.o, s.h, s.l, s.c, s.volume);
+        s.open = false;
+        s.lastEmitted = s.start;
+        bars.incrementAndGet();
+        if (listeners.isEmpty()) return;
+        var bar = new Candle(Instant.ofEpochSecond(epochSecond), s.o, s.h, s.l, s.c, s.volume);
+        for (var l : listeners) {
+            try {
+                l.onBar(ib.instrument, s.granularity, bar);
+            } catch (RuntimeException e) {
+                log.warn("Bar listener failed: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Closes every open bar whose end plus the grace period is before {@code nowNanos}.
+     */
+    public void closeDue(long nowNanos) {
+        long grace = TimeUnit.MILLISECONDS.toNanos(GRACE_MS);
+        for (InstrumentBars ib : instruments.values()) {
+            synchronized (ib) {
+                for (Series s : ib.series) {
+                    if (s.open && s.start + s.barNanos + grace <= nowNanos) emit(ib, s);
+                }
+            }
+        }
+    }
+
+    /**
+     * The newest {@code count} completed bars of an instrument, oldest first; empty if none were built yet.
+     */
+    public List<Candle> bars(String instrument, String granularity, int count) {
+        InstrumentBars ib = instruments.get(instrument);
+        if (ib == null) return List.of();
+        synchronized (ib) {
+            for (Series s : ib.series) {
+                if (s.granularity.equals(granularity)) return s.ring.last(count);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Hands the newest {@code count} completed bars of an instrument (oldest first) to {@code action} with the
+     * instrument's lock held, so no bar completes meanwhile: every bar is either in the list or reaches the listeners
+     * after {@code action} returns. Keep {@code action} short and never block in it.
+     */
+    public void withBars(String instrument, String granularity, int count, Consumer<List<Candle>> action) {
+        InstrumentBars ib = instruments.get(instrument);
+        if (ib == null) ib = instruments.computeIfAbsent(instrument, InstrumentBars::new);
+        synchronized (ib) {
+            List<Candle> out = List.of();
+            for (Series s : ib.series) {
+                if (s.granularity.equals(granularity)) out = s.ring.last(count);
+            }
+            action.accept(out);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(ticks.get(), duplicates.get(), late.get(), bars.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closer.shutdownNow();
+    }
+
+    private final class InstrumentBars {
+        final String instrument;
+        final Series[] series;
+        long lastNanos = Long.MIN_VALUE;
+        double lastBid = Double.NaN;
+        double lastAsk = Double.NaN;
+
+        InstrumentBars(String instrument) {
+            this.instrument = instrument;
+            String[] g = granularities;
+            long[] nanos = barNanos;
+            this.series = new Series[g.length];
+            for (int k = 0; k < g.length; k++) series[k] = new Series(g[k], nanos[k], history);
+        }
+    }
+
+    private static final class Series {
+        final String granularity;
+        final long barNanos;
+        final BarRing ring;
+        boolean open;
+        long start;
+        long lastEmitted = Long.MIN_VALUE;
+        double o;
+        double h;
+        double l;
+        double c;
+        long volume;
+        long firstNanos;
+        long lastNanos;
+
+        Series(String granularity, long barNanos, int history) {
+            this.granularity = granularity;
+            this.barNanos = barNanos;
+            this.ring = new BarRing(history);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.mar.forex.infrastructure.messaging;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.springframework.stereotype.Component;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.Replay;
+
+/**
+ * Per-job event log behind the SSE hub, so a subscriber can replay a job from any event id.
+ *
+ * Each job keeps its newest {@code forex.replay.ringEvents} events in an in-memory ring; older events are spilled to
+ * an append-only file {@code {dir}/{jobId}.sse} with a sparse id-to-offset index, so a reader resuming far back seeks
+ * close to its position instead of scanning the file. Memory is bounded across all jobs: when the rings together
+ * exceed {@code maxMemoryMb}, the least recently active jobs are spilled entirely. A periodic sweep drops jobs idle
+ * for longer than {@code ttlMinutes} and the oldest jobs beyond {@code maxJobs} or {@code maxDiskMb}.
+ *
+ * Event ids are per job, start at 1 and are strictly increasing. Spill files do not survive a restart.
+ */
+@Slf4j
+@Component
+public class ReplayStore {
+    // every INDEX_EVERY-th spilled record is indexed
+    private static final int INDEX_EVERY = 64;
+    // rough per-event overhead on top of the string payloads
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final long SWEEP_SECS = 30;
+
+    public record Entry(long id, String name, String data) {
+        long bytes() {
+            return ENTRY_OVERHEAD + 2L * (name.length() + data.length());
+        }
+    }
+
+    private final Map<String, JobLog> logs = new ConcurrentHashMap<>();
+    private final AtomicLong memoryBytes = new AtomicLong();
+    private final List<Consumer<String>> evictionListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "sse-replay-sweep");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Replay cfg;
+    private final Path dir;
+
+    public ReplayStore(AppProperties props) {
+        this.cfg = props.getReplay();
+        this.dir = Path.of(cfg.getDir());
+        clearStaleFiles();
+        sweeper.scheduleAtFixedRate(this::sweep, SWEEP_SECS, SWEEP_SECS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Registers a callback invoked with the job id whenever a job's log is evicted.
+     */
+    public void onEvict(Consumer<String> listener) {
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * Appends an event and returns its id.
+     */
+    public long append(String jobId, String name, String data) {
+        long id = logs.computeIfAbsent(jobId, JobLog::new).append(name, data);
+        if (memoryBytes.get() > maxMemoryBytes()) enforceMemory();
+        return id;
+    }
+
+    /**
+     * Returns up to {@code max} events with ids greater than {@code afterId}, oldest first.
+     */
+    public List<Entry> since(String jobId, long afterId, int max) {
+        JobLog jl = logs.get(jobId);
+        return jl == null ? List.of() : jl.since(afterId, max);
+    }
+
+    public boolean exists(String jobId) {
+        return logs.containsKey(jobId);
+    }
+
+    public long lastId(String jobId) {
+        JobLog jl = logs.get(jobId);
+        return jl == null ? 0 : jl.lastId();
+    }
+
+    public void markCompleted(String jobId) {
+        logs.computeIfAbsent(jobId, JobLog::new).completed = true;
+    }
+
+    public boolean isCompleted(String jobId) {
+        JobLog jl = logs.get(jobId);
+        return jl != null && jl.completed;
+    }
+
+    /**
+     * The job's "result" event if it has one, otherwise its most recent event; null for unknown jobs.
+     */
+    public Entry resultOrLast(String jobId) {
+        JobLog jl = logs.get(jobId);
+        if (jl == null) return null;
+        long id = jl.resultId > 0 ? jl.resultId : jl.lastId();
+        if (id == 0) return null;
+        List<Entry> page = jl.since(id - 1, 1);
+        return page.isEmpty() ? null : page.get(0);
+    }
+
+    public void remove(String jobId) {
+        JobLog jl = logs.remove(jobId);
+        if (jl == null) return;
+        jl.close(true);
+        for (var l : evictionListeners) {
+            try {
+                l.accept(jobId);
+            } catch (Exception e) {
+                log.warn("Replay eviction listener failed for {}: {}", jobId, e.getMessage());
+            }
+        }
+    }
+
+    public long memoryBytes() {
+        return memoryBytes.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        for (String jobId : List.copyOf(logs.keySet())) {
+            JobLog jl = logs.remove(jobId);
+            if (jl != null) jl.close(true);
+        }
+    }
+
+    private long maxMemoryBytes() {
+        return cfg.getMaxMemoryMb() * 1024L * 1024L;
+    }
+
+    /**
+     * Spills whole rings, least recently active job first, until memory is back under the limit.
+     */
+    private void enforceMemory() {
+        List<JobLog> byAge = new ArrayList<>(logs.values());
+        byAge.sort(Comparator.comparingLong(l -> l.lastActive));
+        for (JobLog jl : byAge) {
+            if (memoryBytes.get() <= maxMemoryBytes()) return;
+            jl.spillAll();
+        }
+    }
+
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            long ttlMs = TimeUnit.MINUTES.toMillis(cfg.getTtlMinutes());
+            for (var e : logs.entrySet()) {
+                if (now - e.getValue().lastActive > ttlMs) remove(e.getKey());
+            }
+            List<JobLog> byAge = new ArrayList<>(logs.values());
+            byAge.sort(Comparator.comparingLong(l -> l.lastActive));
+            long maxDisk = cfg.getMaxDiskMb() * 1024L * 1024L;
+            long disk = byAge.stream().mapToLong(l -> l.fileBytes).sum();
+            int excessJobs = byAge.size() - cfg.getMaxJobs();
+            for (JobLog jl : byAge) {
+                if (disk <= maxDisk && excessJobs <= 0) break;
+                disk -= jl.fileBytes;
+                excessJobs--;
+                remove(jl.jobId);
+            }
+        } catch (Exception e) {
+            log.warn("Replay sweep failed: {}", e.getMessage());
+        }
+    }
+
+    private void clearStaleFiles() {
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.sse")) {
+            for (Path f : files) Files.deleteIfExists(f);
+        } catch (IOException e) {
+            log.warn("Could not clear replay dir {}: {}", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * One job's log. Appends and ring access are serialized on the instance; disk reads happen outside the lock on
+     * a separate file channel, bounded by the length flushed at the time of the read.
+     */
+    private final class JobLog {
+        final String jobId;
+        final Path file;
+        final ArrayDeque<Entry> ring = new ArrayDeque<>();
+        long ringBytes;
+        long nextId = 1;
+        long spilledUpTo;          // highest id on disk
+        long spilledCount;
+        volatile long fileBytes;
+        long[] indexIds = new long[16];
+        long[] indexOffsets = new long[16];
+        int indexSize;
+        DataOutputStream out;
+        volatile long resultId;
+        volatile long lastActive = System.currentTimeMillis();
+        volatile boolean completed;
+        boolean closed;
+
+        JobLog(String jobId) {
+            this.jobId = jobId;
+            this.file = dir.resolve(jobId + ".sse");
+        }
+
+        synchronized long append(String name, String data) {
+            long id = nextId++;
+            Entry e = new Entry(id, name, data);
+            ring.addLast(e);
+            ringBytes += e.bytes();
+            memoryBytes.addAndGet(e.bytes());
+            if ("result".equals(name)) resultId = id;
+            lastActive = System.currentTimeMillis();
+            while (ring.size() > cfg.getRingEvents()) spillOldest();
+            return id;
+        }
+
+        synchronized long lastId() {
+            return nextId - 1;
+        }
+
+        List<Entry> since(long afterId, int max) {
+            long diskFrom;
+            long diskLimit;
+            synchronized (this) {
+                if (closed) return List.of();
+                if (afterId >= spilledUpTo) return fromRing(afterId, max);
+                flush();
+                diskFrom = indexedOffset(afterId + 1);
+                diskLimit = fileBytes;
+            }
+            List<Entry> page = readDisk(diskFrom, diskLimit, afterId, max);
+            if (!page.isEmpty() && page.size() < max) {
+                page.addAll(since(page.get(page.size() - 1).id(), max - page.size()));
+            }
+            return page;
+        }
+
+        private List<Entry> fromRing(long afterId, int max) {
+            List<Entry> page = new ArrayList<>(Math.min(max, ring.size()));
+            for (Entry e : ring) {
+                if (e.id() <= afterId) continue;
+                if (page.size() == max) break;
+                page.add(e);
+            }
+            return page;
+        }
+
+        synchronized void spillAll() {
+            while (!ring.isEmpty()) spillOldest();
+        }
+
+        private void spillOldest() {
+            Entry e = ring.pollFirst();
+            ringBytes -= e.bytes();
+            memoryBytes.addAndGet(-e.bytes());
+            if (closed) return;
+            try {
+                if (out == null) {
+                    Files.createDirectories(dir);
+                    out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)));
+                }
+                if (spilledCount % INDEX_EVERY == 0) addIndex(e.id(), fileBytes);
+                // record: id, then name and data as length-prefixed UTF-8, so the reader can count what it consumed
+                byte[] name = e.name().getBytes(StandardCharsets.UTF_8);
+                byte[] data = e.data().getBytes(StandardCharsets.UTF_8);
+                int before = out.size();
+                out.writeLong(e.id());
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeInt(data.length);
+                out.write(data);
+                fileBytes += out.size() - before;
+                spilledUpTo = e.id();
+                spilledCount++;
+            } catch (IOException ex) {
+                // the event is lost for replay; readers behind it skip the gap
+                log.warn("Replay spill failed for {}: {}", jobId, ex.getMessage());
+            }
+        }
+
+        private void addIndex(long id, long offset) {
+            if (indexSize == indexIds.length) {
+                indexIds = Arrays.copyOf(indexIds, indexSize * 2);
+                indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+            }
+            indexIds[indexSize] = id;
+            indexOffsets[indexSize] = offset;
+            indexSize++;
+        }
+
+        /**
+         * File offset of the last indexed record with id at most {@code id}.
+         */
+        private long indexedOffset(long id) {
+            int idx = Arrays.binarySearch(indexIds, 0, indexSize, id);
+            if (idx < 0) idx = -idx - 2;
+            return idx < 0 ? 0 : indexOffsets[idx];
+        }
+
+        private void flush() {
+            try {
+                if (out != null) out.flush();
+            } catch (IOException e) {
+                log.warn("Replay flush failed for {}: {}", jobId, e.getMessage());
+            }
+        }
+
+        private List<Entry> readDisk(long from, long limit, long afterId, int max) {
+            List<Entry> page = new ArrayList<>();
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                ch.position(from);
+                InputStream raw = Channels.newInputStream(ch);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 64 * 1024));
+                long pos = from;
+                while (pos < limit && page.size() < max) {
+                    long id = in.readLong();
+                    byte[] name = new byte[in.readInt()];
+                    in.readFully(name);
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    pos += 8 + 4 + name.length + 4 + data.length;
+                    if (id > afterId) {
+                        page.add(new Entry(id, new String(name, StandardCharsets.UTF_8),
+                            new String(data, StandardCharsets.UTF_8)));
+                    }
+                }
+            } catch (EOFException e) {
+                // a concurrent spill extended the file past the flushed length we captured; the rest is read next time
+            } catch (IOException e) {
+                log.warn("Replay read failed for {}: {}", jobId, e.getMessage());
+            }
+            return page;
+        }
+
+        synchronized void close(boolean delete) {
+            if (closed) return;
+            closed = true;
+            memoryBytes.addAndGet(-ringBytes);
+            ring.clear();
+            ringBytes = 0;
+            try {
+                if (out != null) out.close();
+                if (delete) Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Replay cleanup failed for {}: {}", jobId, e.getMessage());
+            }
+        }
+    }
+}
@@ -3,117 +3,293 @@ package com.mar.forex.infrastructure.messaging;
 import lombok.extern.slf4j.Slf4j;
 import java.io.IOException;
 import java.time.Duration;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mar.forex.config.IoExecutor;
 
 /**
  * A SseHub
  *
- * Maintains one emitter per jobId, a small replay buffer so late subscribers can
- * catch up, periodic heartbeats to keep proxies warm, and a graceful completion
- * that allows the final event to flush before closing.
+ * Fans each job's events out to any number of subscribers. Producers only append to the {@link ReplayStore} and never
+ * touch the network: every subscriber is a cursor over the job's event log, advanced by a sender task on the I/O
+ * executor, so a slow browser tab cannot stall a backtest loop or the other tabs, and a tab that falls behind reads
+ * from the store (memory or spill file) instead of holding a private queue.
+ *
+ * Every event carries its id, so a reconnecting EventSource resumes from its Last-Event-ID and a late subscriber can
+ * replay the job from the start. Within one send page, progress events are coalesced to the latest one. A completed
+ * job's log stays replayable until the store evicts it.
+ *
+ * High-volume producers can use {@link #emitBatched} (items collected per job and sent as one JSON array every
+ * {@value #FLUSH_MS} ms or {@value #BATCH_MAX} items) and {@link #emitCoalesced} (only the latest value per flush).
+ * Pending batches are flushed before any critical event and before completion, so a result never overtakes trades.
  */
 @Slf4j
 @Component
 public class SseHub {
-    // how many past events to retain per job for late joiners
-    private static final int REPLAY_LIMIT = 32;
+    // events read from the store per send pass
+    private static final int PAGE = 128;
     // heartbeat period in seconds
     private static final long HEARTBEAT_SECS = 10;
+    // batching: flush period and the item count that forces an early flush
+    private static final long FLUSH_MS = 250;
+    private static final int BATCH_MAX = 200;
+
+    private static final Set<String> CRITICAL = Set.of("result", "error", "cancelled", "done");
 
-    private final Map<String, SseEmitter> emitters = new ConcurrentHashMap<>();
-    private final Map<String, Deque<Event>> buffers = new ConcurrentHashMap<>();
+    private final Map<String, List<Subscriber>> channels = new ConcurrentHashMap<>();
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final IoExecutor io;
+    private final ObjectMapper objectMapper;
+    private final ReplayStore store;
 
-    public SseHub() {
+    public SseHub(IoExecutor io, ObjectMapper objectMapper, ReplayStore store) {
+        this.io = io;
+        this.objectMapper = objectMapper;
+        this.store = store;
+        store.onEvict(this::evicted);
         // send heartbeats periodically so the connection isn't idled out by proxies
         scheduler.scheduleAtFixedRate(this::heartbeatAll, HEARTBEAT_SECS, HEARTBEAT_SECS, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(this::flushAll, FLUSH_MS, FLUSH_MS, TimeUnit.MILLISECONDS);
     }
 
-    public SseEmitter connect(String jobId) {
+    /**
+     * Subscribes to a job, replaying every stored event after {@code lastEventId} (the SSE Last-Event-ID header), or
+     * the whole log when it is absent.
+     */
+    public SseEmitter connect(String jobId, String lastEventId) {
         var emitter = new SseEmitter(Duration.ofMinutes(30).toMillis());
-        emitter.onTimeout(() -> emitters.remove(jobId));
-        emitter.onCompletion(() -> emitters.remove(jobId));
-        emitters.put(jobId, emitter);
-
-        // Immediately replay any buffered events for this jobId
-        var buf = buffers.get(jobId);
-        if (buf != null) {
-            for (var ev : buf) {
-                try {
-                    emitter.send(SseEmitter.event().name(ev.name()).data(ev.data(), MediaType.APPLICATION_JSON));
-                } catch (IOException e) {
-                    log.warn("SSE replay failed: {}", e.getMessage());
-                    break;
-                }
-            }
-        }
+        var sub = new Subscriber(jobId, emitter, parseEventId(lastEventId));
+        emitter.onTimeout(() -> unsubscribe(sub));
+        emitter.onCompletion(() -> unsubscribe(sub));
+        emitter.onError(e -> unsubscribe(sub));
+        // registering before the first drain means any later emit wakes this subscriber; earlier ones are in the store
+        channels.compute(jobId, (k, subs) -> {
+            if (subs == null) subs = new CopyOnWriteArrayList<>();
+            subs.add(sub);
+            return subs;
+        });
+        schedule(sub);
         return emitter;
     }
 
-    public SseEmitter emitter(String jobId) {
-        return emitters.computeIfAbsent(jobId, k -> new SseEmitter(Duration.ofMinutes(30).toMillis()));
-    }
-
     /**
-     * Returns the JSON payload of the most recently emitted event for this job id.
+     * Returns the JSON payload of the job's result event, or of the most recent event when there is no result yet.
      * Falls back to an empty JSON object if nothing has been sent yet.
      */
     public String getLast(String jobId) {
-        var buf = buffers.get(jobId);
-        if (buf == null || buf.isEmpty()) return "{}";
-        var last = buf.peekLast();
-        return last != null ? last.data() : "{}";
+        var entry = store.resultOrLast(jobId);
+        return entry != null ? entry.data() : "{}";
+    }
+
+    /**
+     * Whether the job still has a replayable event log.
+     */
+    public boolean isKnown(String jobId) {
+        return store.exists(jobId);
     }
 
     public void emit(String jobId, String eventType, String data) {
-        // store in replay buffer
-        var buf = buffers.computeIfAbsent(jobId, k -> new ArrayDeque<>(REPLAY_LIMIT));
-        if (buf.size() == REPLAY_LIMIT) buf.removeFirst();
-        buf.addLast(new Event(eventType, data));
+        if (CRITICAL.contains(eventType)) flush(jobId);
+        store.append(jobId, eventType, data);
+        wake(jobId);
+    }
 
-        var em = emitters.get(jobId);
-        if (em == null) return;
-        try {
-            em.send(SseEmitter.event().name(eventType).data(data, MediaType.APPLICATION_JSON));
-        } catch (IOException e) {
-            log.warn("SSE send failed: {}", e.getMessage());
-            emitters.remove(jobId);
+    /**
+     * Queues one item of a batched event; subscribers receive {@code batchEvent} with a JSON array of items.
+     */
+    public void emitBatched(String jobId, String batchEvent, Object item) {
+        var p = pending.computeIfAbsent(jobId, k -> new Pending());
+        boolean full;
+        synchronized (p) {
+            p.batches.computeIfAbsent(batchEvent, k -> new ArrayList<>()).add(item);
+            full = ++p.items >= BATCH_MAX;
+        }
+        if (full) flush(jobId);
+    }
+
+    /**
+     * Records the latest value of a coalesced event; only the newest value per flush is sent.
+     */
+    public void emitCoalesced(String jobId, String eventType, Object payload) {
+        var p = pending.computeIfAbsent(jobId, k -> new Pending());
+        synchronized (p) {
+            p.latest.put(eventType, payload);
         }
     }
 
     public void complete(String jobId) {
-        // allow a short delay so the last event can flush before completion
-        scheduler.schedule(() -> {
-            var em = emitters.remove(jobId);
-            if (em != null) {
-                try {
-                    em.send(SseEmitter.event().name("done").data("{}", MediaType.APPLICATION_JSON));
-                } catch (Exception ignore) { }
-                try { em.complete(); } catch (Exception ignore) { }
+        flush(jobId);
+        pending.remove(jobId);
+        store.markCompleted(jobId);
+        // each subscriber sends "done" once it has caught up with the log, then closes the stream
+        wake(jobId);
+    }
+
+    private void flushAll() {
+        for (String jobId : pending.keySet()) {
+            try {
+                flush(jobId);
+            } catch (Exception e) {
+                log.warn("SSE flush failed for {}: {}", jobId, e.getMessage());
             }
-            buffers.remove(jobId);
-        }, 500, TimeUnit.MILLISECONDS);
+        }
     }
 
-    private void heartbeatAll() {
-        emitters.forEach((jobId, em) -> {
+    /**
+     * Serializes and emits everything pending for a job. Runs under the job's pending lock so concurrent flushes
+     * (timer vs. producer) cannot reorder batches; emit() only touches memory, so the lock is held briefly.
+     */
+    private void flush(String jobId) {
+        var p = pending.get(jobId);
+        if (p == null) return;
+        synchronized (p) {
+            if (p.items == 0 && p.latest.isEmpty()) return;
             try {
-                em.send(SseEmitter.event().name("heartbeat").data("{}", MediaType.APPLICATION_JSON));
-            } catch (IOException e) {
-                log.debug("SSE heartbeat failed for {}: {}", jobId, e.getMessage());
-                emitters.remove(jobId);
+                for (var e : p.batches.entrySet()) {
+                    if (!e.getValue().isEmpty()) emit(jobId, e.getKey(), objectMapper.writeValueAsString(e.getValue()));
+                }
+                for (var e : p.latest.entrySet()) {
+                    emit(jobId, e.getKey(), objectMapper.writeValueAsString(e.getValue()));
+                }
+            } catch (JsonProcessingException e) {
+                log.warn("SSE batch serialization failed for {}: {}", jobId, e.getMessage());
+            } finally {
+                p.batches.clear();
+                p.latest.clear();
+                p.items = 0;
             }
+        }
+    }
+
+    private void heartbeatAll() {
+        channels.forEach((jobId, subs) -> {
+            for (var sub : subs) {
+                sub.heartbeat = true;
+                schedule(sub);
+            }
+        });
+    }
+
+    private void wake(String jobId) {
+        var subs = channels.get(jobId);
+        if (subs != null) for (var sub : subs) schedule(sub);
+    }
+
+    private void evicted(String jobId) {
+        var subs = channels.remove(jobId);
+        if (subs == null) return;
+        for (var sub : subs) {
+            sub.closed = true;
+            sub.emitter.complete();
+        }
+    }
+
+    private void unsubscribe(Subscriber sub) {
+        sub.closed = true;
+        channels.computeIfPresent(sub.jobId, (k, subs) -> {
+            subs.remove(sub);
+            return subs.isEmpty() ? null : subs;
         });
     }
 
-    private record Event(String name, String data) {}
+    private static long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) return 0;
+        try {
+            return Math.max(0, Long.parseLong(lastEventId.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void schedule(Subscriber sub) {
+        if (!sub.closed && sub.draining.compareAndSet(false, true)) {
+            io.execute(() -> drain(sub));
+        }
+    }
+
+    /**
+     * Sends everything in the log past the subscriber's cursor, then a pending heartbeat, then "done" once the job is
+     * complete. At most one drain per subscriber runs at a time, which keeps its events in order.
+     */
+    private void drain(Subscriber sub) {
+        try {
+            while (!sub.closed) {
+                List<ReplayStore.Entry> page = store.since(sub.jobId, sub.cursor, PAGE);
+                if (!page.isEmpty()) {
+                    sendPage(sub, page);
+                    continue;
+                }
+                if (store.isCompleted(sub.jobId)) {
+                    sub.emitter.send(SseEmitter.event().name("done").data("{}", MediaType.APPLICATION_JSON));
+                    sub.closed = true;
+                    sub.emitter.complete();
+                    unsubscribe(sub);
+                    return;
+                }
+                if (sub.heartbeat) {
+                    sub.heartbeat = false;
+                    sub.emitter.send(SseEmitter.event().name("heartbeat").data("{}", MediaType.APPLICATION_JSON));
+                }
+                sub.draining.set(false);
+                // an emit between the empty read and set(false) would otherwise wait for the next one
+                boolean more = store.lastId(sub.jobId) > sub.cursor || sub.heartbeat || store.isCompleted(sub.jobId);
+                if (!more || !sub.draining.compareAndSet(false, true)) return;
+            }
+        } catch (Exception e) {
+            log.debug("SSE send failed for {}: {}", sub.jobId, e.getMessage());
+            unsubscribe(sub);
+        }
+        sub.draining.set(false);
+    }
+
+    private void sendPage(Subscriber sub, List<ReplayStore.Entry> page) throws IOException {
+        // a reader that is behind only needs the newest progress of the page
+        long lastProgress = -1;
+        for (var e : page) if ("progress".equals(e.name())) lastProgress = e.id();
+        for (var e : page) {
+            if ("progress".equals(e.name()) && e.id() != lastProgress) continue;
+            sub.emitter.send(SseEmitter.event()
+                .id(Long.toString(e.id()))
+                .name(e.name())
+                .data(e.data(), MediaType.APPLICATION_JSON));
+        }
+        sub.cursor = page.get(page.size() - 1).id();
+    }
+
+    private static final class Pending {
+        final Map<String, List<Object>> batches = new LinkedHashMap<>();
+        final Map<String, Object> latest = new LinkedHashMap<>();
+        int items;
+    }
+
+    private static final class Subscriber {
+        final String jobId;
+        final SseEmitter emitter;
+        final AtomicBoolean draining = new AtomicBoolean();
+        // id of the last event sent; only the draining task touches it
+        long cursor;
+        volatile boolean heartbeat;
+        volatile boolean closed;
+
+        Subscriber(String jobId, SseEmitter emitter, long cursor) {
+            this.jobId = jobId;
+            this.emitter = emitter;
+            this.cursor = cursor;
+        }
+    }
 }
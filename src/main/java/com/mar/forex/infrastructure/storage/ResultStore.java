@@ -0,0 +1,364 @@
+package com.mar.forex.infrastructure.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.ResultComparison;
+import com.mar.forex.domain.model.ResultMeta;
+import com.mar.forex.domain.model.Results;
+import com.mar.forex.domain.model.StoredResult;
+import com.mar.forex.domain.model.TradeEvent;
+
+/**
+ * Durable store of completed job results, one binary file per job plus an append-only JSON-lines index.
+ *
+ * File layout ({@code {dir}/{jobId}.res}): magic, a length-prefixed JSON header (meta, metrics, effective config),
+ * the two equity curves as raw doubles, then the trade ledger column by column, with side/status dictionary-encoded.
+ * A result is therefore read back with one sequential read. Decoded results sit in an LRU cache bounded by
+ * {@code forex.results.cacheMb}; listing and comparison use only the in-memory index.
+ */
+@Slf4j
+@Component
+public class ResultStore {
+    private static final int MAGIC = 0x46585231; // "FXR1"
+    private static final String INDEX = "index.jsonl";
+    private static final String EXT = ".res";
+    private static final TypeReference<Map<String, Object>> MAP = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper;
+    private final Results cfg;
+    private final Path dir;
+    private final Map<String, ResultMeta> index = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, StoredResult> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    public ResultStore(AppProperties props, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.cfg = props.getResults();
+        this.dir = Path.of(cfg.getDir());
+        loadIndex();
+    }
+
+    /**
+     * The configuration section of a stored result: the job's snapshot without broker credentials.
+     */
+    public JsonNode configOf(AppProperties cfg) {
+        ObjectNode node = objectMapper.valueToTree(cfg);
+        node.remove("oanda");
+        return node;
+    }
+
+    /**
+     * Persists a result and indexes it. Failures are logged, never thrown, so a full disk cannot fail the job.
+     */
+    public void save(StoredResult stored) {
+        if (!cfg.isEnabled()) return;
+        // metrics as plain JSON values, the same shape they have after a restart
+        StoredResult result = new StoredResult(stored.jobId(), stored.kind(), stored.inputKey(), stored.createdAt(),
+            stored.instrument(), stored.granularity(), objectMapper.convertValue(stored.metrics(), MAP),
+            stored.config(), stored.equityCurve(), stored.equityCurveUSD(), stored.ledger());
+        try {
+            Files.createDirectories(dir);
+            Path file = fileOf(result.jobId());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                write(out, result);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            ResultMeta meta = result.meta(Files.size(file));
+            synchronized (this) {
+                Files.writeString(dir.resolve(INDEX), objectMapper.writeValueAsString(meta) + "\n",
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                index.put(meta.jobId(), meta);
+                cachePut(result, meta.bytes());
+            }
+            log.info("Result stored | jobId={} kind={} bytes={}", meta.jobId(), meta.kind(), meta.bytes());
+        } catch (IOException e) {
+            log.warn("Could not store result {}: {}", result.jobId(), e.getMessage());
+        }
+    }
+
+    public Optional<ResultMeta> meta(String jobId) {
+        return Optional.ofNullable(index.get(jobId));
+    }
+
+    /**
+     * The newest stored result produced from the given input key.
+     */
+    public Optional<ResultMeta> findByKey(String inputKey) {
+        if (inputKey == null) return Optional.empty();
+        return index.values().stream()
+            .filter(m -> inputKey.equals(m.inputKey()))
+            .max(Comparator.comparing(ResultMeta::createdAt));
+    }
+
+    /**
+     * Returns a stored result from the cache, or reads and caches it.
+     */
+    public Optional<StoredResult> load(String jobId) {
+        ResultMeta meta = index.get(jobId);
+        if (meta == null) return Optional.empty();
+        synchronized (this) {
+            StoredResult hit = cache.get(jobId);
+            if (hit != null) return Optional.of(hit);
+        }
+        try {
+            StoredResult result = read(Files.readAllBytes(fileOf(jobId)));
+            synchronized (this) {
+                cachePut(result, meta.bytes());
+            }
+            return Optional.of(result);
+        } catch (IOException e) {
+            log.warn("Could not read result {}: {}", jobId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Newest first, optionally restricted to one kind (backtest, portfolio, train).
+     */
+    public List<ResultMeta> list(String kind, int limit) {
+        return index.values().stream()
+            .filter(m -> kind == null || kind.isBlank() || kind.equalsIgnoreCase(m.kind()))
+            .sorted(Comparator.comparing(ResultMeta::createdAt).reversed())
+            .limit(Math.max(0, limit))
+            .toList();
+    }
+
+    /**
+     * Compares stored runs metric by metric, and lists the config paths whose values differ between them.
+     */
+    public ResultComparison compare(List<String> jobIds) {
+        List<ResultMeta> runs = new ArrayList<>();
+        List<Map<String, JsonNode>> configs = new ArrayList<>();
+        for (String id : jobIds) {
+            ResultMeta meta = index.get(id);
+            if (meta == null) throw new IllegalArgumentException("Unknown result " + id);
+            runs.add(meta);
+            Map<String, JsonNode> flat = new LinkedHashMap<>();
+            load(id).map(StoredResult::config).ifPresent(c -> flatten("", c, flat));
+            configs.add(flat);
+        }
+
+        Set<String> metricKeys = new LinkedHashSet<>();
+        for (ResultMeta m : runs) {
+            m.metrics().forEach((k, v) -> {
+                if (!(v instanceof Map) && !(v instanceof List)) metricKeys.add(k);
+            });
+        }
+        Map<String, List<Object>> metrics = new LinkedHashMap<>();
+        for (String k : metricKeys) {
+            List<Object> values = new ArrayList<>();
+            for (ResultMeta m : runs) values.add(m.metrics().get(k));
+            metrics.put(k, values);
+        }
+
+        Set<String> paths = new LinkedHashSet<>();
+        configs.forEach(c -> paths.addAll(c.keySet()));
+        Map<String, List<JsonNode>> diff = new LinkedHashMap<>();
+        for (String p : paths) {
+            List<JsonNode> values = new ArrayList<>();
+            for (var c : configs) values.add(c.get(p));
+            if (values.stream().distinct().count() > 1) diff.put(p, values);
+        }
+        return new ResultComparison(runs, metrics, diff);
+    }
+
+    private Path fileOf(String jobId) {
+        return dir.resolve(jobId + EXT);
+    }
+
+    private void cachePut(StoredResult result, long bytes) {
+        // decoded arrays and boxed ledger rows take roughly twice the file size
+        long weight = 2 * bytes;
+        long max = cfg.getCacheMb() * 1024L * 1024L;
+        if (weight > max) return;
+        StoredResult prev = cache.put(result.jobId(), result);
+        if (prev == null) cachedBytes += weight;
+        Iterator<Map.Entry<String, StoredResult>> it = cache.entrySet().iterator();
+        while (cachedBytes > max && it.hasNext()) {
+            var eldest = it.next();
+            if (eldest.getKey().equals(result.jobId())) continue;
+            ResultMeta m = index.get(eldest.getKey());
+            cachedBytes -= 2 * (m != null ? m.bytes() : 0);
+            it.remove();
+        }
+    }
+
+    private void loadIndex() {
+        Path file = dir.resolve(INDEX);
+        try {
+            if (Files.exists(file)) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (line.isBlank()) continue;
+                    ResultMeta m = objectMapper.readValue(line, ResultMeta.class);
+                    if (Files.exists(fileOf(m.jobId()))) index.put(m.jobId(), m);
+                }
+            } else if (Files.isDirectory(dir)) {
+                rebuildIndex(file);
+            }
+            if (!index.isEmpty()) log.info("ResultStore | {} stored results in {}", index.size(), dir);
+        } catch (IOException e) {
+            log.warn("Could not load result index {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Recreates a missing index from the headers of the result files.
+     */
+    private void rebuildIndex(Path indexFile) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + EXT)) {
+            for (Path f : files) {
+                try {
+                    StoredResult r = read(Files.readAllBytes(f));
+                    ResultMeta m = r.meta(Files.size(f));
+                    index.put(m.jobId(), m);
+                    lines.add(objectMapper.writeValueAsString(m));
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable result {}: {}", f, e.getMessage());
+                }
+            }
+        }
+        if (!lines.isEmpty()) Files.write(indexFile, lines, StandardCharsets.UTF_8);
+    }
+
+    // ------------------------- Binary layout -------------------------
+
+    private void write(DataOutputStream out, StoredResult r) throws IOException {
+        ObjectNode header = objectMapper.createObjectNode();
+        header.put("jobId", r.jobId());
+        header.put("kind", r.kind());
+        header.put("inputKey", r.inputKey());
+        header.put("createdAt", r.createdAt().toString());
+        header.put("instrument", r.instrument());
+        header.put("granularity", r.granularity());
+        header.set("metrics", objectMapper.valueToTree(r.metrics()));
+        header.set("config", r.config());
+        byte[] h = objectMapper.writeValueAsBytes(header);
+
+        out.writeInt(MAGIC);
+        out.writeInt(h.length);
+        out.write(h);
+        writeDoubles(out, r.equityCurve());
+        writeDoubles(out, r.equityCurveUSD());
+
+        List<TradeEvent> ledger = r.ledger() != null ? r.ledger() : List.of();
+        int n = ledger.size();
+        out.writeInt(n);
+        for (TradeEvent t : ledger) out.writeInt(t.index());
+        writeDictionary(out, ledger.stream().map(TradeEvent::side).toList());
+        writeDictionary(out, ledger.stream().map(TradeEvent::status).toList());
+        for (TradeEvent t : ledger) out.writeDouble(t.r());
+        for (TradeEvent t : ledger) out.writeDouble(t.equityR());
+        for (TradeEvent t : ledger) out.writeDouble(t.entry());
+        for (TradeEvent t : ledger) out.writeDouble(t.exit() != null ? t.exit() : Double.NaN);
+        for (TradeEvent t : ledger) out.writeDouble(t.stop());
+        for (TradeEvent t : ledger) out.writeDouble(t.takeProfit());
+        for (TradeEvent t : ledger) out.writeDouble(t.pnlUSD());
+        for (TradeEvent t : ledger) out.writeDouble(t.equityUSD());
+        for (TradeEvent t : ledger) out.writeLong(Instant.parse(t.time()).toEpochMilli());
+    }
+
+    private StoredResult read(byte[] bytes) throws IOException {
+        var in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) throw new IOException("not a result file");
+        JsonNode header = objectMapper.readTree(in.readNBytes(in.readInt()));
+        double[] equityCurve = readDoubles(in);
+        double[] equityCurveUSD = readDoubles(in);
+
+        int n = in.readInt();
+        int[] idx = new int[n];
+        for (int i = 0; i < n; i++) idx[i] = in.readInt();
+        String[] side = readDictionary(in, n);
+        String[] status = readDictionary(in, n);
+        double[][] cols = new double[8][];
+        for (int c = 0; c < cols.length; c++) {
+            cols[c] = new double[n];
+            for (int i = 0; i < n; i++) cols[c][i] = in.readDouble();
+        }
+        long[] time = new long[n];
+        for (int i = 0; i < n; i++) time[i] = in.readLong();
+
+        List<TradeEvent> ledger = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double exit = cols[3][i];
+            ledger.add(new TradeEvent(idx[i], side[i], cols[0][i], cols[1][i], status[i], cols[2][i],
+                Double.isNaN(exit) ? null : exit, cols[4][i], cols[5][i],
+                Instant.ofEpochMilli(time[i]).toString(), cols[6][i], cols[7][i]));
+        }
+        return new StoredResult(
+            header.path("jobId").asText(),
+            header.path("kind").asText(),
+            header.path("inputKey").asText(null),
+            Instant.parse(header.path("createdAt").asText()),
+            header.path("instrument").asText(null),
+            header.path("granularity").asText(null),
+            objectMapper.convertValue(header.path("metrics"), MAP),
+            header.path("config"),
+            equityCurve, equityCurveUSD, ledger);
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] xs) throws IOException {
+        double[] v = xs != null ? xs : new double[0];
+        out.writeInt(v.length);
+        for (double x : v) out.writeDouble(x);
+    }
+
+    private static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] v = new double[in.readInt()];
+        for (int i = 0; i < v.length; i++) v[i] = in.readDouble();
+        return v;
+    }
+
+    private static void writeDictionary(DataOutputStream out, List<String> values) throws IOException {
+        List<String> dict = new ArrayList<>(new LinkedHashSet<>(values));
+        out.writeInt(dict.size());
+        for (String s : dict) out.writeUTF(Objects.toString(s, ""));
+        for (String s : values) out.writeByte(dict.indexOf(s));
+    }
+
+    private static String[] readDictionary(DataInputStream in, int n) throws IOException {
+        String[] dict = new String[in.readInt()];
+        for (int i = 0; i < dict.length; i++) dict[i] = in.readUTF();
+        String[] out = new String[n];
+        for (int i = 0; i < n; i++) out[i] = dict[in.readUnsignedByte()];
+        return out;
+    }
+
+    private static void flatten(String prefix, JsonNode node, Map<String, JsonNode> out) {
+        if (node.isObject()) {
+            node.fields().forEachRemaining(e -> flatten(prefix.isEmpty() ? e.getKey() : prefix + "." + e.getKey(),
+                e.getValue(), out));
+        } else {
+            out.put(prefix, node);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.mar.forex.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Service;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.AccountSnapshot;
+import com.mar.forex.domain.model.OrderResult;
+import com.mar.forex.infrastructure.broker.OandaClient;
+
+/**
+ * Keeps an in-memory {@link AccountSnapshot} of the broker account current, so order sizing reads balance and
+ * positions without a network call.
+ *
+ * The account (balance, margin, open positions, last transaction id) is loaded once; after that, every
+ * {@code forex.account.pollSeconds} and right after one of our orders fills, only what happened since the last known
+ * transaction is pulled ({@code GET /accounts/{id}/changes}) and folded into a new snapshot: the balance of the newest
+ * transaction that carries one, the positions those transactions touched, and the broker's current NAV and margin.
+ * Snapshots are immutable and published with a single volatile write, so readers never lock or wait. A failed pull
+ * keeps the last snapshot and the next round reloads the whole account.
+ */
+@Slf4j
+@Service
+public class AccountState {
+
+    public record Stats(long loads, long updates, long transactions, long failures, String lastTransactionId,
+                        long ageMs) {
+    }
+
+    private final OandaClient oanda;
+    private final AppProperties props;
+    private final ObjectMapper mapper;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private volatile AccountSnapshot current;
+    private volatile ScheduledExecutorService sync;
+    // only touched by the sync thread
+    private boolean reload = true;
+
+    public AccountState(OandaClient oanda, AppProperties props, ObjectMapper mapper, OrderPipeline orders) {
+        this.oanda = oanda;
+        this.props = props;
+        this.mapper = mapper;
+        orders.onResult(r -> {
+            if (r.status() == OrderResult.Status.FILLED) refreshSoon();
+        });
+    }
+
+    /**
+     * Starts synchronising on a background thread; the first round loads the full account.
+     */
+    public synchronized void start() {
+        if (sync != null) return;
+        sync = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "account-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        reload = true;
+        sync.scheduleWithFixedDelay(this::refresh, 0, props.getAccount().getPollSeconds(), TimeUnit.SECONDS);
+        log.info("Account sync started | pollSeconds={}", props.getAccount().getPollSeconds());
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (sync == null) return;
+        sync.shutdownNow();
+        sync = null;
+    }
+
+    /**
+     * The latest snapshot, or null until the account has loaded once. Never blocks.
+     */
+    public AccountSnapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Pulls the changes now rather than at the next poll; a no-op while stopped or when a pull is already queued.
+     */
+    public void refreshSoon() {
+        ScheduledExecutorService s = sync;
+        if (s == null || !refreshQueued.compareAndSet(false, true)) return;
+        try {
+            s.execute(() -> {
+                refreshQueued.set(false);
+                refresh();
+            });
+        } catch (RejectedExecutionException e) {
+            refreshQueued.set(false);
+        }
+    }
+
+    public Stats stats() {
+        AccountSnapshot s = current;
+        return new Stats(loads.get(), updates.get(), transactions.get(), failures.get(),
+            s == null ? null : s.lastTransactionId(),
+            s == null ? -1 : System.currentTimeMillis() - s.asOf().toEpochMilli());
+    }
+
+    private void refresh() {
+        try {
+            AccountSnapshot prev = current;
+            if (prev == null || reload) {
+                current = load();
+                reload = false;
+                loads.incrementAndGet();
+                log.info("Account loaded | balance={} nav={} positions={} lastTransactionID={}", current.balance(),
+                    current.nav(), current.positions(), current.lastTransactionId());
+            } else {
+                current = applyChanges(prev);
+                updates.incrementAndGet();
+            }
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            reload = true;
+            log.warn("Account sync failed, keeping the last snapshot: {}", e.toString());
+        }
+    }
+
+    private AccountSnapshot load() throws IOException {
+        JsonNode root = mapper.readTree(oanda.getAccount());
+        JsonNode account = root.path("account");
+        Map<String, Long> positions = new HashMap<>();
+        for (JsonNode p : account.path("positions")) {
+            long units = netUnits(p);
+            if (units != 0) positions.put(p.path("instrument").asText(), units);
+        }
+        String last = text(root, "lastTransactionID", text(account, "lastTransactionID", null));
+        if (last == null) throw new IOException("Account reply without lastTransactionID");
+        return new AccountSnapshot(last, account.path("balance").asDouble(), account.path("NAV").asDouble(),
+            account.path("unrealizedPL").asDouble(), account.path("marginUsed").asDouble(),
+            account.path("marginAvailable").asDouble(), Map.copyOf(positions), Instant.now());
+    }
+
+    private AccountSnapshot applyChanges(AccountSnapshot prev) throws IOException {
+        JsonNode root = mapper.readTree(oanda.getAccountChanges(prev.lastTransactionId()));
+        JsonNode changes = root.path("changes");
+        JsonNode state = root.path("state");
+
+        double balance = prev.balance();
+        for (JsonNode tx : changes.path("transactions")) {
+            if (tx.has("accountBalance")) balance = tx.path("accountBalance").asDouble(balance);
+        }
+        transactions.addAndGet(changes.path("transactions").size());
+
+        Map<String, Long> positions = prev.positions();
+        if (changes.path("positions").size() > 0) {
+            Map<String, Long> changed = new HashMap<>(positions);
+            for (JsonNode p : changes.path("positions")) {
+                long units = netUnits(p);
+                if (units == 0) changed.remove(p.path("instrument").asText());
+                else changed.put(p.path("instrument").asText(), units);
+            }
+            positions = Map.copyOf(changed);
+        }
+        return new AccountSnapshot(text(root, "lastTransactionID", prev.lastTransactionId()), balance,
+            state.path("NAV").asDouble(prev.nav()), state.path("unrealizedPL").asDouble(prev.unrealizedPl()),
+            state.path("marginUsed").asDouble(prev.marginUsed()),
+            state.path("marginAvailable").asDouble(prev.marginAvailable()), positions, Instant.now());
+    }
+
+    // OANDA reports a position's long and short sides separately, short units negative
+    private static long netUnits(JsonNode position) {
+        return Math.round(position.path("long").path("units").asDouble()
+            + position.path("short").path("units").asDouble());
+    }
+
+    private static String text(JsonNode node, String field, String def) {
+        JsonNode v = node.path(field);
+        return v.isMissingNode() || v.isNull() ? def : v.asText();
+    }
+}
@@ -3,49 +3,67 @@ import static com.mar.forex.util.BacktestUtils.*;
 import static java.util.Map.entry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
-import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 import org.tribuo.Example;
 import org.tribuo.Model;
 import org.tribuo.classification.Label;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.BacktestSummary;
 import com.mar.forex.domain.model.Candle;
 import com.mar.forex.domain.model.PaperTrade;
-import com.mar.forex.domain.model.TrainResult;
+import com.mar.forex.domain.model.ResamplingReport;
+import com.mar.forex.domain.model.SignalColumns;
+import com.mar.forex.domain.model.StoredResult;
+import com.mar.forex.domain.model.TradeEvent;
 import com.mar.forex.infrastructure.broker.PaperTradeEngine;
 import com.mar.forex.infrastructure.messaging.SseHub;
-import com.mar.forex.util.Indicators;
+import com.mar.forex.infrastructure.storage.ResultStore;
+import com.mar.forex.util.DoubleSeries;
+import com.mar.forex.util.RSeriesResampler;
 import com.mar.forex.util.TribuoUtil;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class BacktesterService implements ApplicationRunner {
-    private final AppProperties props;
-    private final MLService mlService;
-    private final PaperTradeEngine paper;
+    private final SignalService signalService;
+    private final PaperTradeEngineFactory paperTradeEngineFactory;
     private final SseHub sseHub;
+    private final ResultStore resultStore;
     private final ObjectMapper objectMapper;
-    private final Environment env;
 
     @Override
     public void run(ApplicationArguments args) {
     }
 
     /**
-     * Backtests using an already-fetched candle list and associates progress/results with a UI job id. Currently logs
-     * progress; hook your SSE/event bus inside if desired.
+     * Backtests using an already-fetched candle list and associates progress/results with a UI job id. Progress,
+     * closed trades and the final result are streamed through the SSE hub. Every setting is read from {@code cfg}, the
+     * job's own configuration snapshot, and the run keeps its own paper engine, so runs may execute concurrently.
+     * The result is stored under {@code inputKey} so identical submissions can be answered from the store.
      */
-    public void runForUI(List<Candle> candles, String jobId) throws Exception {
+    public void runForUI(AppProperties cfg, List<Candle> candles, String jobId, String inputKey) throws Exception {
+        run(cfg, candles, jobId, inputKey, true);
+    }
+
+    /**
+     * Same engine as {@link #runForUI} without any per-event payloads or SSE traffic; returns the summary instead.
+     */
+    public BacktestSummary runHeadless(AppProperties cfg, List<Candle> candles, String runId) throws Exception {
+        return run(cfg, candles, runId, null, false);
+    }
+
+    private BacktestSummary run(AppProperties cfg, List<Candle> candles, String jobId, String inputKey, boolean stream)
+        throws Exception {
         // --- Calibration bins (taken-trade pWin vs. a realized outcome) ---
         double[] binEdges = new double[]{0.45, 0.50, 0.55, 0.60, 0.65, 0.70, 0.75, 1.01};
         int B = binEdges.length - 1;
@@ -55,122 +73,98 @@ public class BacktesterService implements ApplicationRunner {
         java.util.LinkedList<Double> pendingPWin = new java.util.LinkedList<>(); // FIFO since maxOpenPerInstrument=1
         int lastClosedCount = 0;
         // Use configured instrument/granularity for metadata
-        String instrument = props.getTrading().getInstrument();
-        String granularity = props.getTrading().getGranularity();
-        Path modelPath = Path.of("models/model.zip");
-
-        double[][] calibTable = loadCalibration(java.nio.file.Path.of("models/calibration.trade.csv"));
-        String calibName = "calibration.trade.csv";
-        if (calibTable == null) {
-            calibTable = loadCalibration(java.nio.file.Path.of("models/calibration.csv"));
-            calibName = (calibTable == null) ? null : "calibration.csv";
-        }
-        if (calibTable == null) log.info("Calibration table not found; using raw probabilities.");
-        else log.info("Loaded calibration table ({}) with {} bins.", calibName, calibTable.length);
+        String instrument = cfg.getTrading().getInstrument();
+        String granularity = cfg.getTrading().getGranularity();
 
         // ---- Log out the full config being applied (for UI transparency/debugging) ----
         double execThreshCfg = 0.0;
         try {
-            execThreshCfg = props.getExecution().getSignalThreshold();
+            execThreshCfg = cfg.getExecution().getSignalThreshold();
         } catch (Throwable ignored) {
         }
         if (!Double.isFinite(execThreshCfg)) execThreshCfg = 0.0;
-        double basePwCfg = Math.min(1.0, (1.0 / (1.0 + props.getPaper().getRr())) + props.getFilter().getEvMargin());
+        double basePwCfg = Math.min(1.0, (1.0 / (1.0 + cfg.getPaper().getRr())) + cfg.getFilter().getEvMargin());
         double effPwCfg = Math.max(basePwCfg, execThreshCfg);
         logJ("CONFIG", Map.ofEntries(
             entry("instrument", instrument),
             entry("granularity", granularity),
-            entry("fast", props.getTrading().getFastSma()),
-            entry("slow", props.getTrading().getSlowSma()),
-            entry("atrP", props.getPaper().getAtrPeriod()),
-            entry("rr", props.getPaper().getRr()),
-            entry("mode", String.valueOf(props.getPaper().getMode())),
-            entry("leverage", props.getPaper().getLeverage()),
-            entry("startBalance", props.getPaper().getStartBalance()),
-            entry("stopAtrMult", props.getPaper().getStopAtrMulti()),
-            entry("evMargin", r2(props.getFilter().getEvMargin())),
-            entry("evMarginR", r2(props.getFilter().getEvMarginR())),
-            entry("volWin", props.getFilter().getAtrWindow()),
-            entry("volPct", props.getFilter().getAtrPercentile()),
-            entry("sessionStr", props.getFilter().getSession()),
-            entry("rsiLong", props.getFilter().getRsiLong()),
-            entry("rsiShort", props.getFilter().getRsiShort()),
-            entry("onePerDay", props.getFilter().isOnePerDay()),
+            entry("fast", cfg.getTrading().getFastSma()),
+            entry("slow", cfg.getTrading().getSlowSma()),
+            entry("atrP", cfg.getPaper().getAtrPeriod()),
+            entry("rr", cfg.getPaper().getRr()),
+            entry("mode", String.valueOf(cfg.getPaper().getMode())),
+            entry("leverage", cfg.getPaper().getLeverage()),
+            entry("startBalance", cfg.getPaper().getStartBalance()),
+            entry("stopAtrMult", cfg.getPaper().getStopAtrMulti()),
+            entry("evMargin", r2(cfg.getFilter().getEvMargin())),
+            entry("evMarginR", r2(cfg.getFilter().getEvMarginR())),
+            entry("volWin", cfg.getFilter().getAtrWindow()),
+            entry("volPct", cfg.getFilter().getAtrPercentile()),
+            entry("sessionStr", cfg.getFilter().getSession()),
+            entry("rsiLong", cfg.getFilter().getRsiLong()),
+            entry("rsiShort", cfg.getFilter().getRsiShort()),
+            entry("onePerDay", cfg.getFilter().isOnePerDay()),
             entry("execThresh", r2(execThreshCfg)),
             entry("basePw", r2(basePwCfg)),
             entry("effPw", r2(effPwCfg))
         ));
 
         log.info("Backtest(UI) | {} {} | candles={} rr={} mode={} jobId={}",
-            instrument, granularity, candles.size(), props.getPaper().getRr(), props.getPaper().getMode(), jobId);
+            instrument, granularity, candles.size(), cfg.getPaper().getRr(), cfg.getPaper().getMode(), jobId);
 
-        double leverage = props.getPaper().getLeverage();
-        double startBalance = props.getPaper().getStartBalance();
+        double leverage = cfg.getPaper().getLeverage();
+        double startBalance = cfg.getPaper().getStartBalance();
         double equityUSD = startBalance;
         java.util.LinkedList<Double> pendingRiskUSD = new java.util.LinkedList<>();
-        List<Double> equityCurveUSD = new ArrayList<>();
-        double stopAtrMult = props.getPaper().getStopAtrMulti();
-        try {
+        DoubleSeries equityCurveUSD = new DoubleSeries();
+        double stopAtrMult = cfg.getPaper().getStopAtrMulti();
+        if (stream) try {
             Map<String, Object> lever = new HashMap<>();
             lever.put("leverage", leverage);
             lever.put("startBalance", startBalance);
             sseHub.emit(jobId, "progress", objectMapper.writeValueAsString(lever));
         } catch (Exception ignored) {
         }
-        try {
+        if (stream) try {
             Map<String, Object> startPayload = new HashMap<>();
             startPayload.put("phase", "start");
-            startPayload.put("instrument", props.getTrading().getInstrument());
-            startPayload.put("granularity", props.getTrading().getGranularity());
+            startPayload.put("instrument", cfg.getTrading().getInstrument());
+            startPayload.put("granularity", cfg.getTrading().getGranularity());
             startPayload.put("candles", candles.size());
-            startPayload.put("rr", props.getPaper().getRr());
-            startPayload.put("mode", String.valueOf(props.getPaper().getMode()));
+            startPayload.put("rr", cfg.getPaper().getRr());
+            startPayload.put("mode", String.valueOf(cfg.getPaper().getMode()));
             sseHub.emit(jobId, "progress", objectMapper.writeValueAsString(startPayload));
         } catch (Exception ignored) {
         }
 
         if (candles.size() < 300) {
             log.warn("Too few candles ({}). Aborting backtest(UI) for jobId={}", candles.size(), jobId);
-            return;
+            return BacktestSummary.empty(instrument, granularity, candles.size(), startBalance);
         }
 
         int n = candles.size();
-        double[] close = new double[n], high = new double[n], low = new double[n];
-        for (int i = 0; i < n; i++) {
-            close[i] = candles.get(i).close;
-            high[i] = candles.get(i).high;
-            low[i] = candles.get(i).low;
-        }
 
-        int fast = props.getTrading().getFastSma();
-        int slow = props.getTrading().getSlowSma();
-        int atrP = props.getPaper().getAtrPeriod();
-
-        double[] atr = Indicators.atr(high, low, close, atrP);
-
-        double evMargin = props.getFilter().getEvMargin();
-        int volWin = props.getFilter().getAtrWindow();
-        double volPct = props.getFilter().getAtrPercentile();
-        String sessionStr = props.getFilter().getSession();
-        int[] sess = parseSessionHoursUtc(sessionStr);
-        int sessionStart = sess[0], sessionEnd = sess[1];
-        int rsiLong = props.getFilter().getRsiLong();
-        int rsiShort = props.getFilter().getRsiShort();
-        boolean onePerDay = props.getFilter().isOnePerDay();
+        double evMargin = cfg.getFilter().getEvMargin();
+        int volWin = cfg.getFilter().getAtrWindow();
+        double volPct = cfg.getFilter().getAtrPercentile();
+        String sessionStr = cfg.getFilter().getSession();
+        int rsiLong = cfg.getFilter().getRsiLong();
+        int rsiShort = cfg.getFilter().getRsiShort();
+        boolean onePerDay = cfg.getFilter().isOnePerDay();
         // Execution probability floor (independent of EV gate)
         double execThresh = 0.0;
         try {
-            execThresh = props.getExecution().getSignalThreshold();
+            execThresh = cfg.getExecution().getSignalThreshold();
         } catch (Throwable ignored) {
         }
         if (!Double.isFinite(execThresh)) execThresh = 0.0;
         // Compute a base EV-derived threshold using current RR
-        double rrForLog = props.getPaper().getRr();
+        double rrForLog = cfg.getPaper().getRr();
         double basePw = Math.min(1.0, (1.0 / (1.0 + rrForLog)) + evMargin);
         // The Effective threshold is the stricter of the two
         double effPw = Math.max(basePw, execThresh);
 
-        double evMarginR = props.getFilter().getEvMarginR();
+        double evMarginR = cfg.getFilter().getEvMarginR();
         logJ("FILTERS", Map.ofEntries(
             entry("evMargin", r2(evMargin)),
             entry("evMarginR", r2(evMarginR)),
@@ -200,50 +194,18 @@ public class BacktesterService implements ApplicationRunner {
             entry("effThr", r2(effPw))
         );
 
-        String maType = props.getTrading().getMaType();
-        // Precompute arrays for close, high, low, maFast, maSlow, rsi, atr for use in the main loop
-        double[] preClose = candles.stream().mapToDouble(c -> c.close).toArray();
-        double[] preHigh  = candles.stream().mapToDouble(c -> c.high).toArray();
-        double[] preLow   = candles.stream().mapToDouble(c -> c.low).toArray();
-
-        double[] preMaFast = ("EMA".equalsIgnoreCase(maType) || "HYBRID".equalsIgnoreCase(maType))
-            ? Indicators.ema(preClose, fast)
-            : Indicators.sma(preClose, fast);
-
-        double[] preMaSlow = ("EMA".equalsIgnoreCase(maType))
-            ? Indicators.ema(preClose, slow)
-            : Indicators.sma(preClose, slow);
-
-        double[] preRsi = Indicators.rsi(preClose, 14);
-        double[] preAtr = Indicators.atr(preHigh, preLow, preClose, atrP);
-
-        String featSig = featureSignature(maType, fast, slow, atrP);
-        Path metaPath = Path.of("models/model.meta.txt");
         // Load or train a model with feature signature check
-        Model<Label> model = null;
-        boolean needTrain = true;
-        String existingSig = readMeta(metaPath);
-        if (Files.exists(modelPath) && existingSig != null && existingSig.equals(featSig)) {
-            model = mlService.load(modelPath);
-            log.info("Loaded model: {} (sig OK, UI path)", modelPath.toAbsolutePath());
-            needTrain = false;
-        } else if (Files.exists(modelPath)) {
-            log.info("Model present but signature changed (UI path). Old='{}' New='{}'. Retraining...", existingSig, featSig);
-        } else {
-            log.info("Model missing — training (UI path)...");
-        }
-        if (needTrain) {
-            TrainResult tr = mlService.trainClassifier(candles, instrument, fast, slow, atrP);
-            model = tr.getModel();
-            Files.createDirectories(modelPath.getParent());
-            mlService.save(model, modelPath);
-            writeMeta(metaPath, featSig);
-            log.info("Trained & saved: {} (sig written, UI path)", modelPath.toAbsolutePath());
-        }
+        Model<Label> model = signalService.resolveModel(cfg, candles, instrument);
+        // after the model: resolving it may train and rewrite the calibration tables
+        double[][] calibTable = signalService.loadCalibrationTable();
+        // indicators, predicted side and calibrated pWin per bar, the inputs of the entry gates
+        SignalColumns cols = signalService.compute(cfg, instrument, candles, model, calibTable);
+        EntryFilter filter = EntryFilter.from(cfg.getPaper(), cfg.getFilter(), cfg.getExecution());
+        double[] atr = cols.atr();
 
         // ---- Probability scan (pre-loop) ----
-        int warmup = Math.max(Math.max(fast, slow), atrP) + 1;
-        ScanStats scan = doProbabilityScan(model, candles, warmup, n, fast, slow, atrP, props.getTrading().getMaType(), calibTable);
+        int warmup = cols.warmup();
+        ScanStats scan = doProbabilityScan(model, cols, calibTable);
         logJ("SCAN", Map.ofEntries(
             entry("count", scan.count),
             entry("calibrated", calibTable != null),
@@ -263,133 +225,44 @@ public class BacktesterService implements ApplicationRunner {
         }
 
         // Paper trading
-        paper.reset();
+        PaperTradeEngine paper = paperTradeEngineFactory.create(cfg);
+        RiskEngine riskEngine = RiskEngine.from(cfg.getRisk(), cfg.getPaper());
         double equityR = 0.0;
-        List<Double> equityCurve = new ArrayList<>();
+        DoubleSeries equityCurve = new DoubleSeries();
+        List<TradeEvent> ledger = new ArrayList<>();
         int cooldownBars = barsPerDayFor(granularity);
         int lastOpenIndex = -cooldownBars;
         int lastOpenDay = -1;
+        int closedOpenDay = -1, closedOpenDayCount = 0;
         int rejProb = 0, rejVol = 0, rejSession = 0, rejTrend = 0, rejWindow = 0, rejMargin = 0;
         int rejEVR = 0;
         int considered = 0, passedProb = 0, opened = 0;
         for (int i = warmup; i < n; i++) {
+            if ((i & 255) == 0) JobContext.checkCancelled();
             Candle c = candles.get(i);
 
-            Example<Label> ex = TribuoUtil.exampleFromArrays(i, preClose, preMaFast, preMaSlow, preRsi, preAtr);
-            if (ex == null) continue;
+            int signal = cols.side()[i];
+            if (signal == 0) continue;
             considered++;
-
-            var pred = model.predict(ex);
-            String label = pred.getOutput().getLabel();
-            PaperTrade.Side side = "UP".equals(label) ? PaperTrade.Side.BUY : PaperTrade.Side.SELL;
-
-            // Gate entries by positive EV with a margin, volatility floor, session filter, and regime filter
-            double rrVal = props.getPaper().getRr();
-            double minPw = 1.0 / (1.0 + rrVal);
-            double baseThreshold = Math.min(1.0, minPw + evMargin);
-            // Combine with an execution signal threshold (stricter wins)
-            double execFloor = 0.0;
-            try {
-                execFloor = props.getExecution().getSignalThreshold();
-            } catch (Throwable ignored) {
-            }
-            if (!Double.isFinite(execFloor)) execFloor = 0.0;
-            double probThreshold = Math.max(baseThreshold, execFloor);
-            boolean allowTrade = true;
-            double pWinCandidate = Double.NaN;
-            try {
-                var scores = pred.getOutputScores();
-
-                Double vUp = null, vDown = null;
-                if (scores != null) {
-                    for (var e : scores.entrySet()) {
-                        String lab = labelName(e.getKey());
-                        double val = e.getValue().getScore();
-                        if ("UP".equals(lab)) vUp = val;
-                        else if ("DOWN".equals(lab)) vDown = val;
-                    }
-                }
-
-                if (vUp != null && vDown != null) {
-                    Double pUp, pDown;
-                    boolean in01 = (vUp >= 0.0 && vUp <= 1.0 && vDown >= 0.0 && vDown <= 1.0);
-                    boolean oneHot = in01 && (
-                        (Math.abs(vUp - 1.0) < 1e-9 && Math.abs(vDown - 0.0) < 1e-9) ||
-                            (Math.abs(vDown - 1.0) < 1e-9 && Math.abs(vUp - 0.0) < 1e-9)
-                    );
-                    boolean sumsToOne = in01 && Math.abs((vUp + vDown) - 1.0) < 1e-6;
-
-                    if (in01 && sumsToOne && !oneHot) {
-                        pUp = vUp; pDown = vDown; // proper probs
-                    } else {
-                        double m = Math.max(vUp, vDown);
-                        double eUp = Math.exp(vUp - m), eDn = Math.exp(vDown - m);
-                        double z = eUp + eDn;
-                        pUp = eUp / z; pDown = eDn / z; // softmax
-                    }
-
-                    double pWin = ("UP".equals(label)) ? pUp : pDown;
-                    double pCal = calibrate(pWin, calibTable);
-                    pWinCandidate = pCal; // used later for binning & streaming
-
-                    // EV gate in R-units: EV_R = p*RR - (1-p)*1
-                    double marginR = env.getProperty("forex.filters.ev.marginR", Double.class, 0.30);
-                    double evR = pCal * rrVal - (1.0 - pCal);
-                    if (evR < marginR) { allowTrade = false; rejEVR++; }
-                    if (allowTrade) {
-                        if (pCal < probThreshold) { allowTrade = false; rejProb++; }
-                        else { passedProb++; }
-                    }
-                }
-            } catch (Throwable ignored) {
-            }
-
-            // Volatility floor with small Slack (5% below percentile) to avoid razor-thin rejections
-            if (allowTrade && (i - 1) >= 0 && (i - 1) >= volWin - 1) {
-                double pXX = percentileOfWindow(atr, i - 1, volWin, volPct);
-                if (Double.isFinite(pXX)) {
-                    double slack = pXX * 0.95; // 5% slack
-                    if (atr[i] < slack) {
-                        allowTrade = false;
-                        rejVol++;
-                    }
-                }
-            }
-
-            // Session filter with soft override for confident signals
-            double pBoost = Double.isNaN(pWinCandidate) ? 0.0 : (pWinCandidate - probThreshold);
-            if (allowTrade && !inSession(c.time, sessionStart, sessionEnd)) {
-                // Soft override: if model is at least +0.5% above the effective threshold, allow outside session
-                if (!(pBoost >= 0.005)) {
-                    allowTrade = false;
-                    rejSession++;
-                }
-            }
-
-            // Trend/Regime filter: require BOTH by default, but allow OR if model is very confident (+0.5% over an eff threshold)
-            if (allowTrade) {
-                double maTol = Math.abs(preMaSlow[i]) * 0.005; // 0.5% tolerance
-                boolean maAligned = (side == PaperTrade.Side.BUY)
-                    ? (preMaFast[i] > preMaSlow[i] - maTol)
-                    : (preMaFast[i] < preMaSlow[i] + maTol);
-                boolean rsiRegime = (side == PaperTrade.Side.BUY)
-                    ? (preRsi[i] > rsiLong)
-                    : (preRsi[i] < rsiShort);
-                boolean trendOk = maAligned && rsiRegime; // baseline
-                if (!trendOk && pBoost >= 0.005) {
-                    // High-confidence override: accept if either MA alignment OR RSI regime is satisfied
-                    trendOk = (maAligned || rsiRegime);
-                }
-                if (!trendOk) {
-                    allowTrade = false;
-                    rejTrend++;
+            PaperTrade.Side side = signal > 0 ? PaperTrade.Side.BUY : PaperTrade.Side.SELL;
+
+            // EV, probability, volatility, session and trend gates, the same ones the live scoring stage runs
+            double pWinCandidate = cols.pWin()[i];
+            int gate = filter.check(cols, i);
+            switch (gate) {
+                case EntryFilter.EV_R -> rejEVR++;
+                case EntryFilter.PROB -> rejProb++;
+                case EntryFilter.VOL -> rejVol++;
+                case EntryFilter.SESSION -> rejSession++;
+                case EntryFilter.TREND -> rejTrend++;
+                default -> {
                 }
             }
+            if (!Double.isNaN(pWinCandidate) && gate != EntryFilter.EV_R && gate != EntryFilter.PROB) passedProb++;
+            boolean allowTrade = gate == EntryFilter.PASS;
 
             int currentDay = toUtcDayKey(c.time);
-            long tradesToday = paper.getClosed().stream()
-                .filter(t -> toUtcDayKey(t.getOpenedAt()) == currentDay)
-                .count();
+            int tradesToday = (currentDay == closedOpenDay) ? closedOpenDayCount : 0;
             boolean windowOk = onePerDay ? (tradesToday < 2) : ((i - lastOpenIndex) >= cooldownBars);
             if (allowTrade && paper.canOpen(instrument) && windowOk) {
                 double entry = c.close;   // use mid/bid/ask if available
@@ -399,7 +272,7 @@ public class BacktesterService implements ApplicationRunner {
                 double stopDist = Math.max(1e-6, atrVal * stopAtrMult);
 
                 // Intended $ risk and target units
-                double riskUSD = Math.max(0.0, props.getPaper().getRisk()) * equityUSD;
+                double riskUSD = Math.max(0.0, cfg.getPaper().getRisk()) * equityUSD;
                 double targetUnits = (stopDist > 0) ? (riskUSD / stopDist) : 0.0;
 
                 // Margin cap: respect available equity and leverage
@@ -409,6 +282,9 @@ public class BacktesterService implements ApplicationRunner {
                 if (units <= 0) {
                     // No feasible position size under current margin/equity
                     rejMargin++;
+                } else if (riskEngine.tryOpen(instrument, side == PaperTrade.Side.BUY ? units : -units, entry,
+                    equityUSD, c.time.getEpochSecond()) != RiskEngine.PASS) {
+                    // counted by the risk engine under its reason code
                 } else {
                     // Track actual $ risk used (may be < intended if margin-capped)
                     double actualRiskUSD = units * stopDist;
@@ -427,15 +303,25 @@ public class BacktesterService implements ApplicationRunner {
             paper.onCandle(instrument, c.high, c.low, c.close, c.time);
 
             // Stream newly closed trades as SSE events
-            var closedNow = paper.getClosed();
-            if (closedNow.size() > lastClosedCount) {
-                for (int k = lastClosedCount; k < closedNow.size(); k++) {
-                    var t = closedNow.get(k);
+            if (paper.closedCount() > lastClosedCount) {
+                for (var t : paper.getClosedSince(lastClosedCount)) {
+                    // closed trades per open day, for the one-per-day window
+                    int openDay = toUtcDayKey(t.getOpenedAt());
+                    if (openDay == closedOpenDay) closedOpenDayCount++;
+                    else if (openDay > closedOpenDay) {
+                        closedOpenDay = openDay;
+                        closedOpenDayCount = 1;
+                    }
+                    long closedAt = (t.getClosedAt() != null ? t.getClosedAt() : c.time).getEpochSecond();
                     double risk = Math.abs(t.getEntry() - t.getStop());
-                    if (risk == 0) continue;
+                    if (risk == 0) {
+                        riskEngine.onClose(instrument, 0.0, closedAt);
+                        continue;
+                    }
                     double r = (t.getSide() == PaperTrade.Side.BUY)
                         ? (t.getExit() - t.getEntry()) / risk
                         : (t.getEntry() - t.getExit()) / risk;
+                    riskEngine.onClose(instrument, r, closedAt);
                     // Calibration binning
                     double p = pendingPWin.isEmpty() ? Double.NaN : pendingPWin.pollFirst();
                     if (!Double.isNaN(p)) {
@@ -455,63 +341,46 @@ public class BacktesterService implements ApplicationRunner {
                     equityCurveUSD.add(equityUSD);
                     equityR += r;
                     equityCurve.add(equityR);
-                    try {
-                        Map<String, Object> tradePayload = new HashMap<>();
-                        tradePayload.put("type", "trade");
-                        tradePayload.put("index", i);
-                        tradePayload.put("side", String.valueOf(t.getSide()));
-                        tradePayload.put("r", r);
-                        tradePayload.put("equityR", equityR);
-                        tradePayload.put("status", String.valueOf(t.getStatus()));
-                        tradePayload.put("entry", t.getEntry());
-                        tradePayload.put("exit", t.getExit());
-                        tradePayload.put("stop", t.getStop());
-                        tradePayload.put("takeProfit", t.getTake());
-                        // Best-effort timestamp; if trade has exit time, prefer it, else candle time
-                        try {
-                            tradePayload.put("time", t.getExit() != null ? t.getExit().toString() : c.time.toString());
-                        } catch (Throwable __ignore) {
-                            tradePayload.put("time", c.time.toString());
-                        }
-                        tradePayload.put("pnlUSD", pnlUSD);
-                        tradePayload.put("equityUSD", equityUSD);
-                        sseHub.emit(jobId, "trade", objectMapper.writeValueAsString(tradePayload));
-                    } catch (Exception ignored) {
+                    if (stream) {
+                        // Batched by the hub into "trades" array events; serialized once per flush
+                        TradeEvent ev = new TradeEvent(i, String.valueOf(t.getSide()), r, equityR,
+                            String.valueOf(t.getStatus()), t.getEntry(), t.getExit(), t.getStop(), t.getTake(),
+                            (t.getClosedAt() != null ? t.getClosedAt() : c.time).toString(), pnlUSD, equityUSD);
+                        ledger.add(ev);
+                        sseHub.emitBatched(jobId, "trades", ev);
                     }
                 }
-                lastClosedCount = closedNow.size();
+                lastClosedCount = paper.closedCount();
             }
 
-            if ((i % 500) == 0) {
-                try {
-                    sseHub.emit(jobId, "progress", objectMapper.writeValueAsString(Map.of(
-                        "phase", "loop",
-                        "i", i,
-                        "of", n
-                    )));
-                } catch (Exception ignored) {
-                }
+            if (stream && (i % 500) == 0) {
+                sseHub.emitCoalesced(jobId, "progress", Map.of(
+                    "phase", "loop",
+                    "i", i,
+                    "of", n
+                ));
             }
         }
 
         // Always log rejection summary, even if no trades closed
-        logJ("REJECTIONS", Map.ofEntries(
-            entry("considered", considered),
-            entry("passedProb", passedProb),
-            entry("opened", opened),
-            entry("prob", rejProb),
-            entry("vol", rejVol),
-            entry("session", rejSession),
-            entry("trend", rejTrend),
-            entry("window", rejWindow),
-            entry("evR", rejEVR),
-            entry("margin", rejMargin)
-        ));
+        Map<String, Integer> rejections = new LinkedHashMap<>();
+        rejections.put("considered", considered);
+        rejections.put("passedProb", passedProb);
+        rejections.put("opened", opened);
+        rejections.put("prob", rejProb);
+        rejections.put("vol", rejVol);
+        rejections.put("session", rejSession);
+        rejections.put("trend", rejTrend);
+        rejections.put("window", rejWindow);
+        rejections.put("evR", rejEVR);
+        rejections.put("margin", rejMargin);
+        rejections.putAll(riskEngine.rejections());
+        logJ("REJECTIONS", new LinkedHashMap<>(rejections));
 
         var closed = paper.getClosed();
         if (closed.isEmpty()) {
             log.warn("No paper trades closed (UI) jobId={}", jobId);
-            return;
+            return BacktestSummary.empty(instrument, granularity, candles.size(), startBalance);
         }
 
         var rSeries = realizedRSeries(closed);
@@ -523,19 +392,20 @@ public class BacktesterService implements ApplicationRunner {
         double pf = profitFactor(rSeries);
         double mddR = maxDrawdownR(rSeries);
 
+        ResamplingReport resampling = RSeriesResampler.analyze(rSeries, cfg.getResampling());
+        if (resampling != null) {
+            logJ("RESAMPLING", Map.of(
+                "method", resampling.method(),
+                "sims", resampling.simulations(),
+                "totalR", resampling.totalR(),
+                "pf", resampling.profitFactor(),
+                "maxDDR", resampling.maxDrawdownR(),
+                "probLoss", r3(resampling.probLoss())
+            ));
+        }
+
         logCalibrationTable(binEdges, binCount, binWins, binSumR);
-        logJ("REJECTIONS", Map.ofEntries(
-            entry("considered", considered),
-            entry("passedProb", passedProb),
-            entry("opened", opened),
-            entry("prob", rejProb),
-            entry("vol", rejVol),
-            entry("session", rejSession),
-            entry("trend", rejTrend),
-            entry("window", rejWindow),
-            entry("evR", rejEVR),
-            entry("margin", rejMargin)
-        ));
+        logJ("REJECTIONS", new LinkedHashMap<>(rejections));
 
         logJ("RESULTS", Map.ofEntries(
             entry("trades", rSeries.size()),
@@ -547,33 +417,48 @@ public class BacktesterService implements ApplicationRunner {
             entry("pf", r3(pf)),
             entry("maxDDR", r2(mddR)),
             entry("jobId", jobId),
-            entry("maType", props.getTrading().getMaType()),
+            entry("maType", cfg.getTrading().getMaType()),
             entry("filters", effectiveFilters)
         ));
 
-        try {
-            Map<String, Object> result = new HashMap<>();
-            result.put("trades", rSeries.size());
-            result.put("wins", wins);
-            result.put("losses", losses);
-            result.put("winRate", Double.parseDouble(String.format("%.1f", winRate)));
-            result.put("totalR", Double.parseDouble(format2(totalR)));
-            result.put("avgR", Double.parseDouble(format3(avgR)));
-            result.put("profitFactor", Double.parseDouble(format3(pf)));
-            result.put("maxDrawdownR", Double.parseDouble(format2(mddR)));
-            result.put("equityCurve", equityCurve);
-            result.put("startBalance", startBalance);
-            result.put("endBalance", Double.parseDouble(String.format("%.2f", equityUSD)));
-            result.put("equityCurveUSD", equityCurveUSD);
+        double[] fullCurve = equityCurve.toArray();
+        double[] fullCurveUSD = equityCurveUSD.toArray();
+        if (stream) try {
+            Map<String, Object> metrics = new HashMap<>();
+            metrics.put("trades", rSeries.size());
+            metrics.put("wins", wins);
+            metrics.put("losses", losses);
+            metrics.put("winRate", Double.parseDouble(String.format("%.1f", winRate)));
+            metrics.put("totalR", Double.parseDouble(format2(totalR)));
+            metrics.put("avgR", Double.parseDouble(format3(avgR)));
+            metrics.put("profitFactor", Double.parseDouble(format3(pf)));
+            metrics.put("maxDrawdownR", Double.parseDouble(format2(mddR)));
+            metrics.put("startBalance", startBalance);
+            metrics.put("endBalance", Double.parseDouble(String.format("%.2f", equityUSD)));
+            if (resampling != null) metrics.put("resampling", resampling);
+            // stored before the result event, so a client reacting to it can already fetch the stored result
+            resultStore.save(new StoredResult(jobId, "backtest", inputKey, Instant.now(), instrument, granularity,
+                metrics, resultStore.configOf(cfg), fullCurve, fullCurveUSD, ledger));
+
+            // the full curves stay in the store (paged via /result/{jobId}/curve); the event carries a drawable shape
+            Map<String, Object> result = new HashMap<>(metrics);
+            int points = cfg.getResults().getCurvePoints();
+            putCurve(result, "equityCurve", fullCurve, points);
+            putCurve(result, "equityCurveUSD", fullCurveUSD, points);
             sseHub.emit(jobId, "result", objectMapper.writeValueAsString(result));
         } catch (Exception ignored) {
         }
 
         // signal completion to clients
-        try {
+        if (stream) try {
             sseHub.complete(jobId);
         } catch (Exception ignored) {
         }
+
+        return new BacktestSummary(instrument, granularity, n, rSeries.size(), wins, losses,
+            r2(winRate), r2(totalR), r3(avgR), r3(pf), r2(mddR), startBalance, r2(equityUSD),
+            fullCurve, fullCurveUSD,
+            rejections, resampling);
     }
 
     // ------------------------- Compact logging helpers -------------------------
@@ -593,15 +478,6 @@ public class BacktesterService implements ApplicationRunner {
         return Double.parseDouble(String.format("%.3f", v));
     }
 
-    /**
-     * Returns the label text from a Tribuo key which may be a Label or a String.
-     */
-    private static String labelName(Object key) {
-        if (key instanceof org.tribuo.classification.Label) {
-            return ((org.tribuo.classification.Label) key).getLabel();
-        }
-        return String.valueOf(key);
-    }
     // ------------------------- Helper types & methods (extracted) -------------------------
 
     private static final class ScanStats {
@@ -612,78 +488,23 @@ public class BacktesterService implements ApplicationRunner {
     /**
      * Emits the standard probability scan by iterating over bars and applying optional calibration.
      */
-    private ScanStats doProbabilityScan(Model<Label> model,
-                                        List<Candle> candles,
-                                        int warmup,
-                                        int n,
-                                        int fast,
-                                        int slow,
-                                        int atrP,
-                                        String maType,
-                                        double[][] calibTable) {
+    private ScanStats doProbabilityScan(Model<Label> model, SignalColumns cols, double[][] calibTable) {
         ScanStats s = new ScanStats();
         double sumRaw = 0.0, sumCal = 0.0;
         double maxP = 0.0;
         int ge45 = 0, ge50 = 0, ge55 = 0, ge60 = 0, deltaGt01 = 0;
+        int n = cols.time().length;
         double[] allP = new double[n];
         int allPSize = 0;
 
-        // Precompute arrays once
-        double[] close = candles.stream().mapToDouble(c -> c.close).toArray();
-        double[] high  = candles.stream().mapToDouble(c -> c.high).toArray();
-        double[] low   = candles.stream().mapToDouble(c -> c.low).toArray();
-
-        boolean useEMAForFast = "EMA".equalsIgnoreCase(maType) || "HYBRID".equalsIgnoreCase(maType);
-        boolean useEMAForSlow = "EMA".equalsIgnoreCase(maType);
-
-        double[] maFast = useEMAForFast ? Indicators.ema(close, fast) : Indicators.sma(close, fast);
-        double[] maSlow = useEMAForSlow ? Indicators.ema(close, slow) : Indicators.sma(close, slow);
-        double[] rsi    = Indicators.rsi(close, 14);
-        double[] atr    = Indicators.atr(high, low, close, atrP);
-
-
-        for (int i = warmup; i < n; i++) {
-            Example<Label> ex = TribuoUtil.exampleFromArrays(i, close, maFast, maSlow, rsi, atr);
+        for (int i = cols.warmup(); i < n; i++) {
+            Example<Label> ex = TribuoUtil.exampleFromArrays(i, cols.close(), cols.maFast(), cols.maSlow(),
+                cols.rsi(), cols.atr());
             if (ex == null) continue;
             try {
-                var pred = model.predict(ex);
-                var scores = pred.getOutputScores();
-
-                // Collect the two values first (works whether they are probs or raw scores).
-                Double vUp = null, vDown = null;
-                if (scores != null) {
-                    for (var e : scores.entrySet()) {
-                        String lab = labelName(e.getKey());
-                        double val = e.getValue().getScore();
-                        if ("UP".equals(lab)) vUp = val;
-                        else if ("DOWN".equals(lab)) vDown = val;
-                    }
-                }
-
-                // Decide: use as probabilities, or softmax raw/one-hot values.
-                Double pUp = null, pDown = null;
-                if (vUp != null && vDown != null) {
-                    boolean in01 = (vUp >= 0.0 && vUp <= 1.0 && vDown >= 0.0 && vDown <= 1.0);
-                    boolean oneHot = in01 && (
-                        (Math.abs(vUp - 1.0) < 1e-9 && Math.abs(vDown - 0.0) < 1e-9) ||
-                            (Math.abs(vDown - 1.0) < 1e-9 && Math.abs(vUp - 0.0) < 1e-9)
-                    );
-                    boolean sumsToOne = in01 && Math.abs((vUp + vDown) - 1.0) < 1e-6;
-
-                    if (in01 && sumsToOne && !oneHot) {
-                        pUp = vUp;
-                        pDown = vDown; // proper probabilities
-                    } else {
-                        double m = Math.max(vUp, vDown);
-                        double eUp = Math.exp(vUp - m), eDn = Math.exp(vDown - m);
-                        double z = eUp + eDn;
-                        pUp = eUp / z;
-                        pDown = eDn / z; // softmax fallback
-                    }
-                }
-
-                if (pUp != null) {
-                    double pRaw = Math.max(pUp, pDown);
+                double[] probs = SignalService.probabilities(model.predict(ex));
+                if (probs != null) {
+                    double pRaw = Math.max(probs[0], probs[1]);
                     double p = calibrate(pRaw, calibTable);
                     sumRaw += pRaw;
                     sumCal += p;
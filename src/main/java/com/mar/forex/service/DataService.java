@@ -1,13 +1,24 @@
 package com.mar.forex.service;
 
+import static com.mar.forex.util.BacktestUtils.granularitySeconds;
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.springframework.stereotype.Service;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.config.IoExecutor;
 import com.mar.forex.domain.model.Candle;
 import com.mar.forex.infrastructure.broker.OandaClient;
 
@@ -16,9 +27,31 @@ public class DataService {
     private static final int MAX_BATCH = 4900; // under OANDA's limit
 
     private final OandaClient client;
+    private final AppProperties props;
     private final ObjectMapper om = new ObjectMapper();
+    // page fetches get their own threads: callers of loadCandlesPaged often run on the io pool themselves, and
+    // waiting there on pages queued behind them could take every io thread
+    private final ExecutorService pager;
 
-    public DataService(OandaClient client) { this.client = client; }
+    public DataService(OandaClient client, IoExecutor io, AppProperties props) {
+        this.client = client;
+        this.props = props;
+        if (io.isVirtual()) {
+            this.pager = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("page-v-", 0).factory());
+        } else {
+            AtomicInteger threadNo = new AtomicInteger();
+            this.pager = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "page-" + threadNo.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pager.shutdownNow();
+    }
 
     /** If count is small, do a single call; else delegate to paged fetch. */
     public List<Candle> loadCandles(String instrument, String granularity, int count) throws IOException {
@@ -29,12 +62,74 @@ public class DataService {
         return loadCandlesPaged(instrument, granularity, count);
     }
 
-    /** Pull candles in batches using the `to` param to walk backwards. */
+    /**
+     * Pull candles in batches using the `to` param to walk backwards, or in concurrent time windows when
+     * forex.threads.pagingConcurrency > 1.
+     */
     public List<Candle> loadCandlesPaged(String instrument, String granularity, int total) throws IOException {
+        long barSeconds = granularitySeconds(granularity);
+        int concurrency = props.getThreads().getPagingConcurrency();
+        if (concurrency > 1 && barSeconds > 0 && total > MAX_BATCH) {
+            return loadCandlesWindowed(instrument, granularity, total, barSeconds, concurrency);
+        }
+        return pageBackwards(instrument, granularity, total, null);
+    }
+
+    /**
+     * Fetches fixed windows of at most MAX_BATCH bars each, newest first, up to {@code concurrency} at a time on the
+     * page executor; the caller takes a permit before each submit, so at most that many page threads exist. Weekends and holidays make the calendar estimate approximate, so a short result is topped up by
+     * sequential paging from the oldest bar received.
+     */
+    private List<Candle> loadCandlesWindowed(String instrument, String granularity, int total, long barSeconds,
+                                             int concurrency) throws IOException {
+        long span = MAX_BATCH * barSeconds;
+        int windows = (int) Math.ceil(total * 1.4 / MAX_BATCH); // FX trades ~5 of 7 days
+        Instant end = Instant.now().minusSeconds(5);            // OANDA rejects a `to` in the future
+        Semaphore permits = new Semaphore(concurrency);
+
+        List<Future<List<Candle>>> pages = new ArrayList<>(windows);
+        TreeMap<Instant, Candle> byTime = new TreeMap<>();
+        try {
+            for (int k = 0; k < windows; k++) {
+                Instant to = end.minusSeconds(k * span);
+                Instant from = to.minusSeconds(span);
+                permits.acquire();
+                pages.add(pager.submit(() -> {
+                    try {
+                        return parseCandles(client.getCandlesRange(instrument, granularity, from, to));
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<List<Candle>> page : pages) {
+                for (Candle c : page.get()) byTime.put(c.getTime(), c);
+            }
+        } catch (InterruptedException e) {
+            pages.forEach(p -> p.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while paging " + instrument, e);
+        } catch (ExecutionException e) {
+            pages.forEach(p -> p.cancel(true));
+            throw (e.getCause() instanceof IOException ioe) ? ioe : new IOException(e.getCause());
+        }
+
+        List<Candle> all = new ArrayList<>(byTime.values());
+        if (!all.isEmpty() && all.size() < total) {
+            Instant oldest = all.get(0).getTime();
+            all.addAll(0, pageBackwards(instrument, granularity, total - all.size(), oldest.minusSeconds(1)));
+        }
+        if (all.size() > total) {
+            return new ArrayList<>(all.subList(all.size() - total, all.size()));
+        }
+        return all;
+    }
+
+    /** Sequential backward paging ending at {@code to} (null = most recent). */
+    private List<Candle> pageBackwards(String instrument, String granularity, int total, Instant to) throws IOException {
         List<Candle> all = new ArrayList<>(Math.max(total, 0));
         if (total <= 0) return all;
 
-        Instant to = null; // null = most recent; then page backwards
         while (all.size() < total) {
             int batch = Math.min(MAX_BATCH, total - all.size());
 
@@ -0,0 +1,127 @@
+package com.mar.forex.service;
+
+import static com.mar.forex.util.BacktestUtils.*;
+import java.time.Instant;
+import com.mar.forex.domain.model.Execution;
+import com.mar.forex.domain.model.Filter;
+import com.mar.forex.domain.model.Paper;
+import com.mar.forex.domain.model.SignalColumns;
+
+/**
+ * The account-independent entry gates of the backtest (EV, probability, volatility, session, trend), applied to a
+ * single bar of precomputed {@link SignalColumns} or, live, to the newest bar's values. Gates that depend on open
+ * positions or equity stay with the account simulation.
+ */
+public final class EntryFilter {
+    public static final int PASS = 0;
+    public static final int NO_SIGNAL = 1;
+    public static final int EV_R = 2;
+    public static final int PROB = 3;
+    public static final int VOL = 4;
+    public static final int SESSION = 5;
+    public static final int TREND = 6;
+    private static final String[] REASONS = {"pass", "noSignal", "evR", "prob", "vol", "session", "trend"};
+
+    private final double rr;
+    private final double marginR;
+    private final double probThreshold;
+    private final int volWin;
+    private final double volPct;
+    private final int sessionStart;
+    private final int sessionEnd;
+    private final int rsiLong;
+    private final int rsiShort;
+
+    private EntryFilter(double rr, double marginR, double probThreshold, int volWin, double volPct,
+                        int sessionStart, int sessionEnd, int rsiLong, int rsiShort) {
+        this.rr = rr;
+        this.marginR = marginR;
+        this.probThreshold = probThreshold;
+        this.volWin = volWin;
+        this.volPct = volPct;
+        this.sessionStart = sessionStart;
+        this.sessionEnd = sessionEnd;
+        this.rsiLong = rsiLong;
+        this.rsiShort = rsiShort;
+    }
+
+    public static EntryFilter from(Paper paper, Filter filter, Execution execution) {
+        double rr = paper.getRr();
+        double execFloor = execution.getSignalThreshold() != null ? execution.getSignalThreshold() : 0.0;
+        if (!Double.isFinite(execFloor)) execFloor = 0.0;
+        double baseThreshold = Math.min(1.0, (1.0 / (1.0 + rr)) + filter.getEvMargin());
+        int[] sess = parseSessionHoursUtc(filter.getSession());
+        return new EntryFilter(rr, filter.getEvMarginR(), Math.max(baseThreshold, execFloor),
+            filter.getAtrWindow(), filter.getAtrPercentile(), sess[0], sess[1],
+            filter.getRsiLong(), filter.getRsiShort());
+    }
+
+    public static String reason(int code) {
+        return REASONS[code];
+    }
+
+    public double probThreshold() {
+        return probThreshold;
+    }
+
+    /**
+     * ATRs the volatility gate looks back over, the bar's own excluded.
+     */
+    public int volWindow() {
+        return volWin;
+    }
+
+    /**
+     * The volatility gate's reference for bar i: the trailing percentile of the ATRs of the {@link #volWindow} bars
+     * before it, NaN (gate open) while fewer bars precede it.
+     */
+    public double volReference(double[] atr, int i) {
+        if ((i - 1) < 0 || (i - 1) < volWin - 1) return Double.NaN;
+        return percentileOfWindow(atr, i - 1, volWin, volPct);
+    }
+
+    /**
+     * Returns {@link #PASS} or the code of the first gate that rejects bar i. This is the check runForUI gates its
+     * entries with.
+     */
+    public int check(SignalColumns c, int i) {
+        return check(c.side()[i], c.pWin()[i], c.atr()[i], volReference(c.atr(), i), c.time()[i], c.maFast()[i],
+            c.maSlow()[i], c.rsi()[i]);
+    }
+
+    /**
+     * The same gates on one bar's values.
+     *
+     * @param side   +1 BUY, -1 SELL, 0 no prediction
+     * @param p      calibrated win probability of the side, NaN when unavailable
+     * @param atrRef {@link #volReference} for the bar
+     */
+    public int check(int side, double p, double atr, double atrRef, Instant time, double maFast, double maSlow,
+                     double rsi) {
+        if (side == 0) return NO_SIGNAL;
+
+        if (!Double.isNaN(p)) {
+            double evR = p * rr - (1.0 - p);
+            if (evR < marginR) return EV_R;
+            if (p < probThreshold) return PROB;
+        }
+
+        // Volatility floor with 5% slack below the trailing percentile
+        if (Double.isFinite(atrRef) && atr < atrRef * 0.95) return VOL;
+
+        // Session and trend gates both allow a soft override for signals +0.5% above the threshold
+        double pBoost = Double.isNaN(p) ? 0.0 : (p - probThreshold);
+        if (!inSession(time, sessionStart, sessionEnd) && !(pBoost >= 0.005)) return SESSION;
+
+        double maTol = Math.abs(maSlow) * 0.005;
+        boolean maAligned = (side > 0)
+            ? (maFast > maSlow - maTol)
+            : (maFast < maSlow + maTol);
+        boolean rsiRegime = (side > 0)
+            ? (rsi > rsiLong)
+            : (rsi < rsiShort);
+        boolean trendOk = maAligned && rsiRegime;
+        if (!trendOk && pBoost >= 0.005) trendOk = (maAligned || rsiRegime);
+        return trendOk ? PASS : TREND;
+    }
+}
@@ -0,0 +1,143 @@
+package com.mar.forex.service;
+
+import static com.mar.forex.util.BacktestUtils.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.springframework.stereotype.Service;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.config.PropsOverrides;
+import com.mar.forex.domain.model.BacktestSummary;
+import com.mar.forex.domain.model.BatchManifest;
+import com.mar.forex.domain.model.Candle;
+
+/**
+ * Backtests for batch jobs: same engine as the UI path but no SSE or per-event JSON, one compact result file per
+ * run and a CSV summary per manifest. Candle series are fetched once per (instrument, granularity, count) and shared
+ * by every run in the batch.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HeadlessBacktestService {
+    private final PropsOverrides propsOverrides;
+    private final DataService dataService;
+    private final BacktesterService backtesterService;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, CompletableFuture<List<Candle>>> candleCache = new ConcurrentHashMap<>();
+
+    /**
+     * Runs one backtest with the given configuration snapshot and writes {@code <outputDir>/<name>.json}.
+     */
+    public BacktestSummary run(AppProperties cfg, String name, Path outputDir) throws Exception {
+        String instrument = cfg.getTrading().getInstrument();
+        String granularity = cfg.getTrading().getGranularity();
+        int count = candlesCountFromYears(cfg.getTraining().getYears(), granularity, cfg.getTrading().getWarmup());
+        List<Candle> candles = candles(instrument, granularity, count);
+
+        long t0 = System.nanoTime();
+        BacktestSummary summary = backtesterService.runHeadless(cfg, candles, name);
+        long ms = (System.nanoTime() - t0) / 1_000_000;
+        log.info("HEADLESS {} | {} {} trades={} totalR={} pf={} in {}ms",
+            name, instrument, granularity, summary.trades(), summary.totalR(), summary.profitFactor(), ms);
+
+        if (outputDir != null) {
+            Files.createDirectories(outputDir);
+            objectMapper.writeValue(outputDir.resolve(name + ".json").toFile(), summary);
+        }
+        return summary;
+    }
+
+    /**
+     * The shared series for a key. The first caller loads it outside the map (so no bin lock is held over the HTTP
+     * fetch) and the others wait on its future; a failed load is dropped so a later run can retry.
+     */
+    private List<Candle> candles(String instrument, String granularity, int count) throws Exception {
+        String key = instrument + "|" + granularity + "|" + count;
+        CompletableFuture<List<Candle>> mine = new CompletableFuture<>();
+        CompletableFuture<List<Candle>> cached = candleCache.putIfAbsent(key, mine);
+        if (cached == null) {
+            try {
+                mine.complete(dataService.loadCandlesPaged(instrument, granularity, count));
+            } catch (Throwable e) {
+                candleCache.remove(key, mine);
+                mine.completeExceptionally(e);
+                throw e;
+            }
+            return mine.get();
+        }
+        try {
+            return cached.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    /**
+     * Runs every manifest entry on its own snapshot of the defaults plus the entry's overrides, up to
+     * {@code parallelism} at a time, and writes summary.csv in manifest order.
+     */
+    public List<BacktestSummary> runManifest(Path manifestPath) throws Exception {
+        BatchManifest manifest = objectMapper.readValue(manifestPath.toFile(), BatchManifest.class);
+        Path outputDir = Path.of(manifest.getOutputDir());
+
+        // Snapshot (and validate) every run up front so a bad entry fails the batch before any work starts
+        List<String> names = new ArrayList<>(manifest.getRuns().size());
+        List<AppProperties> configs = new ArrayList<>(manifest.getRuns().size());
+        int k = 0;
+        for (BatchManifest.Run run : manifest.getRuns()) {
+            names.add((run.getName() != null && !run.getName().isBlank()) ? run.getName() : ("run-" + k));
+            configs.add(propsOverrides.snapshot(run.getConfig()));
+            k++;
+        }
+
+        int parallelism = Math.max(1, manifest.getParallelism());
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        List<BacktestSummary> out = new ArrayList<>(names.size());
+        try {
+            List<Future<BacktestSummary>> futures = new ArrayList<>(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                AppProperties cfg = configs.get(i);
+                String name = names.get(i);
+                futures.add(pool.submit(() -> run(cfg, name, outputDir)));
+            }
+            for (Future<BacktestSummary> f : futures) out.add(f.get());
+        } finally {
+            pool.shutdownNow();
+            candleCache.clear();
+        }
+        writeSummaryCsv(outputDir.resolve("summary.csv"), names, out);
+        return out;
+    }
+
+    private void writeSummaryCsv(Path file, List<String> names, List<BacktestSummary> rows) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (Writer w = Files.newBufferedWriter(file)) {
+            w.write("name,instrument,granularity,candles,trades,wins,losses,winRate,totalR,avgR,profitFactor,maxDrawdownR,endBalance\n");
+            for (int i = 0; i < rows.size(); i++) {
+                BacktestSummary s = rows.get(i);
+                w.write(String.join(",", names.get(i), s.instrument(), s.granularity(),
+                    String.valueOf(s.candles()), String.valueOf(s.trades()), String.valueOf(s.wins()),
+                    String.valueOf(s.losses()), String.valueOf(s.winRate()), String.valueOf(s.totalR()),
+                    String.valueOf(s.avgR()), String.valueOf(s.profitFactor()), String.valueOf(s.maxDrawdownR()),
+                    String.valueOf(s.endBalance())));
+                w.write('\n');
+            }
+        }
+        log.info("Batch summary written: {} ({} runs)", file.toAbsolutePath(), rows.size());
+    }
+}
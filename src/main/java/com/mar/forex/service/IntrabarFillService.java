@@ -0,0 +1,95 @@
+package com.mar.forex.service;
+
+import static com.mar.forex.util.BacktestUtils.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Service;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.infrastructure.marketdata.IntrabarResolver;
+import com.mar.forex.infrastructure.marketdata.IntrabarStore;
+
+/**
+ * Optional fill-resolution mode: bars that touch both stop and take are replayed from a locally stored finer series
+ * (forex.fill.fineGranularity) to find the true first touch.
+ *
+ * Ambiguous bars are rare, so each instrument's store is only mapped on the first lookup and every lookup is a
+ * binary search into the mapped file.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IntrabarFillService {
+    private final AppProperties props;
+    private final DataService dataService;
+
+    private final Map<String, Optional<IntrabarStore>> stores = new ConcurrentHashMap<>();
+    private final AtomicLong resolved = new AtomicLong();
+    private final AtomicLong unresolved = new AtomicLong();
+
+    /**
+     * A resolver for bars of the given granularity, or null when the mode is off (callers keep stop-first).
+     */
+    public IntrabarResolver forGranularity(String granularity) {
+        if (!props.getFill().isIntrabar()) return null;
+        long barSeconds = granularitySeconds(granularity);
+        long fineSeconds = granularitySeconds(props.getFill().getFineGranularity());
+        if (barSeconds <= 0 || fineSeconds <= 0 || fineSeconds >= barSeconds) {
+            log.warn("Intrabar fills disabled: fine granularity {} is not finer than {}",
+                props.getFill().getFineGranularity(), granularity);
+            return null;
+        }
+        return (instrument, barTime, buy, stop, take) -> {
+            IntrabarStore store = store(instrument);
+            if (store == null) {
+                unresolved.incrementAndGet();
+                return IntrabarResolver.Touch.UNKNOWN;
+            }
+            IntrabarResolver.Touch touch = store.firstTouch(barTime, barSeconds, buy, stop, take);
+            if (touch == IntrabarResolver.Touch.UNKNOWN) unresolved.incrementAndGet();
+            else resolved.incrementAndGet();
+            return touch;
+        };
+    }
+
+    /**
+     * Downloads the fine series for an instrument and (re)writes its local store.
+     */
+    public int fetch(String instrument, int count) throws IOException {
+        String fine = props.getFill().getFineGranularity();
+        var candles = dataService.loadCandlesPaged(instrument, fine, count);
+        Path file = IntrabarStore.pathFor(Path.of(props.getFill().getDataDir()), instrument, fine);
+        int written = IntrabarStore.write(file, candles);
+        stores.remove(instrument);
+        log.info("Intrabar store written: {} ({} {} bars)", file.toAbsolutePath(), written, fine);
+        return written;
+    }
+
+    public long resolvedCount() {
+        return resolved.get();
+    }
+
+    public long unresolvedCount() {
+        return unresolved.get();
+    }
+
+    private IntrabarStore store(String instrument) {
+        return stores.computeIfAbsent(instrument, k -> {
+            Path file = IntrabarStore.pathFor(Path.of(props.getFill().getDataDir()), k, props.getFill().getFineGranularity());
+            try {
+                IntrabarStore s = IntrabarStore.open(file);
+                if (s == null) log.warn("No intrabar store at {}; ambiguous bars fall back to stop-first", file);
+                else log.info("Mapped intrabar store {} ({} bars)", file, s.size());
+                return Optional.ofNullable(s);
+            } catch (IOException e) {
+                log.warn("Failed to open intrabar store {}: {}", file, e.getMessage());
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+}
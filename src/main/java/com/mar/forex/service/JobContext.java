@@ -0,0 +1,55 @@
+package com.mar.forex.service;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation token of the job running on the current thread.
+ *
+ * {@link JobScheduler} binds one per job while it runs; long loops call {@link #checkCancelled()} at a cheap
+ * cadence. Outside a scheduled job (CLI, headless batch) there is no token and the check is a no-op.
+ */
+public final class JobContext {
+    private static final ThreadLocal<JobContext> CURRENT = new ThreadLocal<>();
+
+    private final String jobId;
+    private volatile boolean cancelled;
+
+    JobContext(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String jobId() {
+        return jobId;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    static void bind(JobContext ctx) {
+        if (ctx == null) CURRENT.remove(); else CURRENT.set(ctx);
+    }
+
+    /**
+     * The token bound to this thread, or null. Capture it before fanning work out to other pools.
+     */
+    public static JobContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Throws {@link CancellationException} when the job running on this thread has been cancelled.
+     */
+    public static void checkCancelled() {
+        JobContext ctx = CURRENT.get();
+        if (ctx != null) ctx.throwIfCancelled();
+    }
+
+    public void throwIfCancelled() {
+        if (cancelled) throw new CancellationException("Job " + jobId + " cancelled");
+    }
+}
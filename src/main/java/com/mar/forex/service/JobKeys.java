@@ -0,0 +1,73 @@
+package com.mar.forex.service;
+
+import static com.mar.forex.util.BacktestUtils.granularitySeconds;
+import lombok.RequiredArgsConstructor;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.infrastructure.storage.ResultStore;
+
+/**
+ * Content keys of job inputs: SHA-256 over the job kind, the effective config snapshot (keys sorted, credentials
+ * left out), the candle range and, for backtests, the model/calibration version.
+ *
+ * The range is fingerprinted without loading it: jobs fetch the latest {@code count} bars, so the key holds the
+ * instrument, granularity, count and the start of the current bar. Two submissions within the same bar therefore
+ * see the same data; once a new bar opens the key changes.
+ */
+@Component
+@RequiredArgsConstructor
+public class JobKeys {
+    private final ResultStore resultStore;
+    private final SignalService signalService;
+    private final ObjectMapper objectMapper;
+
+    public String backtestKey(String kind, AppProperties cfg, int count) {
+        return key(kind, cfg, count, signalService.modelVersion());
+    }
+
+    public String trainKey(AppProperties cfg, int count) {
+        return key("train", cfg, count, null);
+    }
+
+    private String key(String kind, AppProperties cfg, int count, String modelVersion) {
+        ObjectNode in = objectMapper.createObjectNode();
+        in.put("kind", kind);
+        in.set("config", sorted(resultStore.configOf(cfg)));
+        in.put("count", count);
+        in.put("rangeEnd", currentBarStart(cfg.getTrading().getGranularity()).toString());
+        if (modelVersion != null) in.put("model", modelVersion);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(objectMapper.writeValueAsBytes(in));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Cannot fingerprint job inputs", e);
+        }
+    }
+
+    private static Instant currentBarStart(String granularity) {
+        long bar = granularitySeconds(granularity);
+        long now = Instant.now().getEpochSecond();
+        return Instant.ofEpochSecond(bar > 0 ? now - Math.floorMod(now, bar) : now);
+    }
+
+    private JsonNode sorted(JsonNode node) {
+        if (!node.isObject()) return node;
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        names.sort(null);
+        ObjectNode out = objectMapper.createObjectNode();
+        for (String n : names) out.set(n, sorted(node.get(n)));
+        return out;
+    }
+}
@@ -0,0 +1,14 @@
+package com.mar.forex.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the job queue is full; surfaces as 429 so clients back off instead of piling up work.
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class JobRejectedException extends RuntimeException {
+    public JobRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,256 @@
+package com.mar.forex.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import org.springframework.stereotype.Service;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.JobPriority;
+import com.mar.forex.domain.model.JobStatus;
+import com.mar.forex.domain.model.JobStatus.State;
+
+/**
+ * Runs API jobs (train, backtests, sweeps) on a fixed pool sized to the cores.
+ *
+ * Waiting jobs are ordered by {@link JobPriority}, then submission order. Once more than
+ * {@code forex.jobs.queueCapacity} jobs are waiting, new submissions are rejected with {@link JobRejectedException}.
+ * Cancellation is cooperative: a queued job is dropped, a running one has its {@link JobContext} flagged and stops at
+ * the next check in its loop. Queue depth, running jobs and queue wait time are published as meters.
+ */
+@Slf4j
+@Service
+public class JobScheduler {
+    private static final int HISTORY_LIMIT = 200;
+
+    @FunctionalInterface
+    public interface Job {
+        void run() throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int capacity;
+    private final Map<String, Task> jobs = new ConcurrentHashMap<>();
+    private final Map<String, String> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong seq = new AtomicLong();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Timer waitTimer;
+
+    public JobScheduler(AppProperties props, MeterRegistry registry) {
+        int workers = props.getJobs().getWorkers() > 0
+            ? props.getJobs().getWorkers()
+            : Runtime.getRuntime().availableProcessors();
+        this.capacity = props.getJobs().getQueueCapacity();
+
+        AtomicInteger threadNo = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "job-worker-" + threadNo.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+
+        Gauge.builder("forex.jobs.queue.depth", queued, AtomicInteger::get)
+            .description("Jobs waiting for a worker").register(registry);
+        Gauge.builder("forex.jobs.running", running, AtomicInteger::get)
+            .description("Jobs currently running").register(registry);
+        this.waitTimer = Timer.builder("forex.jobs.wait")
+            .description("Time jobs spend queued before a worker picks them up")
+            .publishPercentiles(0.5, 0.99)
+            .register(registry);
+
+        log.info("JobScheduler | workers={} queueCapacity={}", workers, capacity);
+    }
+
+    /**
+     * Queues a job. {@code onFinish} is called exactly once with the final state and, for FAILED, the error.
+     *
+     * @throws JobRejectedException when the queue is full
+     */
+    public JobStatus submit(String jobId, JobPriority priority, Job job, BiConsumer<State, Throwable> onFinish) {
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            log.warn("Job rejected (queue full) | jobId={} priority={} queued={}", jobId, priority, capacity);
+            throw new JobRejectedException("Job queue is full (" + capacity + " waiting); retry later");
+        }
+        Task task = new Task(jobId, priority, seq.incrementAndGet(), job, onFinish);
+        jobs.put(jobId, task);
+        pruneHistory();
+        executor.execute(task);
+        return task.status();
+    }
+
+    /**
+     * Single-flight submit: while a job with the same input key is queued or running, returns that job's id instead of
+     * queueing a duplicate; otherwise submits under {@code jobId} and returns it. The key is released when the job
+     * finishes, before {@code onFinish} runs.
+     *
+     * @throws JobRejectedException when the queue is full
+     */
+    public String submitOnce(String key, String jobId, JobPriority priority, Job job,
+                             BiConsumer<State, Throwable> onFinish) {
+        String existing = inFlight.putIfAbsent(key, jobId);
+        if (existing != null) {
+            log.info("Job attached to in-flight duplicate | jobId={} key={}", existing, key);
+            return existing;
+        }
+        try {
+            submit(jobId, priority, job, (state, error) -> {
+                inFlight.remove(key, jobId);
+                onFinish.accept(state, error);
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, jobId);
+            throw e;
+        }
+        return jobId;
+    }
+
+    /**
+     * Cancels a queued or running job. Empty when the job id is unknown.
+     */
+    public Optional<JobStatus> cancel(String jobId) {
+        Task task = jobs.get(jobId);
+        if (task == null) return Optional.empty();
+
+        boolean dropped = false;
+        synchronized (task) {
+            if (task.state == State.QUEUED) {
+                executor.getQueue().remove(task);
+                queued.decrementAndGet();
+                task.state = State.CANCELLED;
+                dropped = true;
+            } else if (task.state == State.RUNNING) {
+                task.ctx.cancel();
+                task.state = State.CANCELLING;
+            }
+        }
+        if (dropped) task.finish(State.CANCELLED, null);
+        log.info("Job cancel requested | jobId={} state={}", jobId, task.state);
+        return Optional.of(task.status());
+    }
+
+    public Optional<JobStatus> status(String jobId) {
+        Task task = jobs.get(jobId);
+        return task == null ? Optional.empty() : Optional.of(task.status());
+    }
+
+    public List<JobStatus> list() {
+        return jobs.values().stream()
+            .sorted(Comparator.comparingLong((Task t) -> t.seq).reversed())
+            .map(Task::status)
+            .toList();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(t -> t.ctx.cancel());
+        executor.shutdownNow();
+    }
+
+    private void pruneHistory() {
+        if (jobs.size() <= HISTORY_LIMIT) return;
+        jobs.values().stream()
+            .filter(t -> t.finishedAt != null)
+            .sorted(Comparator.comparingLong(t -> t.seq))
+            .limit(jobs.size() - HISTORY_LIMIT)
+            .forEach(t -> jobs.remove(t.jobId, t));
+    }
+
+    private final class Task implements Runnable, Comparable<Task> {
+        final String jobId;
+        final JobPriority priority;
+        final long seq;
+        final Job job;
+        final BiConsumer<State, Throwable> onFinish;
+        final JobContext ctx;
+        final Instant submittedAt = Instant.now();
+        volatile State state = State.QUEUED;
+        volatile Instant startedAt;
+        volatile Instant finishedAt;
+
+        Task(String jobId, JobPriority priority, long seq, Job job, BiConsumer<State, Throwable> onFinish) {
+            this.jobId = jobId;
+            this.priority = priority;
+            this.seq = seq;
+            this.job = job;
+            this.onFinish = onFinish;
+            this.ctx = new JobContext(jobId);
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (state != State.QUEUED) return;
+                state = State.RUNNING;
+                startedAt = Instant.now();
+            }
+            queued.decrementAndGet();
+            running.incrementAndGet();
+            waitTimer.record(Duration.between(submittedAt, startedAt));
+
+            State end;
+            Throwable error = null;
+            JobContext.bind(ctx);
+            try {
+                job.run();
+                end = ctx.isCancelled() ? State.CANCELLED : State.DONE;
+            } catch (CancellationException e) {
+                end = State.CANCELLED;
+            } catch (Throwable e) {
+                // Cancellation surfacing through a pool's get() arrives wrapped
+                end = ctx.isCancelled() ? State.CANCELLED : State.FAILED;
+                if (end == State.FAILED) {
+                    error = e;
+                    log.warn("Job failed | jobId={} error={}", jobId, e.toString());
+                }
+            } finally {
+                JobContext.bind(null);
+                running.decrementAndGet();
+            }
+            finish(end, error);
+        }
+
+        void finish(State end, Throwable error) {
+            // under the lock cancel() checks RUNNING with, so a late cancel cannot turn a finished job into CANCELLING
+            synchronized (this) {
+                state = end;
+                finishedAt = Instant.now();
+            }
+            log.info("Job finished | jobId={} priority={} state={} waitMs={} runMs={}", jobId, priority, end,
+                startedAt == null ? null : Duration.between(submittedAt, startedAt).toMillis(),
+                startedAt == null ? null : Duration.between(startedAt, finishedAt).toMillis());
+            try {
+                onFinish.accept(end, error);
+            } catch (Exception e) {
+                log.warn("Job completion callback failed | jobId={} error={}", jobId, e.toString());
+            }
+        }
+
+        JobStatus status() {
+            return new JobStatus(jobId, priority, state, submittedAt, startedAt, finishedAt);
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            int c = priority.compareTo(o.priority);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.tribuo.classification.LabelFactory;
 import org.tribuo.impl.ArrayExample;
 import com.mar.forex.domain.model.Candle;
 import com.mar.forex.domain.model.MarketIndicators;
+import com.mar.forex.infrastructure.marketdata.IntrabarResolver;
 
 @Service
 public class LabelingService {
@@ -18,11 +19,24 @@ public class LabelingService {
                                               MarketIndicators ind,
                                               double[] close, double[] high, double[] low,
                                               int warmup, double rr, int H, LabelFactory factory) {
+        return buildExamples(candles, ind, close, high, low, warmup, rr, H, factory, null, null);
+    }
+
+    /**
+     * As above; when a resolver is given, bars that touch both TP and SL are settled from finer data instead of
+     * being skipped over.
+     */
+    public List<Example<Label>> buildExamples(List<Candle> candles,
+                                              MarketIndicators ind,
+                                              double[] close, double[] high, double[] low,
+                                              int warmup, double rr, int H, LabelFactory factory,
+                                              String instrument, IntrabarResolver resolver) {
         List<Example<Label>> examples = new ArrayList<>();
         int n = candles.size();
         int upCount = 0, downCount = 0;
 
         for (int i = warmup; i < n - 1; i++) {
+            if ((i & 1023) == 0) JobContext.checkCancelled();
             double maFast = ind.maFast()[i];
             double maSlow = ind.maSlow()[i];
             double rsi = ind.rsi()[i];
@@ -47,6 +61,11 @@ public class LabelingService {
             for (int j = i + 1; j <= limit; j++) {
                 double hi = high[j];
                 double lo = low[j];
+                if (resolver != null && hi >= longTP && lo <= longSL) {
+                    var touch = resolver.firstTouch(instrument, candles.get(j).time, true, longSL, longTP);
+                    if (touch == IntrabarResolver.Touch.TAKE) { longWin = true; break; }
+                    if (touch == IntrabarResolver.Touch.STOP) { longWin = false; break; }
+                }
                 if (hi >= longTP && lo > longSL) { longWin = true; break; }
                 if (lo <= longSL && hi < longTP) { longWin = false; break; }
             }
@@ -54,6 +73,11 @@ public class LabelingService {
             for (int j = i + 1; j <= limit; j++) {
                 double hi = high[j];
                 double lo = low[j];
+                if (resolver != null && lo <= shortTP && hi >= shortSL) {
+                    var touch = resolver.firstTouch(instrument, candles.get(j).time, false, shortSL, shortTP);
+                    if (touch == IntrabarResolver.Touch.TAKE) { shortWin = true; break; }
+                    if (touch == IntrabarResolver.Touch.STOP) { shortWin = false; break; }
+                }
                 if (lo <= shortTP && hi < shortSL) { shortWin = true; break; }
                 if (hi >= shortSL && lo > shortTP) { shortWin = false; break; }
             }
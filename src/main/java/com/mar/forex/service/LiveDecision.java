@@ -0,0 +1,62 @@
+package com.mar.forex.service;
+
+import org.tribuo.Example;
+import org.tribuo.classification.Label;
+import com.mar.forex.domain.model.Candle;
+import com.mar.forex.domain.model.OrderIntent;
+
+/**
+ * One slot of the {@link LivePipeline} ring: a bar on its way from ingestion to the order, filled in by each stage in
+ * turn. Slots are allocated once and overwritten by {@link #reset}, so a stage that finds its input missing (warming
+ * up, blocked) just leaves its output empty and the later stages skip the event.
+ */
+final class LiveDecision {
+    // ingestion
+    LiveFeatureState state;
+    Candle bar;                 // null: score the state's newest bar as it is (just bootstrapped)
+    boolean score;              // false for bars that only catch the indicators up
+    long barSeconds;
+    long barCloseMillis;
+    long receivedNanos;
+
+    // features
+    String instrument;
+    Example<Label> example;
+    double atr;
+    double[] recentAtr;         // LiveFeatureState#recentAtr, for the volatility gate
+    double maFast;
+    double maSlow;
+    double rsi;
+    Candle last;
+    LiveLatency.Trace trace;
+    long barCloseNanos;
+    long stampNanos;            // the previous stage's, for the next one
+
+    // scoring
+    boolean predicted;
+    boolean longPos;
+    double pWin;                // calibrated, NaN when the model gives no scores
+    int entryCode;              // EntryFilter.PASS or the rejecting gate
+
+    // risk
+    OrderIntent intent;         // null unless an order is to be sent
+    double entry;
+
+    void reset(LiveFeatureState state, Candle bar, boolean score, long barSeconds, long barCloseMillis,
+               long receivedNanos) {
+        this.state = state;
+        this.bar = bar;
+        this.score = score;
+        this.barSeconds = barSeconds;
+        this.barCloseMillis = barCloseMillis;
+        this.receivedNanos = receivedNanos;
+        instrument = null;
+        example = null;
+        atr = Double.NaN;
+        recentAtr = null;
+        last = null;
+        trace = null;
+        predicted = false;
+        intent = null;
+    }
+}
@@ -0,0 +1,225 @@
+package com.mar.forex.service;
+
+import java.time.Instant;
+import java.util.List;
+import org.tribuo.Example;
+import org.tribuo.classification.Label;
+import com.mar.forex.domain.model.Candle;
+import com.mar.forex.util.TribuoUtil;
+
+/**
+ * Per-instrument indicator and feature state for the live loop, advanced one completed bar at a time.
+ *
+ * Every indicator replays the recurrence of its batch counterpart in {@link com.mar.forex.util.Indicators} (SMA
+ * window sum, EMA seeded with the SMA of the first {@code period} closes, RSI and ATR with their warm-up phases), so
+ * after bootstrapping from a history and advancing bar by bar the values are identical to recomputing the batch
+ * indicators over the whole series. Only the last {@value #HISTORY} bars of each series are kept: that is all
+ * {@link TribuoUtil#exampleFromArrays} looks back. ATR keeps enough for the {@link EntryFilter} volatility window too.
+ *
+ * Not thread-safe: a state is filled by its bootstrap and, once published, advanced only by the
+ * {@link LivePipeline}'s features stage.
+ */
+public final class LiveFeatureState {
+    // exampleFromArrays reads back to i-10 (ret10)
+    private static final int HISTORY = 11;
+    private static final int RSI_PERIOD = 14;
+
+    private final String instrument;
+    private final int fast;
+    private final int slow;
+    private final int atrPeriod;
+    private final boolean fastEma;
+    private final boolean slowEma;
+
+    // rings of the last HISTORY values (ATR: at least atrWindow + 1), indexed by bar count
+    private final double[] close = new double[HISTORY];
+    private final double[] maFast = new double[HISTORY];
+    private final double[] maSlow = new double[HISTORY];
+    private final double[] rsi = new double[HISTORY];
+    private final double[] atr;
+    private final int atrWindow;
+
+    // SMA windows (unused when the matching MA is an EMA)
+    private final double[] fastWindow;
+    private final double[] slowWindow;
+    private double fastSum;
+    private double slowSum;
+    // EMA state; the seeds come from the bootstrap history
+    private double fastEmaValue;
+    private double slowEmaValue;
+    private double fastSeed;
+    private double slowSeed;
+    // RSI and ATR recurrences
+    private double gain;
+    private double loss;
+    private double trAvg;
+    private double prevClose = Double.NaN;
+
+    private long count;
+    private Candle last;
+
+    private LiveFeatureState(String instrument, int fast, int slow, int atrPeriod, String maType, int atrWindow) {
+        this.instrument = instrument;
+        this.fast = fast;
+        this.slow = slow;
+        this.atrPeriod = atrPeriod;
+        this.atrWindow = Math.max(0, atrWindow);
+        this.atr = new double[Math.max(HISTORY, this.atrWindow + 1)];
+        this.fastEma = "EMA".equalsIgnoreCase(maType) || "HYBRID".equalsIgnoreCase(maType);
+        this.slowEma = "EMA".equalsIgnoreCase(maType);
+        this.fastWindow = new double[fast];
+        this.slowWindow = new double[slow];
+    }
+
+    /**
+     * Seeds the state from a history of completed bars, oldest first.
+     *
+     * @param atrWindow ATRs {@link #recentAtr} keeps before the newest bar, {@link EntryFilter#volWindow}
+     */
+    public static LiveFeatureState bootstrap(String instrument, List<Candle> history, int fast, int slow,
+                                             int atrPeriod, String maType, int atrWindow) {
+        if (history.isEmpty()) throw new IllegalArgumentException("No history to bootstrap " + instrument);
+        var state = new LiveFeatureState(instrument, fast, slow, atrPeriod, maType, atrWindow);
+        state.fastSeed = emaSeed(history, fast);
+        state.slowSeed = emaSeed(history, slow);
+        for (Candle c : history) state.advance(c);
+        return state;
+    }
+
+    private static double emaSeed(List<Candle> history, int period) {
+        if (history.size() < period) return history.get(0).close;
+        double sum = 0;
+        for (int i = 0; i < period; i++) sum += history.get(i).close;
+        return sum / period;
+    }
+
+    /**
+     * Appends one completed bar and updates every indicator.
+     */
+    public void advance(Candle c) {
+        int i = (int) Math.min(count, Integer.MAX_VALUE);
+        int slot = (int) (count % HISTORY);
+
+        close[slot] = c.close;
+        maFast[slot] = fastEma ? ema(c.close, fast, fastSeed, fastEmaValue, i) : sma(c.close, fastWindow, i, true);
+        if (fastEma) fastEmaValue = maFast[slot];
+        maSlow[slot] = slowEma ? ema(c.close, slow, slowSeed, slowEmaValue, i) : sma(c.close, slowWindow, i, false);
+        if (slowEma) slowEmaValue = maSlow[slot];
+        rsi[slot] = rsi(c.close, i);
+        atr[(int) (count % atr.length)] = atr(c, i);
+
+        prevClose = c.close;
+        last = c;
+        count++;
+    }
+
+    private double sma(double value, double[] window, int i, boolean isFast) {
+        int period = window.length;
+        double sum = (isFast ? fastSum : slowSum) + value;
+        if (i >= period) sum -= window[i % period];
+        window[i % period] = value;
+        if (isFast) fastSum = sum; else slowSum = sum;
+        return i >= period - 1 ? sum / period : Double.NaN;
+    }
+
+    private static double ema(double value, int period, double seed, double prev, int i) {
+        if (period <= 1) return value;
+        if (i == 0) return seed;
+        double k = 2.0 / (period + 1.0);
+        return value * k + prev * (1.0 - k);
+    }
+
+    private double rsi(double value, int i) {
+        if (i == 0) return Double.NaN;
+        double ch = value - prevClose;
+        double up = Math.max(ch, 0);
+        double dn = Math.max(-ch, 0);
+        if (i <= RSI_PERIOD) {
+            gain += up;
+            loss += dn;
+            if (i < RSI_PERIOD) return Double.NaN;
+            double rs = (loss == 0) ? 0 : (gain / RSI_PERIOD) / (loss / RSI_PERIOD);
+            return 100 - 100 / (1 + rs);
+        }
+        gain = (gain * (RSI_PERIOD - 1) + up) / RSI_PERIOD;
+        loss = (loss * (RSI_PERIOD - 1) + dn) / RSI_PERIOD;
+        double rs = (loss == 0) ? 0 : gain / loss;
+        return 100 - 100 / (1 + rs);
+    }
+
+    private double atr(Candle c, int i) {
+        double hl = c.high - c.low;
+        double hc = Double.isNaN(prevClose) ? hl : Math.abs(c.high - prevClose);
+        double lc = Double.isNaN(prevClose) ? hl : Math.abs(c.low - prevClose);
+        double tr = Math.max(hl, Math.max(hc, lc));
+        if (i < atrPeriod) {
+            trAvg += tr;
+            if (i < atrPeriod - 1) return Double.NaN;
+            trAvg /= atrPeriod;
+            return trAvg;
+        }
+        trAvg = (trAvg * (atrPeriod - 1) + tr) / atrPeriod;
+        return trAvg;
+    }
+
+    /**
+     * The feature example for the newest bar, or null while indicators are still warming up.
+     */
+    public Example<Label> example() {
+        int n = (int) Math.min(count, HISTORY);
+        if (n < 2) return null;
+        return TribuoUtil.exampleFromArrays(n - 1, ordered(close, n), ordered(maFast, n), ordered(maSlow, n),
+            ordered(rsi, n), ordered(atr, n));
+    }
+
+    /**
+     * The ATRs of the newest bar and up to atrWindow bars before it, oldest first, so that
+     * {@code volReference(a, a.length - 1)} sees the same window as over the whole series.
+     */
+    public double[] recentAtr() {
+        return ordered(atr, (int) Math.min(count, atrWindow + 1));
+    }
+
+    // the newest n values of a ring, oldest first
+    private double[] ordered(double[] ring, int n) {
+        double[] out = new double[n];
+        for (int k = 0; k < n; k++) out[k] = ring[(int) ((count - n + k) % ring.length)];
+        return out;
+    }
+
+    public String instrument() {
+        return instrument;
+    }
+
+    public double atr() {
+        return newest(atr);
+    }
+
+    public double maFast() {
+        return newest(maFast);
+    }
+
+    public double maSlow() {
+        return newest(maSlow);
+    }
+
+    public double rsi() {
+        return newest(rsi);
+    }
+
+    private double newest(double[] ring) {
+        return count == 0 ? Double.NaN : ring[(int) ((count - 1) % ring.length)];
+    }
+
+    public Candle lastBar() {
+        return last;
+    }
+
+    public Instant lastTime() {
+        return last == null ? null : last.time;
+    }
+
+    public long bars() {
+        return count;
+    }
+}
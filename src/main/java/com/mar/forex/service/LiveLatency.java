@@ -0,0 +1,153 @@
+package com.mar.forex.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+import com.mar.forex.util.LatencyHistogram;
+
+/**
+ * Where the time between a bar closing and its order being acknowledged goes, per instrument and stage.
+ *
+ * Each live decision is stamped on its instrument's {@link Trace} as it moves along: {@code received} (bar close to
+ * the bar being in hand: broker delay, settle wait and fetch for POLL, the aggregator's close for STREAM),
+ * {@code features} (advancing the indicators), {@code prediction} (the model), {@code risk} (shadow book, spread gate, sizing and risk engine),
+ * {@code sent} (handing the order to the {@link OrderPipeline}), {@code acked} (sent to the broker's answer) and
+ * {@code total} (bar close to the broker's answer). Each stage is the time since the previous stamp, so a decision
+ * blocked at the risk stage or made with orders disabled simply records fewer stages.
+ *
+ * Stages go into {@link LatencyHistogram}s, and an instrument's trace and histograms are created the first time it is
+ * seen. The decision carries its own stamps, so several of an instrument's bars can be in flight at once, and stamping
+ * is a clock read plus a few atomic adds and never allocates. They are exposed as {@code forex.live.latency} gauges
+ * in milliseconds, tagged {@code stage}, {@code instrument} and {@code quantile} (p50, p99, p999) and computed when
+ * read; filter by all three tags on {@code /actuator/metrics}, which otherwise sums the gauges. Histograms cover the
+ * whole run.
+ */
+@Component
+public class LiveLatency {
+    public static final int RECEIVED = 0;
+    public static final int FEATURES = 1;
+    public static final int PREDICTION = 2;
+    public static final int RISK = 3;
+    public static final int SENT = 4;
+    public static final int ACKED = 5;
+    public static final int TOTAL = 6;
+
+    private static final String[] STAGES = {"received", "features", "prediction", "risk", "sent", "acked", "total"};
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final String[] QUANTILE_TAGS = {"p50", "p99", "p999"};
+
+    private final MeterRegistry registry;
+    private final Map<String, Trace> traces = new ConcurrentHashMap<>();
+
+    public LiveLatency(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static String stage(int stage) {
+        return STAGES[stage];
+    }
+
+    /**
+     * The instrument's trace, created the first time it is asked for.
+     */
+    public Trace trace(String instrument) {
+        Trace t = traces.get(instrument);
+        return t != null ? t : traces.computeIfAbsent(instrument, this::register);
+    }
+
+    /**
+     * {@code instrument stage -> summary} for every instrument seen, in name order.
+     */
+    public Map<String, String> summary() {
+        Map<String, String> out = new LinkedHashMap<>();
+        for (Trace t : new TreeMap<>(traces).values()) {
+            for (int s = 0; s < STAGES.length; s++) {
+                if (t.stages[s].count() > 0) out.put(t.instrument + " " + STAGES[s], t.stages[s].summary());
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Clears every instrument's histograms, e.g. before a replay.
+     */
+    public void reset() {
+        for (Trace t : traces.values()) {
+            for (LatencyHistogram h : t.stages) h.reset();
+        }
+    }
+
+    public LatencyHistogram histogram(String instrument, int stage) {
+        Trace t = traces.get(instrument);
+        return t == null ? null : t.stages[stage];
+    }
+
+    private Trace register(String instrument) {
+        Trace t = new Trace(instrument);
+        for (int s = 0; s < STAGES.length; s++) {
+            LatencyHistogram h = t.stages[s];
+            for (int q = 0; q < QUANTILES.length; q++) {
+                double quantile = QUANTILES[q];
+                Gauge.builder("forex.live.latency", h, x -> x.percentileMillis(quantile))
+                    .description("Live decision latency per stage, bar close to broker answer")
+                    .baseUnit("milliseconds")
+                    .tags("stage", STAGES[s], "instrument", instrument, "quantile", QUANTILE_TAGS[q])
+                    .register(registry);
+            }
+            FunctionCounter.builder("forex.live.latency.count", h, LatencyHistogram::count)
+                .description("Live decisions that reached the stage")
+                .tags("stage", STAGES[s], "instrument", instrument)
+                .register(registry);
+        }
+        return t;
+    }
+
+    /**
+     * An instrument's stage histograms. Each method takes the stamps it measures from and returns the one it took,
+     * for the decision to carry to the next stage; any thread may call them.
+     */
+    public static final class Trace {
+        private final String instrument;
+        private final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+
+        private Trace(String instrument) {
+            this.instrument = instrument;
+            for (int s = 0; s < stages.length; s++) stages[s] = new LatencyHistogram();
+        }
+
+        /**
+         * Records {@code received} for a bar that closed at {@code barCloseEpochMillis} and was in hand at
+         * {@code receivedNanos} ({@link System#nanoTime}); returns the close on the {@link System#nanoTime} scale.
+         */
+        public long received(long barCloseEpochMillis, long receivedNanos) {
+            long sinceClose = (System.currentTimeMillis() - barCloseEpochMillis) * 1_000_000L
+                - (System.nanoTime() - receivedNanos);
+            stages[RECEIVED].record(sinceClose);
+            return receivedNanos - sinceClose;
+        }
+
+        /**
+         * Records the time since {@code sinceNanos}, the previous stage's stamp, as {@code stage} and returns now.
+         */
+        public long stage(int stage, long sinceNanos) {
+            long now = System.nanoTime();
+            stages[stage].record(now - sinceNanos);
+            return now;
+        }
+
+        /**
+         * Records the broker's answer to an order sent at {@code sentNanos} for the bar that closed at
+         * {@code barCloseNanos}.
+         */
+        public void acked(long sentNanos, long barCloseNanos) {
+            long now = System.nanoTime();
+            stages[ACKED].record(now - sentNanos);
+            stages[TOTAL].record(now - barCloseNanos);
+        }
+    }
+}
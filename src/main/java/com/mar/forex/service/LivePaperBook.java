@@ -0,0 +1,119 @@
+package com.mar.forex.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import org.springframework.stereotype.Component;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.PaperTrade;
+import com.mar.forex.infrastructure.broker.PaperTradeEngine;
+
+/**
+ * The paper book shared by live trading.
+ *
+ * Single writer instead of locks: the engine is only ever touched by one dedicated thread, callers enqueue commands,
+ * and after each command the writer publishes an immutable {@link Snapshot} (copied trades) that any thread may read
+ * without coordination. Close listeners run on the writer thread with a copy of each trade as it closes; the engine
+ * then forgets it, so a book that runs for weeks keeps only its open trades and the last {@value #RECENT_CLOSED}
+ * closed ones.
+ */
+@Slf4j
+@Component
+public class LivePaperBook {
+
+    static final int RECENT_CLOSED = 100;
+
+    /**
+     * @param recentClosed the last {@value #RECENT_CLOSED} closed trades, oldest first
+     * @param closedCount  trades closed since startup
+     */
+    public record Snapshot(List<PaperTrade> open, List<PaperTrade> recentClosed, long closedCount, long version) {
+    }
+
+    private final PaperTradeEngine engine;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "paper-live");
+        t.setDaemon(true);
+        return t;
+    });
+    private final List<Consumer<PaperTrade>> closeListeners = new CopyOnWriteArrayList<>();
+    // writer thread only; closed trades are copied once, when they leave the engine, and never change after
+    private final ArrayDeque<PaperTrade> recentClosed = new ArrayDeque<>();
+    private long closedCount;
+    private volatile Snapshot snapshot = new Snapshot(List.of(), List.of(), 0, 0);
+
+    public LivePaperBook(AppProperties props, PaperTradeEngineFactory factory) {
+        this.engine = factory.create(props);
+    }
+
+    /**
+     * Opens a trade unless the instrument is already at its open-position limit or {@code admit} refuses it;
+     * completes with the opened trade. {@code admit} runs on the writer thread, only once the book has room, so
+     * anything it books is always followed by the open.
+     */
+    public CompletableFuture<Optional<PaperTrade>> open(String instrument, PaperTrade.Side side, double entry,
+                                                        double atr, Instant ts, BooleanSupplier admit) {
+        return CompletableFuture.supplyAsync(() -> {
+            if (!engine.canOpen(instrument) || !admit.getAsBoolean()) return Optional.<PaperTrade>empty();
+            PaperTrade t = engine.open(instrument, side, entry, atr, -1, ts);
+            publish();
+            return Optional.of(t.toBuilder().build());
+        }, writer);
+    }
+
+    /**
+     * Settles open trades against a completed bar.
+     */
+    public CompletableFuture<Void> onCandle(String instrument, double high, double low, double close, Instant ts) {
+        return CompletableFuture.runAsync(() -> {
+            engine.onCandle(instrument, high, low, close, ts);
+            List<PaperTrade> closed = engine.drainClosed();
+            if (closed.isEmpty()) return;
+            for (PaperTrade t : closed) {
+                recentClosed.addLast(t.toBuilder().build());
+                if (recentClosed.size() > RECENT_CLOSED) recentClosed.removeFirst();
+            }
+            closedCount += closed.size();
+            publish();
+            for (PaperTrade t : closed) {
+                for (var l : closeListeners) {
+                    try {
+                        l.accept(t.toBuilder().build());
+                    } catch (RuntimeException e) {
+                        log.warn("Paper close listener failed: {}", e.toString());
+                    }
+                }
+            }
+        }, writer);
+    }
+
+    public AutoCloseable onClose(Consumer<PaperTrade> listener) {
+        closeListeners.add(listener);
+        return () -> closeListeners.remove(listener);
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    // writer thread only
+    private void publish() {
+        Snapshot prev = snapshot;
+        List<PaperTrade> open = engine.getOpen().stream().map(t -> t.toBuilder().build()).toList();
+        snapshot = new Snapshot(open, List.copyOf(recentClosed), closedCount, prev.version() + 1);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdown();
+    }
+}
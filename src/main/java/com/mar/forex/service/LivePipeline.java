@@ -0,0 +1,172 @@
+package com.mar.forex.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Component;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.Candle;
+import com.mar.forex.util.EventRing;
+
+/**
+ * The live path as a chain of stages over an {@link EventRing} of pre-allocated {@link LiveDecision}s. Ingestion is
+ * whoever has a new bar (the scheduler's poll tasks, the stream aggregator) and only publishes it; then features
+ * (advance the instrument's indicators), scoring (the model and the backtest's {@link EntryFilter}), risk (shadow
+ * book, spread gate, sizing, risk engine) and orders (hand the intent to the {@link OrderPipeline}) each run on their
+ * own thread.
+ *
+ * Every stage sees the bars in publication order, so an instrument's bars are still advanced and scored one after the
+ * other, while a slow stage for one bar no longer holds up the earlier stages of the next instrument's. Waiting idle
+ * threads use {@code forex.live.waitStrategy}; the ring holds {@code forex.live.ringSize} bars, and when it is full
+ * publishing waits for the stages to catch up rather than dropping a bar the indicators need.
+ */
+@Slf4j
+@Component
+public class LivePipeline {
+
+    public record Stats(long published, long scored, long orders, long backlog, long errors, int capacity,
+                        String waitStrategy) {
+    }
+
+    /**
+     * Called on the scoring thread for every prediction; must not block.
+     */
+    public interface DecisionListener {
+        /**
+         * @param entryCode {@link EntryFilter#PASS} or the filter gate that rejected the entry
+         */
+        void onDecision(String instrument, Instant barTime, boolean longPos, int entryCode);
+    }
+
+    private static final long STOP_TIMEOUT_MS = 5_000;
+
+    private final AppProperties props;
+    private final LiveTradingService trading;
+    private final LiveLatency latency;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong scored = new AtomicLong();
+    private final AtomicLong orders = new AtomicLong();
+    private final List<DecisionListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile EventRing<LiveDecision> ring;
+    // what the stages score, gate and send with: the live service, or a replay's own
+    private volatile LiveTradingService active;
+    private volatile boolean sendOrders;
+
+    public LivePipeline(AppProperties props, LiveTradingService trading, LiveLatency latency) {
+        this.props = props;
+        this.trading = trading;
+        this.latency = latency;
+    }
+
+    public void start() {
+        start(trading, true);
+    }
+
+    /**
+     * @param trading    the service whose model, paper book and risk engine the stages use
+     * @param sendOrders false to have the orders stage only log the intents, whatever {@code forex.orders.enabled}
+     *                   says
+     */
+    public synchronized void start(LiveTradingService trading, boolean sendOrders) {
+        if (ring != null && ring.isRunning()) throw new IllegalStateException("Live pipeline already running");
+        this.active = trading;
+        this.sendOrders = sendOrders;
+        var live = props.getLive();
+        var wait = EventRing.WaitStrategy.valueOf(live.getWaitStrategy());
+        ring = new EventRing<>("live-pipeline", live.getRingSize(), LiveDecision::new, wait,
+            List.of(this::features, this::scoring, this::risk, this::orders));
+        ring.start();
+        log.info("Live pipeline started | ringSize={} waitStrategy={} sendOrders={}", ring.capacity(), wait,
+            sendOrders);
+    }
+
+    /**
+     * Lets the stages finish the bars already published. Stop the publishers first.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (ring == null || !ring.isRunning()) return;
+        try {
+            ring.stop(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Live pipeline stopped | {}", stats());
+    }
+
+    /**
+     * Hands a bar of the instrument's state to the pipeline, waiting while the ring is full.
+     *
+     * @param bar            the next bar to advance the state with, or null to score the state's newest bar as it is
+     * @param score          whether to score the state after this bar, false for bars that only catch it up
+     * @param barCloseMillis when the scored bar closed, the start of its latency trace
+     * @param receivedNanos  when the bar was in hand ({@link System#nanoTime})
+     * @throws IllegalStateException when the pipeline is not running
+     */
+    public void publish(LiveFeatureState state, Candle bar, boolean score, long barSeconds, long barCloseMillis,
+                        long receivedNanos) {
+        EventRing<LiveDecision> r = ring;
+        if (r == null) throw new IllegalStateException("Live pipeline not started");
+        long seq = r.next();
+        r.get(seq).reset(state, bar, score, barSeconds, barCloseMillis, receivedNanos);
+        r.publish(seq);
+        published.incrementAndGet();
+    }
+
+    /**
+     * Registers a consumer of every prediction, in each instrument's bar order.
+     */
+    public AutoCloseable onDecision(DecisionListener listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    public Stats stats() {
+        EventRing<LiveDecision> r = ring;
+        return new Stats(published.get(), scored.get(), orders.get(), r == null ? 0 : r.backlog(),
+            r == null ? 0 : r.errors(), r == null ? 0 : r.capacity(), props.getLive().getWaitStrategy());
+    }
+
+    // the only thread advancing a state once it has been published; bootstraps finish before that
+    private void features(LiveDecision d) {
+        LiveFeatureState s = d.state;
+        if (d.bar != null) {
+            if (!d.bar.time.isAfter(s.lastTime())) return; // already held, e.g. after a re-bootstrap
+            s.advance(d.bar);
+        }
+        if (!d.score) return;
+        d.instrument = s.instrument();
+        d.example = s.example();
+        d.atr = s.atr();
+        d.recentAtr = s.recentAtr();
+        d.maFast = s.maFast();
+        d.maSlow = s.maSlow();
+        d.rsi = s.rsi();
+        d.last = s.lastBar();
+        d.trace = latency.trace(d.instrument);
+        d.barCloseNanos = d.trace.received(d.barCloseMillis, d.receivedNanos);
+        d.stampNanos = d.trace.stage(LiveLatency.FEATURES, d.receivedNanos);
+    }
+
+    private void scoring(LiveDecision d) {
+        if (d.example == null || !active.score(d)) return;
+        scored.incrementAndGet();
+        for (int k = 0; k < listeners.size(); k++) {
+            listeners.get(k).onDecision(d.instrument, d.last.time, d.longPos, d.entryCode);
+        }
+    }
+
+    private void risk(LiveDecision d) {
+        if (d.predicted) active.gate(d);
+    }
+
+    private void orders(LiveDecision d) {
+        if (d.intent == null) return;
+        active.send(d, sendOrders);
+        orders.incrementAndGet();
+    }
+}
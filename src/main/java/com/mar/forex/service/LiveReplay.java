@@ -0,0 +1,237 @@
+package com.mar.forex.service;
+
+import static com.mar.forex.util.BacktestUtils.granularitySeconds;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import org.springframework.stereotype.Service;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.Candle;
+import com.mar.forex.domain.model.SignalColumns;
+
+/**
+ * Feeds stored candles through the live path, the {@link LivePipeline} and the stages of {@link LiveTradingService},
+ * to measure it without waiting for real bars and to check its entry decisions against the backtest's.
+ *
+ * The replay runs on {@link LiveTradingService#forReplay}: the live model and calibration with a paper book, risk
+ * engine and rejection counts of its own, so its shadow trades, daily R and loss streak never reach live trading. It
+ * makes no broker calls: orders are sized off a fixed account of {@code forex.paper.startBalance}, and as candles
+ * carry no quotes the spread gate is skipped.
+ *
+ * Each instrument is bootstrapped from its first {@link SignalColumns#warmup} candles, the bars the backtest warms up
+ * on; the rest are published in time order across instruments, as fast as the pipeline takes them
+ * ({@code speed <= 0}) or at {@code speed} times real time. A replayed bar counts as closing when it is published, so
+ * the {@link LiveLatency} stages measure the pipeline rather than the age of the data.
+ *
+ * Afterwards every live decision, the predicted side and the verdict of the {@link EntryFilter} the scoring stage
+ * runs, is compared with the backtest's for the same bar: {@link SignalService#compute} over the whole series with the
+ * same model and calibration, then the same filter. Those are the backtest's actual entry decisions, since
+ * {@link BacktesterService#runForUI} gates its entries with that filter over those columns. The gates that depend on
+ * an account, open positions or quotes (runForUI's window and cooldown, margin and risk engine; live, the spread
+ * gate, sizing and the risk engine) are not compared: the two sides keep different books by design.
+ *
+ * The pipeline runs with order sending off, so a replay never places an order whatever {@code forex.orders.enabled}
+ * says; the intents are only logged. It shares the pipeline with the live scheduler, so the two cannot run at once.
+ */
+@Slf4j
+@Service
+public class LiveReplay {
+
+    /**
+     * @param compared   bars the backtest scored
+     * @param entries    of those, bars that passed the backtest's entry filter
+     * @param mismatches bars where the replay's side or filter verdict differs from the backtest's, or only one of
+     *                   them scored
+     */
+    public record Result(List<String> instruments, long bars, double seconds, double barsPerSecond, long scored,
+                         long orders, int compared, int entries, int mismatches, String firstMismatch) {
+    }
+
+    private final AppProperties props;
+    private final LivePipeline pipeline;
+    private final LiveTradingService trading;
+    private final SignalService signals;
+    private final LiveLatency latency;
+    private final PaperTradeEngineFactory paperFactory;
+
+    public LiveReplay(AppProperties props, LivePipeline pipeline, LiveTradingService trading, SignalService signals,
+                      LiveLatency latency, PaperTradeEngineFactory paperFactory) {
+        this.props = props;
+        this.pipeline = pipeline;
+        this.trading = trading;
+        this.signals = signals;
+        this.latency = latency;
+        this.paperFactory = paperFactory;
+    }
+
+    /**
+     * Replays each instrument's candles (oldest first, one granularity) and compares the entry decisions with the
+     * backtest's. Never sends an order.
+     *
+     * @param speed multiple of real time; 0 or less replays as fast as possible
+     * @throws IllegalStateException when there is no trained model or the live pipeline is running
+     */
+    public Result replay(Map<String, List<Candle>> candles, String granularity, double speed) throws Exception {
+        long barSeconds = granularitySeconds(granularity);
+        if (barSeconds <= 0) throw new IllegalArgumentException("Bad granularity " + granularity);
+        trading.requireModel();
+        var t = props.getTrading();
+
+        List<String> instruments = new ArrayList<>(candles.keySet());
+        List<List<Candle>> series = new ArrayList<>();
+        List<SignalColumns> backtest = new ArrayList<>();
+        List<LiveFeatureState> states = new ArrayList<>();
+        Map<String, Recorder> recorded = new HashMap<>();
+        for (String instrument : instruments) {
+            List<Candle> list = candles.get(instrument);
+            // the backtest's side, computed up front so its warmup is the replay's bootstrap
+            SignalColumns cols = signals.compute(props, instrument, list, trading.model(), trading.calibration());
+            int warmup = cols.warmup();
+            if (list.size() <= warmup) {
+                throw new IllegalArgumentException(instrument + ": " + list.size() + " candles, need more than "
+                    + warmup);
+            }
+            series.add(list);
+            backtest.add(cols);
+            states.add(LiveFeatureState.bootstrap(instrument, list.subList(0, warmup), t.getFastSma(), t.getSlowSma(),
+                props.getPaper().getAtrPeriod(), t.getMaType(), props.getFilter().getAtrWindow()));
+            recorded.put(instrument, new Recorder(list.size()));
+        }
+
+        var before = pipeline.stats();
+        long bars = 0;
+        double seconds;
+        LivePaperBook book = new LivePaperBook(props, paperFactory);
+        try {
+            // refuses while the live scheduler has the pipeline
+            pipeline.start(trading.forReplay(book), false);
+        } catch (RuntimeException e) {
+            book.shutdown();
+            throw e;
+        }
+        try (AutoCloseable sub = pipeline.onDecision((instrument, barTime, longPos, entryCode) -> {
+            Recorder r = recorded.get(instrument);
+            if (r != null) r.add(barTime, longPos, entryCode);
+        })) {
+            latency.reset();
+            log.info("Replay started | instruments={} granularity={} speed={}", instruments, granularity,
+                speed > 0 ? speed + "x" : "max");
+            int[] next = new int[series.size()];
+            for (int j = 0; j < next.length; j++) next[j] = backtest.get(j).warmup();
+            Instant first = null;
+            long t0 = System.nanoTime();
+            while (true) {
+                // the instrument whose next bar is the oldest
+                int k = -1;
+                for (int j = 0; j < series.size(); j++) {
+                    if (next[j] < series.get(j).size() && (k < 0
+                        || series.get(j).get(next[j]).time.isBefore(series.get(k).get(next[k]).time))) {
+                        k = j;
+                    }
+                }
+                if (k < 0) break;
+                Candle c = series.get(k).get(next[k]++);
+                if (speed > 0) {
+                    if (first == null) first = c.time;
+                    long due = t0 + (long) (Duration.between(first, c.time).toNanos() / speed);
+                    for (long wait; (wait = due - System.nanoTime()) > 0; ) LockSupport.parkNanos(wait);
+                }
+                pipeline.publish(states.get(k), c, true, barSeconds, System.currentTimeMillis(), System.nanoTime());
+                bars++;
+            }
+            pipeline.stop();
+            seconds = (System.nanoTime() - t0) / 1e9;
+        } finally {
+            pipeline.stop();
+            book.shutdown();
+        }
+
+        int compared = 0;
+        int entries = 0;
+        int mismatches = 0;
+        String firstMismatch = null;
+        EntryFilter filter = EntryFilter.from(props.getPaper(), props.getFilter(), props.getExecution());
+        for (int k = 0; k < instruments.size(); k++) {
+            String instrument = instruments.get(k);
+            Check check = compare(instrument, backtest.get(k), filter, recorded.get(instrument));
+            compared += check.compared;
+            entries += check.entries;
+            mismatches += check.mismatches;
+            if (firstMismatch == null) firstMismatch = check.first;
+        }
+        var after = pipeline.stats();
+        var result = new Result(List.copyOf(instruments), bars, seconds, seconds > 0 ? bars / seconds : 0,
+            after.scored() - before.scored(), after.orders() - before.orders(), compared, entries, mismatches,
+            firstMismatch);
+        log.info("Replay done | {}", result);
+        return result;
+    }
+
+    // the backtest's decisions for the same bars: its signal columns through its entry filter
+    private static Check compare(String instrument, SignalColumns cols, EntryFilter filter, Recorder live) {
+        Check check = new Check();
+        int j = 0;
+        for (int i = cols.warmup(); i < cols.time().length; i++) {
+            if (cols.side()[i] == 0) continue;
+            long time = cols.time()[i].getEpochSecond();
+            boolean up = cols.side()[i] > 0;
+            int code = filter.check(cols, i);
+            check.compared++;
+            if (code == EntryFilter.PASS) check.entries++;
+            for (; j < live.size && live.times[j] < time; j++) check.mismatch(instrument, live.times[j], "live only");
+            if (j < live.size && live.times[j] == time) {
+                if (live.longs[j] != up || live.codes[j] != code) {
+                    check.mismatch(instrument, time, "live " + decision(live.longs[j], live.codes[j]) + " backtest "
+                        + decision(up, code));
+                }
+                j++;
+            } else {
+                check.mismatch(instrument, time, "backtest only");
+            }
+        }
+        for (; j < live.size; j++) check.mismatch(instrument, live.times[j], "live only");
+        return check;
+    }
+
+    private static String decision(boolean up, int code) {
+        return (up ? "UP/" : "DOWN/") + EntryFilter.reason(code);
+    }
+
+    // an instrument's decisions in bar order, written on the scoring thread and read after the pipeline stopped
+    private static final class Recorder {
+        final long[] times;
+        final boolean[] longs;
+        final byte[] codes;
+        int size;
+
+        Recorder(int capacity) {
+            times = new long[capacity];
+            longs = new boolean[capacity];
+            codes = new byte[capacity];
+        }
+
+        void add(Instant barTime, boolean longPos, int entryCode) {
+            if (size == times.length) return;
+            times[size] = barTime.getEpochSecond();
+            longs[size] = longPos;
+            codes[size++] = (byte) entryCode;
+        }
+    }
+
+    private static final class Check {
+        int compared;
+        int entries;
+        int mismatches;
+        String first;
+
+        void mismatch(String instrument, long epochSecond, String what) {
+            if (first == null) first = instrument + " " + Instant.ofEpochSecond(epochSecond) + " " + what;
+            mismatches++;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.mar.forex.service;
+
+import static com.mar.forex.util.BacktestUtils.granularitySeconds;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.config.IoExecutor;
+import com.mar.forex.domain.model.Candle;
+import com.mar.forex.domain.model.Trading;
+import com.mar.forex.infrastructure.broker.OandaPriceStream;
+import com.mar.forex.infrastructure.marketdata.PriceCache;
+import com.mar.forex.infrastructure.marketdata.TickBarAggregator;
+
+/**
+ * Drives live trading for a set of instruments on their bar boundaries.
+ *
+ * Every {@code forex.live.pollSeconds} a cycle picks the instruments whose next bar should have closed (bar end plus
+ * {@code settleSeconds}) and, in parallel on the I/O executor, pulls only the last {@code fetchBars} candles and
+ * publishes those newer than the last bar handed over to the {@link LivePipeline}, which appends them to the
+ * instrument's {@link LiveFeatureState} and scores the newest one. The
+ * first cycle of an instrument bootstraps its state from {@code bootstrapBars} of history; a pull that no longer
+ * overlaps the held bars (the loop was paused, or the gap is wider than {@code fetchBars}) bootstraps it again.
+ *
+ * With {@code forex.live.source=STREAM} no candles are polled: the pricing stream feeds the
+ * {@link TickBarAggregator} and each completed bar of the live granularity is published to the pipeline as soon as
+ * it closes. The cycle then only bootstraps instruments, catching up with the bars the aggregator built meanwhile.
+ * While running, {@link AccountState} keeps the account snapshot that sizes orders current and {@link PriceCache}
+ * the quotes the spread gate reads, from the stream when streaming and by batched polls otherwise.
+ *
+ * Each cycle's wall time is recorded in the {@code forex.live.cycle} timer and the instruments it handled in the
+ * {@code forex.live.cycle.instruments} gauge. Starts with the application when {@code forex.live.enabled=true}.
+ */
+@Slf4j
+@Service
+public class LiveScheduler {
+
+    public record CycleStats(long cycles, int instruments, long lastCycleMs, double meanCycleMs, long scored) {
+    }
+
+    private final AppProperties props;
+    private final DataService dataService;
+    private final LiveTradingService trading;
+    private final IoExecutor io;
+    private final OandaPriceStream priceStream;
+    private final TickBarAggregator aggregator;
+    private final AccountState account;
+    private final PriceCache prices;
+    private final LivePipeline pipeline;
+    private final Map<String, LiveFeatureState> states = new ConcurrentHashMap<>();
+    private final Map<String, Instant> nextDue = new ConcurrentHashMap<>();
+    private final Map<String, Instant> published = new ConcurrentHashMap<>();
+    private final List<AutoCloseable> subscriptions = new ArrayList<>();
+    private final AtomicInteger cycleInstruments = new AtomicInteger();
+    private final AtomicLong cycles = new AtomicLong();
+    private final AtomicLong lastCycleMs = new AtomicLong();
+    private final Timer cycleTimer;
+
+    private ScheduledExecutorService loop;
+    private volatile List<String> instruments = List.of();
+    private volatile String granularity;
+    private volatile boolean streaming;
+
+    public LiveScheduler(AppProperties props, DataService dataService, LiveTradingService trading, IoExecutor io,
+                         OandaPriceStream priceStream, TickBarAggregator aggregator, AccountState account,
+                         PriceCache prices, LivePipeline pipeline, MeterRegistry registry) {
+        this.props = props;
+        this.dataService = dataService;
+        this.trading = trading;
+        this.io = io;
+        this.priceStream = priceStream;
+        this.aggregator = aggregator;
+        this.account = account;
+        this.prices = prices;
+        this.pipeline = pipeline;
+        this.cycleTimer = Timer.builder("forex.live.cycle")
+            .description("Wall time of one live cycle: fetch, advance and score of every due instrument")
+            .publishPercentiles(0.5, 0.99)
+            .register(registry);
+        Gauge.builder("forex.live.cycle.instruments", cycleInstruments, AtomicInteger::get)
+            .description("Instruments handled by the last live cycle").register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void autoStart() {
+        if (!props.getLive().isEnabled() || isRunning()) return;
+        try {
+            start(configuredInstruments(), configuredGranularity());
+        } catch (Exception e) {
+            log.error("Live scheduler not started: {}", e.getMessage());
+        }
+    }
+
+    public List<String> configuredInstruments() {
+        List<String> list = props.getLive().getInstruments();
+        return list == null || list.isEmpty() ? List.of(props.getTrading().getInstrument()) : List.copyOf(list);
+    }
+
+    public String configuredGranularity() {
+        String g = props.getLive().getGranularity();
+        return g == null || g.isBlank() ? props.getTrading().getGranularity() : g;
+    }
+
+    /**
+     * Starts the loop for the given instruments with the configured {@code forex.live.source}.
+     *
+     * @throws IllegalStateException when the loop is already running or there is no trained model
+     */
+    public void start(List<String> instruments, String granularity) throws Exception {
+        start(instruments, granularity, props.getLive().getSource());
+    }
+
+    /**
+     * Starts the loop for the given instruments, loading the model first if needed.
+     *
+     * @param source {@code POLL} or {@code STREAM}, for this run only
+     * @throws IllegalStateException when the loop is already running or there is no trained model
+     */
+    public synchronized void start(List<String> instruments, String granularity, String source) throws Exception {
+        if (loop != null) throw new IllegalStateException("Live scheduler already running");
+        if (granularitySeconds(granularity) <= 0) throw new IllegalArgumentException("Bad granularity " + granularity);
+        trading.requireModel();
+        this.instruments = List.copyOf(instruments);
+        this.granularity = granularity;
+        states.clear();
+        nextDue.clear();
+        published.clear();
+        pipeline.start();
+        account.start();
+        streaming = "STREAM".equalsIgnoreCase(source);
+        if (streaming) {
+            if (!aggregator.granularities().contains(granularity)) {
+                List<String> g = new ArrayList<>(aggregator.granularities());
+                g.add(granularity);
+                aggregator.configure(g);
+            }
+            subscriptions.add(aggregator.subscribe(this::onStreamBar));
+            subscriptions.add(priceStream.subscribe(aggregator::onTick));
+        }
+        prices.start(this.instruments, streaming);
+        if (streaming) priceStream.start(this.instruments);
+        loop = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "live-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = props.getLive().getPollSeconds();
+        loop.scheduleWithFixedDelay(this::cycle, 0, period, TimeUnit.SECONDS);
+        log.info("Live scheduler started | instruments={} granularity={} source={} pollSeconds={}", instruments,
+            granularity, streaming ? "STREAM" : "POLL", period);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (loop == null) return;
+        loop.shutdownNow();
+        loop = null;
+        account.stop();
+        prices.stop();
+        if (streaming) {
+            priceStream.stop();
+            for (AutoCloseable sub : subscriptions) {
+                try {
+                    sub.close();
+                } catch (Exception e) {
+                    log.debug("Unsubscribe failed: {}", e.toString());
+                }
+            }
+            subscriptions.clear();
+        }
+        pipeline.stop();
+        log.info("Live scheduler stopped | cycles={} scored={}", cycles.get(), pipeline.stats().scored());
+    }
+
+    public boolean isRunning() {
+        return loop != null;
+    }
+
+    public CycleStats stats() {
+        long n = cycleTimer.count();
+        return new CycleStats(cycles.get(), cycleInstruments.get(), lastCycleMs.get(),
+            n == 0 ? 0 : cycleTimer.totalTime(TimeUnit.MILLISECONDS) / n, pipeline.stats().scored());
+    }
+
+    /**
+     * One poll: handles every due instrument in parallel and waits for all of them.
+     */
+    void cycle() {
+        try {
+            Instant now = Instant.now();
+            List<String> due = new ArrayList<>();
+            for (String instrument : instruments) {
+                Instant at = nextDue.get(instrument);
+                // when streaming, bars arrive on their own and a cycle only bootstraps
+                boolean isDue = streaming ? !states.containsKey(instrument) : at == null || !now.isBefore(at);
+                if (isDue) due.add(instrument);
+            }
+            if (due.isEmpty()) return;
+
+            long t0 = System.nanoTime();
+            List<Future<Boolean>> tasks = new ArrayList<>(due.size());
+            for (String instrument : due) tasks.add(io.submit(() -> process(instrument)));
+            int handled = 0;
+            for (int k = 0; k < tasks.size(); k++) {
+                try {
+                    if (tasks.get(k).get()) handled++;
+                } catch (ExecutionException e) {
+                    log.warn("Live {} failed: {}", due.get(k), e.getCause().toString());
+                }
+            }
+            long nanos = System.nanoTime() - t0;
+            long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+            cycleTimer.record(nanos, TimeUnit.NANOSECONDS);
+            cycleInstruments.set(due.size());
+            lastCycleMs.set(ms);
+            cycles.incrementAndGet();
+            log.info("Live cycle | due={} newBars={} ms={}", due.size(), handled, ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Live cycle failed", e);
+        }
+    }
+
+    /**
+     * Publishes one instrument's new bars, the newest to be scored.
+     *
+     * @return whether a new bar was published
+     */
+    private boolean process(String instrument) throws Exception {
+        long bar = granularitySeconds(granularity);
+        var live = props.getLive();
+        if (streaming) {
+            return !states.containsKey(instrument) && bootstrapFromStream(instrument);
+        }
+        LiveFeatureState state = states.get(instrument);
+        // the pipeline advances states on its own thread, so what was handed over is tracked here
+        Instant held = published.get(instrument);
+        if (state == null || held == null) {
+            state = bootstrap(instrument);
+            if (state != null) publishBootstrap(instrument, state, System.nanoTime());
+        } else {
+            List<Candle> pulled = dataService.loadCandles(instrument, granularity, live.getFetchBars());
+            long received = System.nanoTime();
+            if (!pulled.isEmpty() && pulled.get(0).time.isAfter(held)) {
+                log.info("Live {} missed bars after {}; re-bootstrapping", instrument, held);
+                state = bootstrap(instrument);
+                if (state != null) publishBootstrap(instrument, state, received);
+            } else {
+                Candle newest = pulled.isEmpty() ? null : pulled.get(pulled.size() - 1);
+                for (Candle c : pulled) {
+                    if (c.time.isAfter(held)) {
+                        pipeline.publish(state, c, c == newest, bar, closeMillis(c, bar), received);
+                    }
+                }
+                if (newest != null && newest.time.isAfter(held)) published.put(instrument, newest.time);
+            }
+        }
+        Instant newest = published.get(instrument);
+        if (state == null || newest == null) {
+            nextDue.put(instrument, Instant.now().plusSeconds(props.getLive().getPollSeconds()));
+            return false;
+        }
+        boolean advanced = !newest.equals(held);
+
+        // the bar after the newest one held closes two bar lengths after its open; without a new bar (market
+        // closed, broker late) ask again after a poll period, but no sooner
+        Instant expected = newest.plusSeconds(2 * bar + live.getSettleSeconds());
+        Instant retry = Instant.now().plusSeconds(live.getPollSeconds());
+        nextDue.put(instrument, expected.isAfter(retry) ? expected : retry);
+        return advanced;
+    }
+
+    // a fresh state already holds its newest bar, which is scored as it is
+    private void publishBootstrap(String instrument, LiveFeatureState state, long receivedNanos) {
+        long bar = granularitySeconds(granularity);
+        pipeline.publish(state, null, true, bar, closeMillis(state.lastBar(), bar), receivedNanos);
+        published.put(instrument, state.lastTime());
+    }
+
+    private static long closeMillis(Candle bar, long barSeconds) {
+        return bar.time.toEpochMilli() + barSeconds * 1000;
+    }
+
+    private LiveFeatureState bootstrap(String instrument) throws Exception {
+        Trading t = props.getTrading();
+        List<Candle> history = dataService.loadCandles(instrument, granularity, props.getLive().getBootstrapBars());
+        if (history.isEmpty()) {
+            log.warn("Live {}: no history to bootstrap from", instrument);
+            states.remove(instrument);
+            return null;
+        }
+        var state = LiveFeatureState.bootstrap(instrument, history, t.getFastSma(), t.getSlowSma(),
+            props.getPaper().getAtrPeriod(), t.getMaType(), props.getFilter().getAtrWindow());
+        if (!streaming) states.put(instrument, state);
+        log.info("Live {} bootstrapped | bars={} last={}", instrument, state.bars(), state.lastTime());
+        return state;
+    }
+
+    /**
+     * Bootstraps from history, then appends the bars the aggregator completed since and registers the state, both
+     * while the aggregator holds the instrument's lock: each bar is either caught up here, before any other thread
+     * can see the state, or published by {@link #onStreamBar} afterwards, in order. The catch-up never waits on the
+     * pipeline, so a full ring cannot block it.
+     */
+    private boolean bootstrapFromStream(String instrument) throws Exception {
+        LiveFeatureState state = bootstrap(instrument);
+        if (state == null) return false;
+        aggregator.withBars(instrument, granularity, props.getLive().getBarHistory(), bars -> {
+            for (Candle c : bars) {
+                if (c.time.isAfter(state.lastTime())) state.advance(c);
+            }
+            states.put(instrument, state);
+        });
+        return true;
+    }
+
+    // aggregator thread, under its instrument lock: only publishes, waiting if the pipeline is a ring behind
+    private void onStreamBar(String instrument, String barGranularity, Candle bar) {
+        if (!barGranularity.equals(granularity) || !instruments.contains(instrument)) return;
+        long received = System.nanoTime();
+        LiveFeatureState state = states.get(instrument);
+        if (state == null) return; // the bootstrap catches up from the aggregator
+        long seconds = granularitySeconds(granularity);
+        pipeline.publish(state, bar, true, seconds, closeMillis(bar, seconds), received);
+    }
+}
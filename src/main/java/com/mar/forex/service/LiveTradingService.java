@@ -1,69 +1,258 @@
 package com.mar.forex.service;
 
-import java.util.List;
+import static com.mar.forex.util.BacktestUtils.calibrate;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.tribuo.Model;
+import org.tribuo.Prediction;
 import org.tribuo.classification.Label;
 import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.AccountSnapshot;
 import com.mar.forex.domain.model.Candle;
-import com.mar.forex.infrastructure.broker.OandaClient;
+import com.mar.forex.domain.model.OrderIntent;
+import com.mar.forex.domain.model.OrderResult;
+import com.mar.forex.domain.model.PaperTrade;
+import com.mar.forex.domain.model.PriceTick;
+import com.mar.forex.infrastructure.marketdata.PriceCache;
 import com.mar.forex.util.Indicators;
-import com.mar.forex.util.TribuoUtil;
 
+@Slf4j
 @Service
 public class LiveTradingService {
-    private final DataService dataService;
+    private static final String MODEL = "models/model.zip";
+
     private final AppProperties props;
-    private final OandaClient oanda;
+    private final OrderPipeline orders;
     private final MLService ml;
+    private final SignalService signals;
+    private final LivePaperBook paperBook;
+    // the account gate sizes off: the synced broker account, or a replay's fixed one
+    private final Supplier<AccountSnapshot> account;
+    private final RiskEngine risk;
+    // null for a replay, which has no quotes and skips the spread gate
+    private final PriceCache prices;
+    private final EntryFilter filter;
+    private final AtomicIntegerArray filterRejections = new AtomicIntegerArray(EntryFilter.TREND + 1);
+    private final AtomicIntegerArray quoteRejections = new AtomicIntegerArray(PriceCache.SPREAD + 1);
+
+    // loaded once, then read by the live scheduler's scoring tasks
+    private volatile Model<Label> model;
+    private volatile double[][] calibration;
 
-    private Model<Label> model;
+    @Autowired
+    public LiveTradingService(AppProperties props, OrderPipeline orders, MLService ml, SignalService signals,
+                              LivePaperBook paperBook, AccountState account, PriceCache prices) {
+        this(props, orders, ml, signals, paperBook, account::snapshot, prices);
+    }
 
-    public LiveTradingService(DataService dataService, AppProperties props, OandaClient oanda, MLService ml) {
-        this.dataService = dataService;
+    private LiveTradingService(AppProperties props, OrderPipeline orders, MLService ml, SignalService signals,
+                               LivePaperBook paperBook, Supplier<AccountSnapshot> account, PriceCache prices) {
         this.props = props;
-        this.oanda = oanda;
+        this.orders = orders;
         this.ml = ml;
+        this.signals = signals;
+        this.paperBook = paperBook;
+        this.account = account;
+        this.prices = prices;
+        this.risk = RiskEngine.from(props.getRisk(), props.getPaper());
+        this.filter = EntryFilter.from(props.getPaper(), props.getFilter(), props.getExecution());
+        // closes of the shadow trades feed the daily R and loss streak, as closed paper trades do in the backtest
+        paperBook.onClose(t -> {
+            double dist = Math.abs(t.getEntry() - t.getStop());
+            double r = dist == 0 ? 0 : (t.getSide() == PaperTrade.Side.BUY
+                ? t.getExit() - t.getEntry() : t.getEntry() - t.getExit()) / dist;
+            risk.onClose(t.getInstrument(), r, t.getClosedAt().getEpochSecond());
+        });
     }
 
+    /**
+     * A service for a {@link LiveReplay}: this one's model and calibration, but its own paper book, risk engine and
+     * rejection counts, an account of {@code forex.paper.startBalance} and no spread gate, so a replay neither reads
+     * nor changes anything live trading uses and never calls the broker.
+     */
+    LiveTradingService forReplay(LivePaperBook book) {
+        double balance = props.getPaper().getStartBalance();
+        var acct = new AccountSnapshot("replay", balance, balance, 0, 0, balance, Map.of(), Instant.now());
+        var replay = new LiveTradingService(props, orders, ml, signals, book, () -> acct, null);
+        replay.model = model;
+        replay.calibration = calibration;
+        return replay;
+    }
+
+    /**
+     * Loads the model and, as the backtest does, the calibration table its probabilities go through.
+     */
     public void loadModel(Resource resource) throws Exception {
+        this.calibration = signals.loadCalibrationTable();
         this.model = ml.load(resource.getFile().toPath());
     }
 
-    public void tick(String instrument, String granularity) throws Exception {
-        List<Candle> candles = dataService.loadCandles(instrument, granularity, 500);
-        int i = candles.size() - 2; // last complete bar
-        var ex = TribuoUtil.exampleFromBar(candles, i,
-                props.getTrading().getFastSma(), props.getTrading().getSlowSma(), props.getPaper().getAtrPeriod());
-        if (ex == null) return;
-        Label pred = (Label) model.predict(ex).getOutput();
-        boolean longPos = pred.getLabel().equals("UP");
-
-        double[] high = candles.stream().mapToDouble(c->c.high).toArray();
-        double[] low = candles.stream().mapToDouble(c->c.low).toArray();
-        double[] close = candles.stream().mapToDouble(c->c.close).toArray();
-        double[] atr = Indicators.atr(high, low, close, props.getPaper().getAtrPeriod());
-        double atrNow = atr[i];
-        if (Double.isNaN(atrNow)) return;
+    /**
+     * Loads {@value #MODEL} unless a model is loaded already.
+     *
+     * @throws IllegalStateException when there is no trained model
+     */
+    public void requireModel() throws Exception {
+        if (model != null) return;
+        var resource = new FileSystemResource(MODEL);
+        if (!resource.exists()) throw new IllegalStateException("Missing " + MODEL + ". Run 'train' first.");
+        loadModel(resource);
+    }
+
+    public boolean hasModel() {
+        return model != null;
+    }
+
+    Model<Label> model() {
+        return model;
+    }
+
+    double[][] calibration() {
+        return calibration;
+    }
 
+    /**
+     * Entries blocked so far per reason: the {@link EntryFilter}'s, the spread gate's, then the risk engine's.
+     */
+    public Map<String, Integer> rejections() {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for (int k = EntryFilter.EV_R; k < filterRejections.length(); k++) {
+            out.put(EntryFilter.reason(k), filterRejections.get(k));
+        }
+        for (int k = 1; k < quoteRejections.length(); k++) out.put(PriceCache.reason(k), quoteRejections.get(k));
+        out.putAll(risk.rejections());
+        return out;
+    }
+
+    /**
+     * Scoring stage: predicts the direction of the decision's newest bar and runs the backtest's
+     * {@link EntryFilter} on it, with the probability calibrated as {@link SignalService#compute} does.
+     *
+     * @return whether a prediction was made (false while the indicators are still warming up)
+     */
+    boolean score(LiveDecision d) {
+        if (d.example == null || Double.isNaN(d.atr)) return false;
+        Prediction<Label> pred = model.predict(d.example);
+        d.longPos = pred.getOutput().getLabel().equals("UP");
+        double[] p = SignalService.probabilities(pred);
+        d.pWin = p == null ? Double.NaN : calibrate(d.longPos ? p[0] : p[1], calibration);
+        double[] atrs = d.recentAtr;
+        d.entryCode = filter.check(d.longPos ? 1 : -1, d.pWin, d.atr, filter.volReference(atrs, atrs.length - 1),
+            d.last.time, d.maFast, d.maSlow, d.rsi);
+        d.predicted = true;
+        d.stampNanos = d.trace.stage(LiveLatency.PREDICTION, d.stampNanos);
+        return true;
+    }
+
+    /**
+     * Risk stage: shadows the signal in the paper book (settle on the completed bar, open at the next bar, whose open
+     * is taken as this bar's close) and sizes the order off the cached {@link AccountState} balance, never the
+     * network. As in the backtest, the spread gate on the {@link PriceCache} quote, then the book's open-position
+     * limit, then the {@link RiskEngine} clear the entry; the order is prepared only once the shadow trade is open,
+     * so the risk engine's bookings always match the book. No order is prepared before the account has loaded (the
+     * shadow book then sizes off {@code forex.paper.startBalance}). Bars the scoring stage's {@link EntryFilter}
+     * rejected only settle the book.
+     */
+    void gate(LiveDecision d) {
+        String instrument = d.instrument;
+        Candle bar = d.last;
+        boolean longPos = d.longPos;
+        double entry = bar.close;
+        double atrNow = d.atr;
+        Instant entryTime = bar.time.plusSeconds(d.barSeconds);
+        paperBook.onCandle(instrument, bar.high, bar.low, bar.close, bar.time);
+
+        if (d.entryCode != EntryFilter.PASS) {
+            filterRejections.incrementAndGet(d.entryCode);
+            log.debug("Entry blocked by filter | instrument={} reason={} pWin={}", instrument,
+                EntryFilter.reason(d.entryCode), String.format("%.3f", d.pWin));
+            return;
+        }
+
+        int quote = prices == null ? PriceCache.PASS : prices.checkSpread(instrument);
+        if (quote != PriceCache.PASS) {
+            quoteRejections.incrementAndGet(quote);
+            PriceTick q = prices.quote(instrument);
+            log.info("Entry blocked by spread gate | instrument={} reason={} spreadPips={}", instrument,
+                PriceCache.reason(quote),
+                q == null ? "n/a" : String.format("%.1f", q.spread() / Indicators.pipSize(instrument)));
+            return;
+        }
+        AccountSnapshot acct = account.get();
+        double balance = acct != null ? acct.balance() : props.getPaper().getStartBalance();
+        double equity = acct != null ? acct.nav() : balance;
         double pip = Indicators.pipSize(instrument);
         double stopDist = 1.5 * atrNow;
-        double riskAmount = 10000.0 * 1; // TODO: query account balance
+        double riskAmount = balance * props.getAccount().getRiskFraction();
         double pips = stopDist / pip;
         double units = riskAmount / (0.0001 * pips);
         units = Math.min(units, props.getTrading().getUnitsCap());
+        long signedUnits = longPos ? Math.round(units) : -Math.round(units);
+
+        // the risk engine books only after the book has room (on its writer thread), and the open follows at once;
+        // waiting here keeps the bar's settle, the booking and the open in order
+        int[] code = {-1};
+        boolean opened = paperBook.open(instrument, longPos ? PaperTrade.Side.BUY : PaperTrade.Side.SELL, entry,
+            atrNow, entryTime, () -> {
+                code[0] = risk.tryOpen(instrument, signedUnits, entry, equity, bar.time.getEpochSecond());
+                return code[0] == RiskEngine.PASS;
+            }).join().isPresent();
+        d.stampNanos = d.trace.stage(LiveLatency.RISK, d.stampNanos);
+        if (!opened) {
+            if (code[0] < 0) {
+                log.debug("Entry skipped, paper book at its open-position limit | instrument={}", instrument);
+            } else {
+                log.info("Entry blocked by risk engine | instrument={} reason={} dailyR={}", instrument,
+                    RiskEngine.reason(code[0]), String.format("%.2f", risk.dailyR()));
+            }
+            return;
+        }
+
+        if (acct == null) {
+            log.warn("No account snapshot yet, skipping order | instrument={}", instrument);
+            return;
+        }
         if (units < 1000) return;
 
-        Candle last = candles.get(candles.size()-1);
-        double entry = last.open;
         Double sl = longPos ? entry - stopDist : entry + stopDist;
         Double tp = longPos ? entry + props.getPaper().getRr()*stopDist : entry - props.getPaper().getRr()*stopDist;
+        d.entry = entry;
+        d.intent = new OrderIntent(OrderIntent.clientIdFor(instrument, bar.time, signedUnits), instrument,
+            signedUnits, sl, tp);
+    }
 
-        long signedUnits = longPos ? Math.round(units) : -Math.round(units);
-        System.out.printf("Placing %s %d %s @ ~%.5f SL=%.5f TP=%.5f%n", longPos? "BUY":"SELL", signedUnits, instrument, entry, sl, tp);
-        // Uncomment to send orders on Practice:
-        // String resp = oanda.placeMarketOrder(instrument, signedUnits, sl, tp);
-        // System.out.println(resp);
+    /**
+     * Order stage: hands the prepared intent to the {@link OrderPipeline} when {@code forex.orders.enabled=true} and
+     * {@code submit} is set, which answers asynchronously, so a slow broker never holds up the next bar. Stamps
+     * {@code sent}, and {@code acked} when the broker answers.
+     *
+     * @param submit false to only log the intent whatever the configuration, as a replay does
+     */
+    void send(LiveDecision d, boolean submit) {
+        var intent = d.intent;
+        boolean longPos = intent.units() > 0;
+        log.info("Order intent {} {} {} @ ~{} SL={} TP={} clientId={}", longPos ? "BUY" : "SELL", intent.units(),
+            intent.instrument(), String.format("%.5f", d.entry), String.format("%.5f", intent.stopLoss()),
+            String.format("%.5f", intent.takeProfit()), intent.clientId());
+        // forex.orders.enabled=false (the default) only logs the intent
+        if (!submit || !props.getOrders().isEnabled()) return;
+        var result = orders.submit(intent);
+        var trace = d.trace;
+        long sent = trace.stage(LiveLatency.SENT, d.stampNanos);
+        long barClose = d.barCloseNanos;
+        result.thenAccept(r -> {
+            // FAILED and UNKNOWN never got an answer from the broker
+            if (r.status() != OrderResult.Status.FAILED && r.status() != OrderResult.Status.UNKNOWN) {
+                trace.acked(sent, barClose);
+            }
+        });
     }
 }
@@ -3,13 +3,16 @@ package com.mar.forex.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.springframework.stereotype.Service;
 import org.tribuo.Example;
 import org.tribuo.Model;
 import org.tribuo.MutableDataset;
 import org.tribuo.classification.Label;
 import org.tribuo.classification.LabelFactory;
+import org.tribuo.classification.evaluation.LabelEvaluation;
 import org.tribuo.classification.evaluation.LabelEvaluator;
 import org.tribuo.classification.sgd.linear.LogisticRegressionTrainer;
 import org.tribuo.evaluation.Evaluation;
@@ -29,18 +32,31 @@ public class MLService {
     private final LabelingService labelingService;
     private final DatasetSplitter datasetSplitter;
     private final CalibrationWriter calibrationWriter;
+    private final IntrabarFillService intrabarFillService;
 
     public TrainResult trainClassifier(List<Candle> candles,
                                        String instrument,
                                        int fast,
                                        int slow,
                                        int atrPeriod) {
+        return trainClassifier(props, candles, instrument, fast, slow, atrPeriod);
+    }
+
+    /**
+     * Trains with the labeling/split settings of {@code cfg}, a job's configuration snapshot.
+     */
+    public TrainResult trainClassifier(AppProperties cfg,
+                                       List<Candle> candles,
+                                       String instrument,
+                                       int fast,
+                                       int slow,
+                                       int atrPeriod) {
         final int n = candles.size();
         double[] close = candles.stream().mapToDouble(c -> c.close).toArray();
         double[] high  = candles.stream().mapToDouble(c -> c.high).toArray();
         double[] low   = candles.stream().mapToDouble(c -> c.low).toArray();
 
-        String maType = props.getTrading().getMaType();
+        String maType = cfg.getTrading().getMaType();
 
         // compute indicators
         MarketIndicators indicators = indicatorCalculator.compute(close, high, low, fast, slow, atrPeriod, maType);
@@ -49,19 +65,20 @@ public class MLService {
         int warmup = Math.max(Math.max(fast, slow), Math.max(14, atrPeriod)) + 1;
         log.info("TRAIN | candles={}, fast={}, slow={}, atrP={}, warmup={}, MA={}, valSplit={}",
             n, fast, slow, atrPeriod, warmup, maType,
-            (props.getTraining() != null ? props.getTraining().getValSplit() : 0.2));
+            (cfg.getTraining() != null ? cfg.getTraining().getValSplit() : 0.2));
         if (n <= warmup + 1) {
             throw new IllegalStateException("Not enough candles after warmup to build training examples. candles=" + n + " warmup=" + warmup);
         }
 
         // labeling config
-        double rr = props.getPaper().getRr();
-        int H = props.getTraining().getLabelH();
+        double rr = cfg.getPaper().getRr();
+        int H = cfg.getTraining().getLabelH();
         log.info("TRAIN | outcome-label horizon H={} bars, RR={}", H, rr);
 
         LabelFactory factory = new LabelFactory();
         List<Example<Label>> examples = labelingService.buildExamples(
-            candles, indicators, close, high, low, warmup, rr, H, factory
+            candles, indicators, close, high, low, warmup, rr, H, factory,
+            instrument, intrabarFillService.forGranularity(cfg.getTrading().getGranularity())
         );
         log.info("TRAIN | built {} labeled examples", examples.size());
         FeatureStats.logFeatureStats(examples);
@@ -70,8 +87,8 @@ public class MLService {
         }
 
         // train/test split
-        double valSplit = (props.getTraining() != null && props.getTraining().getValSplit() != null)
-            ? props.getTraining().getValSplit()
+        double valSplit = (cfg.getTraining() != null && cfg.getTraining().getValSplit() != null)
+            ? cfg.getTraining().getValSplit()
             : 0.2;
         DatasetSplitter.TrainTestSplit split = datasetSplitter.split(examples, factory, instrument, valSplit, 1L);
 
@@ -80,6 +97,7 @@ public class MLService {
         log.info("TRAIN | train size={} test size={}", train.size(), test.size());
 
         // train & evaluate
+        JobContext.checkCancelled();
         LogisticRegressionTrainer trainer = new LogisticRegressionTrainer();
         Model<Label> model = trainer.train(train);
 
@@ -89,6 +107,11 @@ public class MLService {
         TrainResult tr = new TrainResult();
         tr.setModel(model);
         tr.setEval(eval);
+        tr.setTrainSize(train.size());
+        tr.setTestSize(test.size());
+
+        // the fit itself cannot be interrupted; stop before writing calibration for a cancelled job
+        JobContext.checkCancelled();
 
         // write calibration tables
         calibrationWriter.writeProbabilityTable(model, test, Path.of("models/calibration.csv"));
@@ -99,6 +122,21 @@ public class MLService {
         return tr;
     }
 
+    /**
+     * Headline metrics of a training run, as stored and streamed for the train job.
+     */
+    public Map<String, Object> summarize(TrainResult tr) {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("trainSize", tr.getTrainSize());
+        metrics.put("testSize", tr.getTestSize());
+        if (tr.getEval() instanceof LabelEvaluation le) {
+            metrics.put("accuracy", le.accuracy());
+            metrics.put("macroF1", le.macroAveragedF1());
+            metrics.put("balancedErrorRate", le.balancedErrorRate());
+        }
+        return metrics;
+    }
+
     // ---- Model save/load using Tribuo's file helpers ----
     public void save(Model<Label> model, Path path) throws java.io.IOException {
         java.nio.file.Files.createDirectories(path.getParent());
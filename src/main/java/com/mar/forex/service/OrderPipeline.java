@@ -0,0 +1,341 @@
+package com.mar.forex.service;
+
+import lombok.extern.slf4j.Slf4j;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.springframework.stereotype.Service;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.config.IoExecutor;
+import com.mar.forex.domain.model.OrderIntent;
+import com.mar.forex.domain.model.OrderResult;
+import com.mar.forex.domain.model.OrderResult.Status;
+import com.mar.forex.infrastructure.broker.OandaClient;
+import com.mar.forex.infrastructure.broker.OandaClient.Reply;
+import com.mar.forex.util.LatencyHistogram;
+
+/**
+ * Sends order intents to the broker asynchronously and resolves each to exactly one {@link OrderResult}.
+ *
+ * Idempotency is two-layered: intents are keyed by their {@code clientId}, so submitting the same intent again
+ * returns the first submission's future; and the id travels to OANDA as the order's clientExtensions id, which the
+ * broker refuses to reuse. Retries are only made when they cannot double an order:
+ * <ul>
+ *   <li>4xx (other than 429) is a final REJECTED; 429 is resubmitted after a backoff, since it was not processed.</li>
+ *   <li>A transport error, timeout or 5xx leaves the outcome unknown, so the order is first looked up by its client
+ *   id: found means its state is the outcome, 404 means it was never placed and may be resubmitted.</li>
+ *   <li>CLIENT_ORDER_ID_ALREADY_EXISTS means an earlier attempt got through; its state is looked up.</li>
+ * </ul>
+ * After {@code forex.orders.maxAttempts} calls the outcome is FAILED (known not placed) or UNKNOWN (to reconcile).
+ *
+ * At most {@code forex.orders.maxInFlight} orders are with the broker at once; the rest wait in a queue rather than
+ * on a thread, since the HTTP dispatcher and the retry timers share the IO pool. Each POST's submit-to-ack time and each
+ * order's intent-to-outcome time go into {@link LatencyHistogram}s.
+ */
+@Slf4j
+@Service
+public class OrderPipeline {
+    private static final int RETAIN = 10_000;
+    private static final String ALREADY_EXISTS = "CLIENT_ORDER_ID_ALREADY_EXISTS";
+
+    public record Stats(long submitted, long filled, long cancelled, long rejected, long failed, long unknown,
+                        long retries, long recovered, long duplicateIntents, int inFlight, String ackLatency,
+                        String totalLatency) {
+    }
+
+    private final OandaClient oanda;
+    private final AppProperties props;
+    private final IoExecutor io;
+    private final ObjectMapper mapper;
+    private final Semaphore permits;
+    private final Queue<Order> waiting = new ConcurrentLinkedQueue<>();
+    private final Map<String, CompletableFuture<OrderResult>> byClientId = new ConcurrentHashMap<>();
+    private final List<Consumer<OrderResult>> listeners = new CopyOnWriteArrayList<>();
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong duplicateIntents = new AtomicLong();
+    private final Map<Status, AtomicLong> outcomes = new ConcurrentHashMap<>();
+
+    public OrderPipeline(OandaClient oanda, AppProperties props, IoExecutor io, ObjectMapper mapper) {
+        this.oanda = oanda;
+        this.props = props;
+        this.io = io;
+        this.mapper = mapper;
+        this.permits = new Semaphore(props.getOrders().getMaxInFlight());
+        for (Status s : Status.values()) outcomes.put(s, new AtomicLong());
+    }
+
+    /**
+     * Registers a consumer of every final outcome (fills, cancels, rejects, failures).
+     */
+    public AutoCloseable onResult(Consumer<OrderResult> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    /**
+     * Queues an intent. Returns the existing future when an intent with the same client id was already submitted.
+     */
+    public CompletableFuture<OrderResult> submit(OrderIntent intent) {
+        var future = new CompletableFuture<OrderResult>();
+        var existing = byClientId.putIfAbsent(intent.clientId(), future);
+        if (existing != null) {
+            duplicateIntents.incrementAndGet();
+            log.info("Order intent already submitted | clientId={}", intent.clientId());
+            return existing;
+        }
+        submitted.incrementAndGet();
+        prune();
+        waiting.add(new Order(intent, future, System.nanoTime()));
+        dispatch();
+        return future;
+    }
+
+    public LatencyHistogram ackLatency() {
+        return ackLatency;
+    }
+
+    public LatencyHistogram totalLatency() {
+        return totalLatency;
+    }
+
+    public Stats stats() {
+        return new Stats(submitted.get(), outcomes.get(Status.FILLED).get(), outcomes.get(Status.CANCELLED).get(),
+            outcomes.get(Status.REJECTED).get(), outcomes.get(Status.FAILED).get(), outcomes.get(Status.UNKNOWN).get(),
+            retries.get(), recovered.get(), duplicateIntents.get(), inFlight.get(), ackLatency.summary(),
+            totalLatency.summary());
+    }
+
+    // starts waiting orders while permits are free; called on submit and whenever a permit is released
+    private void dispatch() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Order o = waiting.poll();
+            if (o == null) {
+                permits.release();
+                return;
+            }
+            inFlight.incrementAndGet();
+            o.holdsPermit = true;
+            safely(o, () -> post(o));
+        }
+    }
+
+    private void post(Order o) {
+        o.attempts++;
+        long t0 = System.nanoTime();
+        oanda.submitOrderAsync(o.intent, props.getOrders().getTag()).whenComplete((reply, error) -> safely(o, () -> {
+            if (error != null) {
+                unknown(o, "submit failed: " + error);
+                return;
+            }
+            ackLatency.recordSince(t0);
+            onSubmitted(o, reply);
+        }));
+    }
+
+    private void onSubmitted(Order o, Reply reply) {
+        JsonNode root = parse(reply.body());
+        if (reply.isSuccessful()) {
+            resolveTransactions(o, root);
+            return;
+        }
+        if (reply.code() == 429) {
+            if (o.attempts >= maxAttempts()) {
+                finish(o, Status.FAILED, null, null, Double.NaN, "rate limited");
+            } else {
+                later(o, () -> post(o));
+            }
+            return;
+        }
+        if (reply.code() >= 500) {
+            unknown(o, "HTTP " + reply.code());
+            return;
+        }
+        String reason = text(root.path("orderRejectTransaction"), "rejectReason", text(root, "errorCode",
+            text(root, "errorMessage", "HTTP " + reply.code())));
+        if (ALREADY_EXISTS.equals(reason)) {
+            lookup(o);
+        } else {
+            finish(o, Status.REJECTED, null, null, Double.NaN, reason);
+        }
+    }
+
+    // 2xx order response: a fill or a cancel transaction
+    private void resolveTransactions(Order o, JsonNode root) {
+        JsonNode fill = root.path("orderFillTransaction");
+        String orderId = text(root.path("orderCreateTransaction"), "id", text(fill, "orderID", null));
+        if (!fill.isMissingNode()) {
+            finish(o, Status.FILLED, orderId, text(fill.path("tradeOpened"), "tradeID", null),
+                fill.path("price").asDouble(Double.NaN), null);
+            return;
+        }
+        JsonNode cancel = root.path("orderCancelTransaction");
+        finish(o, Status.CANCELLED, orderId, null, Double.NaN, text(cancel, "reason", "cancelled"));
+    }
+
+    /**
+     * The outcome of the last call is unknown: back off, then ask the broker whether it has the order.
+     */
+    private void unknown(Order o, String reason) {
+        o.lastError = reason;
+        if (o.attempts >= maxAttempts()) {
+            finish(o, Status.UNKNOWN, null, null, Double.NaN, reason);
+            return;
+        }
+        retries.incrementAndGet();
+        log.warn("Order outcome unknown, checking | clientId={} attempt={} reason={}", o.intent.clientId(), o.attempts,
+            reason);
+        later(o, () -> lookup(o));
+    }
+
+    private void lookup(Order o) {
+        o.attempts++;
+        oanda.getOrderByClientIdAsync(o.intent.clientId()).whenComplete((reply, error) -> safely(o, () -> {
+            if (error != null) {
+                unknown(o, "lookup failed: " + error);
+                return;
+            }
+            if (reply.code() == 404) {
+                // never reached the broker: safe to send again
+                if (o.attempts >= maxAttempts()) {
+                    finish(o, Status.FAILED, null, null, Double.NaN, "not placed: " + o.lastError);
+                } else {
+                    retries.incrementAndGet();
+                    later(o, () -> post(o));
+                }
+                return;
+            }
+            if (!reply.isSuccessful()) {
+                unknown(o, "lookup HTTP " + reply.code());
+                return;
+            }
+            JsonNode order = parse(reply.body()).path("order");
+            String orderId = text(order, "id", null);
+            switch (text(order, "state", "")) {
+                case "FILLED" -> {
+                    recovered.incrementAndGet();
+                    fillPrice(o, orderId, text(order, "tradeOpenedID", null),
+                        text(order, "fillingTransactionID", null));
+                }
+                case "CANCELLED" -> {
+                    recovered.incrementAndGet();
+                    finish(o, Status.CANCELLED, orderId, null, Double.NaN, "cancelled");
+                }
+                default -> unknown(o, "order " + text(order, "state", "?"));
+            }
+        }));
+    }
+
+    // the order lookup has no price; take it from the fill transaction if that answers, else report NaN
+    private void fillPrice(Order o, String orderId, String tradeId, String fillTxId) {
+        if (fillTxId == null) {
+            finish(o, Status.FILLED, orderId, tradeId, Double.NaN, null);
+            return;
+        }
+        oanda.getTransactionAsync(fillTxId).whenComplete((reply, error) -> safely(o, () -> {
+            double price = Double.NaN;
+            if (error == null && reply.isSuccessful()) {
+                price = parse(reply.body()).path("transaction").path("price").asDouble(Double.NaN);
+            }
+            finish(o, Status.FILLED, orderId, tradeId, price, null);
+        }));
+    }
+
+    private void later(Order o, Runnable step) {
+        long delay = props.getOrders().getRetryBackoffMs() << Math.min(10, Math.max(0, o.attempts - 1));
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, io.executorService())
+            .execute(() -> safely(o, step));
+    }
+
+    // a bug in a step must not leave the order without an outcome or holding its permit
+    private void safely(Order o, Runnable step) {
+        try {
+            step.run();
+        } catch (RuntimeException e) {
+            log.error("Order step failed | clientId={}", o.intent.clientId(), e);
+            if (!o.future.isDone()) finish(o, Status.UNKNOWN, null, null, Double.NaN, e.toString());
+        }
+    }
+
+    private void finish(Order o, Status status, String orderId, String tradeId, double price, String reason) {
+        if (o.holdsPermit) {
+            o.holdsPermit = false;
+            inFlight.decrementAndGet();
+            permits.release();
+            dispatch();
+        }
+        long nanos = System.nanoTime() - o.startNanos;
+        totalLatency.record(nanos);
+        outcomes.get(status).incrementAndGet();
+        var result = new OrderResult(o.intent.clientId(), status, orderId, tradeId, price, reason, o.attempts,
+            nanos / 1e6);
+        if (status == Status.FILLED) {
+            log.info("Order filled | clientId={} orderId={} price={} attempts={}", result.clientId(), orderId, price,
+                o.attempts);
+        } else {
+            log.warn("Order {} | clientId={} reason={} attempts={}", status, result.clientId(), reason, o.attempts);
+        }
+        o.future.complete(result);
+        for (var l : listeners) {
+            try {
+                l.accept(result);
+            } catch (RuntimeException e) {
+                log.warn("Order listener failed: {}", e.toString());
+            }
+        }
+    }
+
+    private int maxAttempts() {
+        return props.getOrders().getMaxAttempts();
+    }
+
+    // keeps the idempotency window bounded: completed entries go once the map is over its size
+    private void prune() {
+        if (byClientId.size() <= RETAIN) return;
+        byClientId.entrySet().removeIf(e -> e.getValue().isDone() && byClientId.size() > RETAIN / 2);
+    }
+
+    private JsonNode parse(String body) {
+        try {
+            return body == null || body.isBlank() ? mapper.createObjectNode() : mapper.readTree(body);
+        } catch (Exception e) {
+            return mapper.createObjectNode();
+        }
+    }
+
+    private static String text(JsonNode node, String field, String def) {
+        JsonNode v = node.path(field);
+        return v.isMissingNode() || v.isNull() ? def : v.asText();
+    }
+
+    private static final class Order {
+        final OrderIntent intent;
+        final CompletableFuture<OrderResult> future;
+        final long startNanos;
+        // touched by one step at a time: each step starts after the previous call completed
+        volatile int attempts;
+        volatile boolean holdsPermit;
+        volatile String lastError;
+
+        Order(OrderIntent intent, CompletableFuture<OrderResult> future, long startNanos) {
+            this.intent = intent;
+            this.future = future;
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.mar.forex.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.infrastructure.broker.PaperTradeEngine;
+
+/**
+ * Creates run-scoped paper engines, wired with the intrabar resolver for the run's granularity.
+ */
+@Component
+@RequiredArgsConstructor
+public class PaperTradeEngineFactory {
+    private final IntrabarFillService intrabarFillService;
+
+    public PaperTradeEngine create(AppProperties cfg) {
+        PaperTradeEngine paper = new PaperTradeEngine(cfg);
+        paper.setIntrabarResolver(intrabarFillService.forGranularity(cfg.getTrading().getGranularity()));
+        return paper;
+    }
+}
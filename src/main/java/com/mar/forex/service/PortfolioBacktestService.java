@@ -0,0 +1,375 @@
+package com.mar.forex.service;
+
+import static com.mar.forex.util.BacktestUtils.*;
+import static java.util.Map.entry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import org.springframework.stereotype.Service;
+import org.tribuo.Model;
+import org.tribuo.classification.Label;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.config.IoExecutor;
+import com.mar.forex.domain.model.Candle;
+import com.mar.forex.domain.model.PaperTrade;
+import com.mar.forex.domain.model.ResamplingReport;
+import com.mar.forex.domain.model.SignalColumns;
+import com.mar.forex.domain.model.StoredResult;
+import com.mar.forex.domain.model.TradeEvent;
+import com.mar.forex.infrastructure.broker.PaperTradeEngine;
+import com.mar.forex.infrastructure.messaging.SseHub;
+import com.mar.forex.infrastructure.storage.ResultStore;
+import com.mar.forex.util.DoubleSeries;
+import com.mar.forex.util.RSeriesResampler;
+
+/**
+ * Backtests a basket of instruments against one account.
+ *
+ * Loading, indicators, predictions and the account-independent entry gates run per instrument on a fork/join pool.
+ * The per-instrument lanes are then merged in timestamp order into a single sequential simulation that shares
+ * equity, leverage and margin across all positions.
+ *
+ * Every lane is scored by the one shared model, {@code models/model.zip}, as live trading scores every instrument;
+ * when it is missing or stale it is trained on the first instrument only.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PortfolioBacktestService {
+    private final DataService dataService;
+    private final IoExecutor ioExecutor;
+    private final SignalService signalService;
+    private final PaperTradeEngineFactory paperTradeEngineFactory;
+    private final SseHub sseHub;
+    private final ResultStore resultStore;
+    private final ObjectMapper objectMapper;
+
+    public void run(AppProperties cfg, List<String> instruments, int count, String jobId, String inputKey)
+        throws Exception {
+        if (instruments == null || instruments.isEmpty()) {
+            throw new IllegalArgumentException("Portfolio backtest needs at least one instrument");
+        }
+        String granularity = cfg.getTrading().getGranularity();
+        int parallelism = cfg.getPortfolio().getParallelism() > 0
+            ? cfg.getPortfolio().getParallelism()
+            : Runtime.getRuntime().availableProcessors();
+        parallelism = Math.max(1, Math.min(parallelism, instruments.size()));
+
+        log.info("Backtest(portfolio) | {} {} | count={} parallelism={} jobId={}",
+            instruments, granularity, count, parallelism, jobId);
+        emit(jobId, "progress", Map.of(
+            "phase", "start",
+            "instruments", instruments,
+            "granularity", granularity,
+            "rr", cfg.getPaper().getRr(),
+            "mode", String.valueOf(cfg.getPaper().getMode())
+        ));
+
+        List<Lane> lanes = new ArrayList<>(instruments.size());
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // 1) Fetch every series concurrently on the I/O executor (blocking HTTP, not CPU work)
+            List<Future<List<Candle>>> loads = new ArrayList<>(instruments.size());
+            for (String instrument : instruments) {
+                loads.add(ioExecutor.submit(() -> dataService.loadCandlesPaged(instrument, granularity, count)));
+            }
+            List<List<Candle>> series = new ArrayList<>(instruments.size());
+            for (var task : loads) series.add(task.get());
+
+            // 2) Resolve the shared model once (may train on the first instrument)
+            double[][] calibTable = signalService.loadCalibrationTable();
+            Model<Label> model = signalService.resolveModel(cfg, series.get(0), instruments.get(0));
+            log.info("Portfolio scores all {} instruments with one shared model (trained on {} if missing) jobId={}",
+                instruments.size(), instruments.get(0), jobId);
+            EntryFilter filter = EntryFilter.from(cfg.getPaper(), cfg.getFilter(), cfg.getExecution());
+
+            // 3) Per-instrument features, predictions and stateless gates
+            List<ForkJoinTask<Lane>> builds = new ArrayList<>(instruments.size());
+            for (int k = 0; k < instruments.size(); k++) {
+                String instrument = instruments.get(k);
+                List<Candle> candles = series.get(k);
+                if (candles.size() < 300) {
+                    log.warn("Too few candles ({}) for {}. Skipping in portfolio jobId={}", candles.size(), instrument, jobId);
+                    continue;
+                }
+                builds.add(pool.submit(() -> buildLane(cfg, instrument, candles, model, calibTable, filter)));
+            }
+            for (var task : builds) lanes.add(task.get());
+        } finally {
+            pool.shutdown();
+        }
+
+        if (lanes.isEmpty()) {
+            log.warn("No instrument had enough data. Aborting portfolio backtest jobId={}", jobId);
+            return;
+        }
+        emit(jobId, "progress", Map.of("phase", "merge", "instruments", lanes.size()));
+
+        // 4) Sequential account simulation over the merged timeline
+        simulate(cfg, lanes, granularity, jobId, inputKey);
+    }
+
+    private Lane buildLane(AppProperties cfg, String instrument, List<Candle> candles, Model<Label> model,
+                           double[][] calibTable, EntryFilter filter) {
+        SignalColumns cols = signalService.compute(cfg, instrument, candles, model, calibTable);
+        Lane lane = new Lane(instrument, cols);
+        for (int i = cols.warmup(); i < cols.size(); i++) {
+            int code = filter.check(cols, i);
+            lane.gate[i] = (byte) code;
+            lane.rejections[code]++;
+        }
+        log.info("Portfolio lane ready | {} bars={} considered={}",
+            instrument, cols.size(), cols.size() - cols.warmup() - lane.rejections[EntryFilter.NO_SIGNAL]);
+        return lane;
+    }
+
+    private void simulate(AppProperties cfg, List<Lane> lanes, String granularity, String jobId, String inputKey) {
+        double leverage = cfg.getPaper().getLeverage();
+        double startBalance = cfg.getPaper().getStartBalance();
+        double stopAtrMult = cfg.getPaper().getStopAtrMulti();
+        double riskFrac = Math.max(0.0, cfg.getPaper().getRisk());
+        boolean onePerDay = cfg.getFilter().isOnePerDay();
+        int cooldownBars = barsPerDayFor(granularity);
+
+        PaperTradeEngine paper = paperTradeEngineFactory.create(cfg);
+        Map<PaperTrade, double[]> positions = new IdentityHashMap<>(); // trade -> {riskUSD, notionalUSD}
+        Map<String, Lane> byInstrument = new HashMap<>();
+        for (Lane lane : lanes) byInstrument.put(lane.instrument, lane);
+
+        double equityUSD = startBalance;
+        double equityR = 0.0;
+        double notionalOpen = 0.0;
+        DoubleSeries equityCurve = new DoubleSeries();
+        DoubleSeries equityCurveUSD = new DoubleSeries();
+        List<Double> rSeries = new ArrayList<>();
+        long wins = 0;
+        long losses = 0;
+        List<TradeEvent> ledger = new ArrayList<>();
+
+        // k-way merge by (time, lane order); a lane's key only changes while it is out of the queue
+        PriorityQueue<Lane> queue = new PriorityQueue<>(
+            Comparator.comparing((Lane l) -> l.cols.time()[l.pos]).thenComparingInt(l -> l.order));
+        for (int k = 0; k < lanes.size(); k++) {
+            Lane lane = lanes.get(k);
+            lane.order = k;
+            lane.pos = lane.cols.warmup();
+            lane.lastOpenIndex = -cooldownBars;
+            if (lane.pos < lane.cols.size()) queue.add(lane);
+        }
+
+        long steps = 0;
+        int lastClosedCount = 0;
+        while (!queue.isEmpty()) {
+            if ((steps & 1023) == 0) JobContext.checkCancelled();
+            Lane lane = queue.poll();
+            SignalColumns c = lane.cols;
+            int i = lane.pos;
+            Instant ts = c.time()[i];
+
+            if (lane.gate[i] == EntryFilter.PASS) {
+                int day = toUtcDayKey(ts);
+                boolean windowOk = onePerDay ? (lane.closedOn(day) < 2) : ((i - lane.lastOpenIndex) >= cooldownBars);
+                if (paper.canOpen(lane.instrument) && windowOk) {
+                    double entry = c.close()[i];
+                    double atrVal = c.atr()[i];
+                    double stopDist = Math.max(1e-6, atrVal * stopAtrMult);
+                    // stopDist is in the quote currency; risk and margin are sized in USD
+                    double quoteUSD = quoteRate(lane.instrument, entry, byInstrument);
+                    double riskPerUnit = stopDist * quoteUSD;
+                    double targetUnits = (riskFrac * equityUSD) / riskPerUnit;
+
+                    // Shared margin: whatever the other open positions leave free
+                    double perUnit = Math.max(1e-9, notionalUSD(1.0, entry, quoteUSD));
+                    double maxUnitsByMargin = (equityUSD * leverage - notionalOpen) / perUnit;
+                    double units = Math.min(targetUnits, Math.max(0.0, maxUnitsByMargin));
+
+                    if (units <= 0) {
+                        lane.rejMargin++;
+                    } else {
+                        PaperTrade.Side side = c.side()[i] > 0 ? PaperTrade.Side.BUY : PaperTrade.Side.SELL;
+                        PaperTrade t = paper.open(lane.instrument, side, entry, atrVal, i, ts);
+                        double notional = units * perUnit;
+                        positions.put(t, new double[]{units * riskPerUnit, notional});
+                        notionalOpen += notional;
+                        lane.lastOpenIndex = i;
+                        lane.opened++;
+                    }
+                } else if (!windowOk) {
+                    lane.rejWindow++;
+                }
+            }
+
+            paper.onCandle(lane.instrument, c.high()[i], c.low()[i], c.close()[i], ts);
+
+            if (paper.closedCount() > lastClosedCount) {
+                for (PaperTrade t : paper.getClosedSince(lastClosedCount)) {
+                    double[] pos = positions.remove(t);
+                    double risk = Math.abs(t.getEntry() - t.getStop());
+                    if (pos != null) notionalOpen -= pos[1];
+                    if (risk == 0) continue;
+                    double r = (t.getSide() == PaperTrade.Side.BUY)
+                        ? (t.getExit() - t.getEntry()) / risk
+                        : (t.getEntry() - t.getExit()) / risk;
+                    double pnlUSD = r * (pos != null ? pos[0] : 0.0);
+                    equityUSD += pnlUSD;
+                    equityR += r;
+                    rSeries.add(r);
+                    if (t.getStatus() == PaperTrade.Status.WON) wins++;
+                    else if (t.getStatus() == PaperTrade.Status.LOST) losses++;
+                    equityCurve.add(equityR);
+                    equityCurveUSD.add(equityUSD);
+                    ledger.add(new TradeEvent(i, String.valueOf(t.getSide()), r, equityR, String.valueOf(t.getStatus()),
+                        t.getEntry(), t.getExit(), t.getStop(), t.getTake(),
+                        (t.getClosedAt() != null ? t.getClosedAt() : ts).toString(), pnlUSD, equityUSD));
+
+                    Lane owner = byInstrument.get(t.getInstrument());
+                    owner.recordClose(toUtcDayKey(t.getOpenedAt()), r, t.getStatus());
+                }
+                lastClosedCount = paper.closedCount();
+            }
+
+            if (++lane.pos < c.size()) queue.add(lane);
+            if ((++steps % 5000) == 0) {
+                sseHub.emitCoalesced(jobId, "progress", Map.of("phase", "loop", "ts", ts.toString(), "steps", steps));
+            }
+        }
+
+        Map<String, Object> perInstrument = new LinkedHashMap<>();
+        for (Lane lane : lanes) {
+            perInstrument.put(lane.instrument, Map.ofEntries(
+                entry("trades", lane.trades),
+                entry("wins", lane.wins),
+                entry("losses", lane.losses),
+                entry("totalR", r2(lane.sumR)),
+                entry("opened", lane.opened),
+                entry("rejections", Map.of(
+                    "evR", lane.rejections[EntryFilter.EV_R],
+                    "prob", lane.rejections[EntryFilter.PROB],
+                    "vol", lane.rejections[EntryFilter.VOL],
+                    "session", lane.rejections[EntryFilter.SESSION],
+                    "trend", lane.rejections[EntryFilter.TREND],
+                    "window", lane.rejWindow,
+                    "margin", lane.rejMargin
+                ))
+            ));
+        }
+
+        if (rSeries.isEmpty()) {
+            log.warn("No paper trades closed (portfolio) jobId={}", jobId);
+            emit(jobId, "result", Map.of("trades", 0, "instruments", perInstrument));
+            return;
+        }
+
+        // by status, as runForUI counts them
+        double totalR = sum(rSeries);
+        double winRate = wins + losses == 0 ? 0.0 : 100.0 * wins / (wins + losses);
+        double pf = profitFactor(rSeries);
+        double mddR = maxDrawdownR(rSeries);
+        log.info("RESULTS(portfolio) trades={} winRate={} totalR={} pf={} maxDDR={} endBalance={} jobId={}",
+            rSeries.size(), format2(winRate), format2(totalR), format3(pf), format2(mddR), format2(equityUSD), jobId);
+
+        double[] fullCurve = equityCurve.toArray();
+        double[] fullCurveUSD = equityCurveUSD.toArray();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("trades", rSeries.size());
+        metrics.put("wins", wins);
+        metrics.put("losses", losses);
+        metrics.put("winRate", r2(winRate));
+        metrics.put("totalR", r2(totalR));
+        metrics.put("avgR", Double.parseDouble(format3(totalR / rSeries.size())));
+        metrics.put("profitFactor", Double.parseDouble(format3(pf)));
+        metrics.put("maxDrawdownR", r2(mddR));
+        metrics.put("startBalance", startBalance);
+        metrics.put("endBalance", r2(equityUSD));
+        metrics.put("instruments", perInstrument);
+        ResamplingReport resampling = RSeriesResampler.analyze(rSeries, cfg.getResampling());
+        if (resampling != null) metrics.put("resampling", resampling);
+        resultStore.save(new StoredResult(jobId, "portfolio", inputKey, Instant.now(),
+            String.join(",", byInstrument.keySet().stream().sorted().toList()), granularity, metrics,
+            resultStore.configOf(cfg), fullCurve, fullCurveUSD, ledger));
+
+        Map<String, Object> result = new HashMap<>(metrics);
+        int points = cfg.getResults().getCurvePoints();
+        putCurve(result, "equityCurve", fullCurve, points);
+        putCurve(result, "equityCurveUSD", fullCurveUSD, points);
+        emit(jobId, "result", result);
+    }
+
+    private void emit(String jobId, String event, Map<String, Object> payload) {
+        try {
+            sseHub.emit(jobId, event, objectMapper.writeValueAsString(payload));
+        } catch (Exception ignored) {
+        }
+    }
+
+    private static double r2(double v) {
+        return Double.parseDouble(String.format("%.2f", v));
+    }
+
+    /**
+     * One instrument's precomputed columns plus its slice of the merge/simulation state.
+     */
+    /**
+     * Quote-to-USD rate for sizing: direct for xxx_USD and USD_xxx, otherwise from the latest close of a lane quoting
+     * the cross's quote currency against USD. Falls back to 1 when the portfolio has no such lane.
+     */
+    private static double quoteRate(String instrument, double price, Map<String, Lane> lanes) {
+        double direct = quoteToUSD(instrument, price);
+        if (!Double.isNaN(direct)) return direct;
+        String quote = instrument.substring(instrument.indexOf('_') + 1);
+        Lane l = lanes.get(quote + "_USD");
+        if (l != null && l.pos > 0) return l.cols.close()[l.pos - 1];
+        l = lanes.get("USD_" + quote);
+        if (l != null && l.pos > 0) return 1.0 / l.cols.close()[l.pos - 1];
+        return 1.0;
+    }
+
+    private static final class Lane {
+        final String instrument;
+        final SignalColumns cols;
+        final byte[] gate;
+        final int[] rejections = new int[EntryFilter.TREND + 1];
+        int order, pos, lastOpenIndex;
+        int rejWindow, rejMargin, opened;
+        int trades, wins, losses;
+        double sumR;
+        // closed trades opened on closedDay (for the one-per-day window)
+        int closedDay = -1, closedToday;
+
+        Lane(String instrument, SignalColumns cols) {
+            this.instrument = instrument;
+            this.cols = cols;
+            this.gate = new byte[cols.size()];
+            Arrays.fill(gate, (byte) EntryFilter.NO_SIGNAL);
+        }
+
+        int closedOn(int day) {
+            return day == closedDay ? closedToday : 0;
+        }
+
+        void recordClose(int openDay, double r, PaperTrade.Status status) {
+            if (openDay == closedDay) closedToday++;
+            else if (openDay > closedDay) {
+                closedDay = openDay;
+                closedToday = 1;
+            }
+            trades++;
+            if (status == PaperTrade.Status.WON) wins++;
+            else if (status == PaperTrade.Status.LOST) losses++;
+            sumR += r;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.mar.forex.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.mar.forex.domain.model.Paper;
+import com.mar.forex.domain.model.Risk;
+
+/**
+ * The account-dependent pre-trade limits of {@code forex.risk}, shared by the backtest and live trading: realised R
+ * of the current UTC day, losing trades in a row, net exposure per currency and margin in use.
+ *
+ * All of them are running totals updated when a position opens or closes, so {@link #tryOpen} is a few array reads
+ * and never allocates once an instrument has been seen. Positions close first-in first-out per instrument, like the
+ * paper engine and OANDA's FIFO rule. Both day counters restart at the UTC day boundary, which is also what lifts a
+ * consecutive-loss block. Notional is {@code |units| * price} in the quote currency, taken as the account's (as the
+ * backtest's margin cap does), except for USD-based pairs where it is {@code |units|}.
+ *
+ * Every block is counted under its reason code for the rejection summary. Methods are synchronized so live trading
+ * can share one engine across instruments; a backtest owns its engine and never contends.
+ */
+public final class RiskEngine {
+    public static final int PASS = 0;
+    public static final int DAILY_LOSS = 1;
+    public static final int CONSEC_LOSSES = 2;
+    public static final int EXPOSURE = 3;
+    public static final int MARGIN = 4;
+
+    private static final String[] REASONS = {"pass", "dailyLossR", "consecLosses", "exposure", "marginUsage"};
+    private static final String ACCOUNT_CURRENCY = "USD";
+
+    private final double maxDailyLossR;
+    private final int maxConsecLosses;
+    private final double maxMarginUsage;
+    private final double maxCurrencyExposure;
+    private final double leverage;
+
+    private final Map<String, Pair> pairs = new HashMap<>();
+    private final Map<String, Integer> currencies = new HashMap<>();
+    private final int[] rejections = new int[REASONS.length];
+    private double[] exposure = new double[8];
+    private long day = Long.MIN_VALUE;
+    private double dailyR;
+    private int consecLosses;
+    private double marginUsed;
+
+    private RiskEngine(double maxDailyLossR, int maxConsecLosses, double maxMarginUsage, double maxCurrencyExposure,
+                       double leverage) {
+        this.maxDailyLossR = maxDailyLossR;
+        this.maxConsecLosses = maxConsecLosses;
+        this.maxMarginUsage = maxMarginUsage;
+        this.maxCurrencyExposure = maxCurrencyExposure;
+        this.leverage = leverage;
+    }
+
+    public static RiskEngine from(Risk risk, Paper paper) {
+        return new RiskEngine(
+            risk.getMaxDailyLossR() != null ? risk.getMaxDailyLossR() : Double.POSITIVE_INFINITY,
+            risk.getMaxConsecLosses() != null ? risk.getMaxConsecLosses() : Integer.MAX_VALUE,
+            risk.getMaxMarginUsage() != null ? risk.getMaxMarginUsage() : Double.POSITIVE_INFINITY,
+            risk.getMaxCurrencyExposure() != null ? risk.getMaxCurrencyExposure() : Double.POSITIVE_INFINITY,
+            Math.max(1, paper.getLeverage()));
+    }
+
+    public static String reason(int code) {
+        return REASONS[code];
+    }
+
+    /**
+     * Checks a new position of signed {@code units} at {@code price} against every limit and, when it passes, books
+     * it. Returns {@link #PASS} or the code of the first limit it breaks.
+     */
+    public synchronized int tryOpen(String instrument, double units, double price, double equity, long epochSecond) {
+        rollDay(epochSecond);
+        int code;
+        if (dailyR <= -maxDailyLossR) {
+            code = DAILY_LOSS;
+        } else if (consecLosses >= maxConsecLosses) {
+            code = CONSEC_LOSSES;
+        } else {
+            Pair p = pair(instrument);
+            double notional = p.usdBase ? Math.abs(units) : Math.abs(units) * price;
+            double signed = Math.copySign(notional, units);
+            double limit = maxCurrencyExposure * equity;
+            if (breaches(exposure[p.base], exposure[p.base] + signed, limit)
+                || breaches(exposure[p.quote], exposure[p.quote] - signed, limit)) {
+                code = EXPOSURE;
+            } else if (marginUsed + notional / leverage > maxMarginUsage * equity * (1 + 1e-9)) {
+                // the tolerance lets a position sized exactly at the margin cap through
+                code = MARGIN;
+            } else {
+                exposure[p.base] += signed;
+                exposure[p.quote] -= signed;
+                marginUsed += notional / leverage;
+                p.push(signed);
+                return PASS;
+            }
+        }
+        rejections[code]++;
+        return code;
+    }
+
+    /**
+     * Books the close of the instrument's oldest open position with its realised R.
+     */
+    public synchronized void onClose(String instrument, double r, long epochSecond) {
+        rollDay(epochSecond);
+        dailyR += r;
+        consecLosses = r < 0 ? consecLosses + 1 : 0;
+        Pair p = pairs.get(instrument);
+        if (p != null && p.size > 0) unbook(p, p.pollOldest());
+    }
+
+    /**
+     * Blocks so far per reason, e.g. {@code dailyLossR=4}.
+     */
+    public synchronized Map<String, Integer> rejections() {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for (int k = 1; k < REASONS.length; k++) out.put(REASONS[k], rejections[k]);
+        return out;
+    }
+
+    public synchronized double dailyR() {
+        return dailyR;
+    }
+
+    public synchronized int consecLosses() {
+        return consecLosses;
+    }
+
+    public synchronized double marginUsed() {
+        return marginUsed;
+    }
+
+    public synchronized double exposure(String currency) {
+        Integer i = currencies.get(currency);
+        return i == null ? 0 : exposure[i];
+    }
+
+    private void rollDay(long epochSecond) {
+        long d = Math.floorDiv(epochSecond, 86_400L);
+        if (d > day) {
+            day = d;
+            dailyR = 0;
+            consecLosses = 0;
+        }
+    }
+
+    // only a move away from zero can break the limit, so a trade that reduces an oversized exposure passes
+    private static boolean breaches(double before, double after, double limit) {
+        return Math.abs(after) > limit && Math.abs(after) > Math.abs(before);
+    }
+
+    private void unbook(Pair p, double signed) {
+        exposure[p.base] -= signed;
+        exposure[p.quote] += signed;
+        marginUsed = Math.max(0, marginUsed - Math.abs(signed) / leverage);
+    }
+
+    private Pair pair(String instrument) {
+        Pair p = pairs.get(instrument);
+        if (p != null) return p;
+        int sep = instrument.indexOf('_');
+        String base = sep > 0 ? instrument.substring(0, sep) : instrument;
+        String quote = sep > 0 ? instrument.substring(sep + 1) : ACCOUNT_CURRENCY;
+        p = new Pair(currency(base), currency(quote), ACCOUNT_CURRENCY.equals(base));
+        pairs.put(instrument, p);
+        return p;
+    }
+
+    private int currency(String code) {
+        Integer i = currencies.get(code);
+        if (i != null) return i;
+        int idx = currencies.size();
+        if (idx == exposure.length) exposure = Arrays.copyOf(exposure, idx * 2);
+        currencies.put(code, idx);
+        return idx;
+    }
+
+    // an instrument's open positions as a ring of signed notionals, oldest first
+    private static final class Pair {
+        final int base;
+        final int quote;
+        final boolean usdBase;
+        double[] open = new double[4];
+        int head;
+        int size;
+
+        Pair(int base, int quote, boolean usdBase) {
+            this.base = base;
+            this.quote = quote;
+            this.usdBase = usdBase;
+        }
+
+        void push(double signed) {
+            if (size == open.length) {
+                double[] grown = new double[size * 2];
+                for (int k = 0; k < size; k++) grown[k] = open[(head + k) % open.length];
+                open = grown;
+                head = 0;
+            }
+            open[(head + size) % open.length] = signed;
+            size++;
+        }
+
+        double pollOldest() {
+            double v = open[head];
+            head = (head + 1) % open.length;
+            size--;
+            return v;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.mar.forex.service;
+
+import static com.mar.forex.util.BacktestUtils.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import org.springframework.stereotype.Service;
+import org.tribuo.Example;
+import org.tribuo.Model;
+import org.tribuo.Prediction;
+import org.tribuo.classification.Label;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.Candle;
+import com.mar.forex.domain.model.MarketIndicators;
+import com.mar.forex.domain.model.SignalColumns;
+import com.mar.forex.domain.model.TrainResult;
+import com.mar.forex.util.TribuoUtil;
+
+/**
+ * Resolves the classifier and turns a candle series into {@link SignalColumns}.
+ *
+ * Everything here is per-instrument and side-effect free once the model is resolved, so callers may compute
+ * several instruments concurrently.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SignalService {
+    private static final Path MODEL_PATH = Path.of("models/model.zip");
+    private static final Path META_PATH = Path.of("models/model.meta.txt");
+
+    private final MLService mlService;
+    private final IndicatorCalculator indicatorCalculator;
+
+    /**
+     * Loads models/model.zip when its feature signature matches the job's config, otherwise trains on the
+     * given candles and saves the result. Synchronized so concurrent callers never train or write twice.
+     */
+    public synchronized Model<Label> resolveModel(AppProperties cfg, List<Candle> candles, String instrument) throws Exception {
+        int fast = cfg.getTrading().getFastSma();
+        int slow = cfg.getTrading().getSlowSma();
+        int atrP = cfg.getPaper().getAtrPeriod();
+        String featSig = featureSignature(cfg.getTrading().getMaType(), fast, slow, atrP);
+
+        String existingSig = readMeta(META_PATH);
+        if (Files.exists(MODEL_PATH) && existingSig != null && existingSig.equals(featSig)) {
+            Model<Label> model = mlService.load(MODEL_PATH);
+            log.info("Loaded model: {} (sig OK)", MODEL_PATH.toAbsolutePath());
+            return model;
+        } else if (Files.exists(MODEL_PATH)) {
+            log.info("Model present but signature changed. Old='{}' New='{}'. Retraining...", existingSig, featSig);
+        } else {
+            log.info("Model missing — training...");
+        }
+        TrainResult tr = mlService.trainClassifier(cfg, candles, instrument, fast, slow, atrP);
+        Model<Label> model = tr.getModel();
+        Files.createDirectories(MODEL_PATH.getParent());
+        mlService.save(model, MODEL_PATH);
+        writeMeta(META_PATH, featSig);
+        log.info("Trained & saved: {} (sig written)", MODEL_PATH.toAbsolutePath());
+        return model;
+    }
+
+    /**
+     * Identifies the model and calibration files a backtest would use right now (name, size, modification time), so
+     * results computed with a different model never count as identical inputs.
+     */
+    public String modelVersion() {
+        StringBuilder sb = new StringBuilder();
+        for (Path p : List.of(MODEL_PATH, META_PATH, Path.of("models/calibration.csv"),
+            Path.of("models/calibration.trade.csv"))) {
+            sb.append(p.getFileName()).append(':');
+            try {
+                if (Files.exists(p)) {
+                    sb.append(Files.size(p)).append('@').append(Files.getLastModifiedTime(p).toMillis());
+                } else {
+                    sb.append('-');
+                }
+            } catch (IOException e) {
+                sb.append('?');
+            }
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prefers the trade-regime calibration table, falls back to the probability table, or null for raw scores.
+     */
+    public double[][] loadCalibrationTable() {
+        double[][] calibTable = loadCalibration(Path.of("models/calibration.trade.csv"));
+        String calibName = "calibration.trade.csv";
+        if (calibTable == null) {
+            calibTable = loadCalibration(Path.of("models/calibration.csv"));
+            calibName = (calibTable == null) ? null : "calibration.csv";
+        }
+        if (calibTable == null) log.info("Calibration table not found; using raw probabilities.");
+        else log.info("Loaded calibration table ({}) with {} bins.", calibName, calibTable.length);
+        return calibTable;
+    }
+
+    /**
+     * Computes indicator columns and one prediction per bar after warmup.
+     */
+    public SignalColumns compute(AppProperties cfg, String instrument, List<Candle> candles, Model<Label> model,
+                                 double[][] calibTable) {
+        int n = candles.size();
+        Instant[] time = new Instant[n];
+        double[] open = new double[n], high = new double[n], low = new double[n], close = new double[n];
+        for (int i = 0; i < n; i++) {
+            Candle c = candles.get(i);
+            time[i] = c.time;
+            open[i] = c.open;
+            high[i] = c.high;
+            low[i] = c.low;
+            close[i] = c.close;
+        }
+
+        int fast = cfg.getTrading().getFastSma();
+        int slow = cfg.getTrading().getSlowSma();
+        int atrP = cfg.getPaper().getAtrPeriod();
+        String maType = cfg.getTrading().getMaType();
+
+        MarketIndicators ind = indicatorCalculator.compute(close, high, low, fast, slow, atrP, maType);
+        double[] maFast = ind.maFast(), maSlow = ind.maSlow(), rsi = ind.rsi(), atr = ind.atr();
+
+        int warmup = Math.max(Math.max(fast, slow), atrP) + 1;
+        double[] pWin = new double[n];
+        Arrays.fill(pWin, Double.NaN);
+        byte[] side = new byte[n];
+
+        for (int i = warmup; i < n; i++) {
+            Example<Label> ex = TribuoUtil.exampleFromArrays(i, close, maFast, maSlow, rsi, atr);
+            if (ex == null) continue;
+            Prediction<Label> pred = model.predict(ex);
+            boolean up = "UP".equals(pred.getOutput().getLabel());
+            side[i] = (byte) (up ? 1 : -1);
+            try {
+                double[] p = probabilities(pred);
+                if (p != null) pWin[i] = calibrate(up ? p[0] : p[1], calibTable);
+            } catch (Throwable ignored) {
+            }
+        }
+        return new SignalColumns(instrument, time, open, high, low, close, maFast, maSlow, rsi, atr, pWin, side, warmup);
+    }
+
+    /**
+     * Returns {pUp, pDown} from a prediction, using the scores directly when they already form a distribution and
+     * softmaxing raw or one-hot scores otherwise. Null when either label is missing.
+     */
+    public static double[] probabilities(Prediction<Label> pred) {
+        var scores = pred.getOutputScores();
+        Double vUp = null, vDown = null;
+        if (scores != null) {
+            for (var e : scores.entrySet()) {
+                String lab = e.getKey();
+                double val = e.getValue().getScore();
+                if ("UP".equals(lab)) vUp = val;
+                else if ("DOWN".equals(lab)) vDown = val;
+            }
+        }
+        if (vUp == null || vDown == null) return null;
+
+        boolean in01 = (vUp >= 0.0 && vUp <= 1.0 && vDown >= 0.0 && vDown <= 1.0);
+        boolean oneHot = in01 && (
+            (Math.abs(vUp - 1.0) < 1e-9 && Math.abs(vDown - 0.0) < 1e-9) ||
+                (Math.abs(vDown - 1.0) < 1e-9 && Math.abs(vUp - 0.0) < 1e-9)
+        );
+        boolean sumsToOne = in01 && Math.abs((vUp + vDown) - 1.0) < 1e-6;
+        if (in01 && sumsToOne && !oneHot) {
+            return new double[]{vUp, vDown};
+        }
+        double m = Math.max(vUp, vDown);
+        double eUp = Math.exp(vUp - m), eDn = Math.exp(vDown - m);
+        double z = eUp + eDn;
+        return new double[]{eUp / z, eDn / z};
+    }
+}
@@ -0,0 +1,335 @@
+package com.mar.forex.service;
+
+import static com.mar.forex.util.BacktestUtils.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import org.springframework.stereotype.Service;
+import org.tribuo.Model;
+import org.tribuo.classification.Label;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.Candle;
+import com.mar.forex.domain.model.SignalColumns;
+import com.mar.forex.domain.model.SweepGrid;
+import com.mar.forex.domain.model.SweepRow;
+import com.mar.forex.infrastructure.marketdata.IntrabarResolver;
+import com.mar.forex.util.BacktestUtils;
+import com.mar.forex.util.Indicators;
+
+/**
+ * Evaluates many Filter / signalThreshold combinations against one set of cached predictions.
+ *
+ * Predictions, indicator columns, per-bar trade outcomes and a bitmask per distinct volatility/session value are
+ * computed once. Each combination is then a single pass over those columns with a lightweight trade simulator,
+ * and combinations are evaluated in parallel.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SweepService {
+    private static final int MAX_COMBINATIONS = 200_000;
+    private static final int NEVER = Integer.MAX_VALUE;
+
+    private final SignalService signalService;
+    private final IntrabarFillService intrabarFillService;
+
+    public List<SweepRow> sweep(AppProperties cfg, List<Candle> candles, SweepGrid grid) throws Exception {
+        String instrument = cfg.getTrading().getInstrument();
+        var f = cfg.getFilter();
+
+        List<Double> evMargins = orDefault(grid.getEvMargin(), f.getEvMargin());
+        List<Double> evMarginRs = orDefault(grid.getEvMarginR(), f.getEvMarginR());
+        List<Integer> atrPcts = orDefault(grid.getAtrPercentile(), f.getAtrPercentile());
+        List<String> sessions = orDefault(grid.getSession(), f.getSession());
+        List<Integer> rsiLongs = orDefault(grid.getRsiLong(), f.getRsiLong());
+        List<Integer> rsiShorts = orDefault(grid.getRsiShort(), f.getRsiShort());
+        List<Boolean> onePerDays = orDefault(grid.getOnePerDay(), f.isOnePerDay());
+        Double cfgThr = cfg.getExecution().getSignalThreshold();
+        List<Double> thresholds = orDefault(grid.getSignalThreshold(), cfgThr != null ? cfgThr : 0.0);
+
+        int[] radix = {evMargins.size(), evMarginRs.size(), atrPcts.size(), sessions.size(),
+            rsiLongs.size(), rsiShorts.size(), onePerDays.size(), thresholds.size()};
+        long total = 1;
+        for (int r : radix) total *= r;
+        if (total > MAX_COMBINATIONS) {
+            throw new IllegalArgumentException("Sweep has " + total + " combinations; limit is " + MAX_COMBINATIONS);
+        }
+        final int combos = (int) total;
+
+        // ---- One-off precomputation ----
+        long t0 = System.nanoTime();
+        double[][] calibTable = signalService.loadCalibrationTable();
+        Model<Label> model = signalService.resolveModel(cfg, candles, instrument);
+        SignalColumns cols = signalService.compute(cfg, instrument, candles, model, calibTable);
+        Columns cc = precompute(cfg, cols, instrument, atrPcts, sessions);
+        long t1 = System.nanoTime();
+
+        double rr = cfg.getPaper().getRr();
+        int maxOpen = Math.max(1, cfg.getPaper().getMaxOpenPerInstrument());
+        int cooldownBars = barsPerDayFor(cfg.getTrading().getGranularity());
+
+        // ---- Parallel evaluation, one lightweight simulation per combination ----
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        JobContext job = JobContext.current();
+        List<SweepRow> rows;
+        try {
+            rows = pool.submit(() -> IntStream.range(0, combos).parallel().mapToObj(idx -> {
+                if (job != null) job.throwIfCancelled();
+                int[] d = decode(idx, radix);
+                double evMargin = evMargins.get(d[0]);
+                double evMarginR = evMarginRs.get(d[1]);
+                double sigThr = thresholds.get(d[7]);
+                double thr = Math.max(Math.min(1.0, (1.0 / (1.0 + rr)) + evMargin), Double.isFinite(sigThr) ? sigThr : 0.0);
+                Stats s = simulate(cc, rr, thr, evMarginR, cc.volMasks[d[2]], cc.sessionMasks[d[3]],
+                    rsiLongs.get(d[4]), rsiShorts.get(d[5]), onePerDays.get(d[6]), maxOpen, cooldownBars);
+                return new SweepRow(evMargin, evMarginR, atrPcts.get(d[2]), sessions.get(d[3]),
+                    rsiLongs.get(d[4]), rsiShorts.get(d[5]), onePerDays.get(d[6]), sigThr,
+                    s.trades, s.trades == 0 ? 0.0 : 100.0 * s.wins / s.trades, s.totalR,
+                    s.profitFactor(), s.maxDD);
+            }).toList()).get();
+        } finally {
+            pool.shutdown();
+        }
+        long t2 = System.nanoTime();
+
+        Comparator<SweepRow> order = switch (grid.getRankBy() == null ? "totalR" : grid.getRankBy()) {
+            case "profitFactor" -> Comparator.comparingDouble(SweepRow::profitFactor).reversed();
+            case "winRate" -> Comparator.comparingDouble(SweepRow::winRate).reversed();
+            case "maxDrawdownR" -> Comparator.comparingDouble(SweepRow::maxDrawdownR);
+            default -> Comparator.comparingDouble(SweepRow::totalR).reversed();
+        };
+        List<SweepRow> ranked = new ArrayList<>(rows);
+        ranked.sort(order.thenComparing(Comparator.comparingInt(SweepRow::trades).reversed()));
+
+        log.info("SWEEP | {} combinations over {} bars | precompute={}ms eval={}ms",
+            total, cols.size(), (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000);
+        int top = grid.getTop() > 0 ? Math.min(grid.getTop(), ranked.size()) : ranked.size();
+        return ranked.subList(0, top);
+    }
+
+    // ------------------------- Precomputed columns -------------------------
+
+    /**
+     * Everything a combination needs, shared read-only across worker threads.
+     */
+    private static final class Columns {
+        int warmup, n;
+        byte[] side;
+        double[] pWin, rsi;
+        int[] day;
+        int[] exitIdx;       // bar on which the trade opened at i settles, NEVER if it does not
+        double[] outcomeR;   // R of that trade, NaN when the stop distance is zero
+        long[] maAligned;    // MA alignment for the predicted side (0.5% tolerance)
+        long[][] volMasks;   // per atrPercentile value: ATR above the trailing-percentile floor
+        long[][] sessionMasks; // per session value: bar inside the session
+    }
+
+    private Columns precompute(AppProperties cfg, SignalColumns c, String instrument, List<Integer> atrPcts,
+                               List<String> sessions) {
+        int n = c.size();
+        Columns cc = new Columns();
+        cc.n = n;
+        cc.warmup = c.warmup();
+        cc.side = c.side();
+        cc.pWin = c.pWin();
+        cc.rsi = c.rsi();
+        cc.day = new int[n];
+        int[] hour = new int[n];
+        for (int i = 0; i < n; i++) {
+            var u = c.time()[i].atZone(ZoneOffset.UTC);
+            cc.day[i] = u.getYear() * 10000 + u.getMonthValue() * 100 + u.getDayOfMonth();
+            hour[i] = u.getHour();
+        }
+
+        cc.maAligned = new long[words(n)];
+        for (int i = 0; i < n; i++) {
+            double maTol = Math.abs(c.maSlow()[i]) * 0.005;
+            boolean aligned = (c.side()[i] > 0)
+                ? (c.maFast()[i] > c.maSlow()[i] - maTol)
+                : (c.maFast()[i] < c.maSlow()[i] + maTol);
+            if (aligned) set(cc.maAligned, i);
+        }
+
+        int volWin = cfg.getFilter().getAtrWindow();
+        cc.volMasks = atrPcts.parallelStream().map(pct -> {
+            long[] mask = new long[words(n)];
+            double[] atr = c.atr();
+            for (int i = 0; i < n; i++) {
+                boolean ok = true;
+                if ((i - 1) >= 0 && (i - 1) >= volWin - 1) {
+                    double pXX = percentileOfWindow(atr, i - 1, volWin, pct);
+                    if (Double.isFinite(pXX) && atr[i] < pXX * 0.95) ok = false;
+                }
+                if (ok) set(mask, i);
+            }
+            return mask;
+        }).toArray(long[][]::new);
+
+        cc.sessionMasks = new long[sessions.size()][];
+        for (int s = 0; s < sessions.size(); s++) {
+            int[] sess = parseSessionHoursUtc(sessions.get(s));
+            long[] mask = new long[words(n)];
+            for (int i = 0; i < n; i++) {
+                if (hour[i] >= sess[0] && hour[i] < sess[1]) set(mask, i);
+            }
+            cc.sessionMasks[s] = mask;
+        }
+
+        // Trade outcome per bar, first-touch with stop first, settling from the entry bar like PaperTradeEngine
+        cc.exitIdx = new int[n];
+        cc.outcomeR = new double[n];
+        var paper = cfg.getPaper();
+        double rr = paper.getRr();
+        boolean atrMode = "ATR".equalsIgnoreCase(paper.getMode());
+        double pipsDist = paper.getPips() * Indicators.pipSize(instrument);
+        IntrabarResolver resolver = intrabarFillService.forGranularity(cfg.getTrading().getGranularity());
+        IntStream.range(0, n).parallel().forEach(i -> {
+            cc.exitIdx[i] = NEVER;
+            if (c.side()[i] == 0) return;
+            double entry = c.close()[i];
+            double risk = atrMode ? c.atr()[i] * paper.getRisk() : pipsDist;
+            boolean buy = c.side()[i] > 0;
+            double stop = buy ? entry - risk : entry + risk;
+            double take = buy ? entry + risk * rr : entry - risk * rr;
+            for (int j = i; j < n; j++) {
+                double hi = c.high()[j], lo = c.low()[j];
+                boolean sl = buy ? lo <= stop : hi >= stop;
+                boolean tp = buy ? hi >= take : lo <= take;
+                if (sl && tp && resolver != null
+                    && resolver.firstTouch(instrument, c.time()[j], buy, stop, take) == IntrabarResolver.Touch.TAKE) {
+                    sl = false;
+                }
+                if (sl || tp) {
+                    double exit = sl ? stop : take;
+                    cc.exitIdx[i] = j;
+                    cc.outcomeR[i] = risk == 0 ? Double.NaN : (buy ? (exit - entry) / risk : (entry - exit) / risk);
+                    return;
+                }
+            }
+        });
+        return cc;
+    }
+
+    // ------------------------- Lightweight simulator -------------------------
+
+    private static final class Stats {
+        int trades, wins;
+        double totalR, gross, loss, peak, maxDD;
+
+        void add(double r) {
+            if (Double.isNaN(r)) return;
+            trades++;
+            if (r > 0) { wins++; gross += r; } else { loss += r; }
+            totalR += r;
+            if (totalR > peak) peak = totalR;
+            maxDD = Math.max(maxDD, peak - totalR);
+        }
+
+        double profitFactor() {
+            return BacktestUtils.profitFactor(gross, loss);
+        }
+    }
+
+    private static Stats simulate(Columns c, double rr, double thr, double marginR, long[] volOk, long[] inSession,
+                                  int rsiLong, int rsiShort, boolean onePerDay, int maxOpen, int cooldownBars) {
+        Stats s = new Stats();
+        int[] slotExit = new int[maxOpen];
+        int[] slotDay = new int[maxOpen];
+        double[] slotR = new double[maxOpen];
+        int open = 0;
+        int curDay = -1, closedToday = 0;
+        int lastOpenIndex = -cooldownBars;
+
+        for (int i = c.warmup; i < c.n; i++) {
+            int side = c.side[i];
+            if (side == 0) continue;
+
+            double p = c.pWin[i];
+            if (!Double.isNaN(p)) {
+                if (p * rr - (1.0 - p) < marginR || p < thr) continue;
+            }
+            if (!get(volOk, i)) continue;
+            double pBoost = Double.isNaN(p) ? 0.0 : (p - thr);
+            if (!get(inSession, i) && !(pBoost >= 0.005)) continue;
+            boolean maAligned = get(c.maAligned, i);
+            boolean rsiRegime = side > 0 ? c.rsi[i] > rsiLong : c.rsi[i] < rsiShort;
+            boolean trendOk = maAligned && rsiRegime;
+            if (!trendOk && pBoost >= 0.005) trendOk = maAligned || rsiRegime;
+            if (!trendOk) continue;
+
+            // Settle slots that closed before this bar, in exit order
+            if (c.day[i] != curDay) {
+                curDay = c.day[i];
+                closedToday = 0;
+            }
+            while (true) {
+                int k = -1;
+                for (int q = 0; q < open; q++) {
+                    if (slotExit[q] < i && (k < 0 || slotExit[q] < slotExit[k])) k = q;
+                }
+                if (k < 0) break;
+                s.add(slotR[k]);
+                if (slotDay[k] == curDay) closedToday++;
+                open--;
+                slotExit[k] = slotExit[open];
+                slotDay[k] = slotDay[open];
+                slotR[k] = slotR[open];
+            }
+
+            boolean windowOk = onePerDay ? (closedToday < 2) : ((i - lastOpenIndex) >= cooldownBars);
+            if (open < maxOpen && windowOk) {
+                slotExit[open] = c.exitIdx[i];
+                slotDay[open] = c.day[i];
+                slotR[open] = c.outcomeR[i];
+                open++;
+                lastOpenIndex = i;
+            }
+        }
+
+        // Trades that settled after the last entry check
+        for (int pass = 0; pass < open; pass++) {
+            int k = -1;
+            for (int q = 0; q < open; q++) {
+                if (slotExit[q] != NEVER && slotExit[q] >= 0 && (k < 0 || slotExit[q] < slotExit[k])) k = q;
+            }
+            if (k < 0) break;
+            s.add(slotR[k]);
+            slotExit[k] = -1;
+        }
+        return s;
+    }
+
+    // ------------------------- Helpers -------------------------
+
+    private static <T> List<T> orDefault(List<T> values, T fallback) {
+        if (values == null || values.isEmpty()) return List.of(fallback);
+        return List.copyOf(new LinkedHashSet<>(values));
+    }
+
+    private static int[] decode(int idx, int[] radix) {
+        int[] d = new int[radix.length];
+        for (int k = radix.length - 1; k >= 0; k--) {
+            d[k] = idx % radix[k];
+            idx /= radix[k];
+        }
+        return d;
+    }
+
+    private static int words(int n) {
+        return (n + 63) >>> 6;
+    }
+
+    private static void set(long[] mask, int i) {
+        mask[i >>> 6] |= 1L << i;
+    }
+
+    private static boolean get(long[] mask, int i) {
+        return (mask[i >>> 6] & (1L << i)) != 0;
+    }
+}
@@ -10,6 +10,7 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import com.mar.forex.domain.model.PaperTrade;
 
 @UtilityClass
@@ -55,7 +56,12 @@ public class BacktestUtils {
             if (x > 0) g += x;
             else l += x;
         }
-        return l == 0 ? (g == 0 ? 0 : Double.POSITIVE_INFINITY) : g / l;
+        return profitFactor(g, l);
+    }
+
+    /** Gross win over gross loss, from the sum of winning R and the (non-positive) sum of losing R. */
+    public double profitFactor(double gross, double loss) {
+        return loss == 0 ? (gross == 0 ? 0 : Double.POSITIVE_INFINITY) : gross / -loss;
     }
 
     public double maxDrawdownR(List<Double> r) {
@@ -68,12 +74,42 @@ public class BacktestUtils {
         return maxDD;
     }
 
+    /**
+     * USD value of one unit of the quote currency: 1 for xxx_USD, 1/price for USD_xxx, NaN for crosses, whose rate
+     * has to come from another pair.
+     */
+    public double quoteToUSD(String instrument, double price) {
+        if (instrument == null) return Double.NaN;
+        if (instrument.endsWith("_USD")) return 1.0;
+        if (instrument.startsWith("USD_")) return price > 0 ? 1.0 / price : Double.NaN;
+        return Double.NaN;
+    }
+
+    /**
+     * USD notional of a position: units * price is its value in the quote currency, converted with
+     * {@code quoteToUSD} (so USD_xxx gives units, xxx_USD units * price).
+     */
+    public double notionalUSD(double units, double price, double quoteToUSD) {
+        return units * price * quoteToUSD;
+    }
+
     public double sum(List<Double> xs) {
         double s = 0;
         for (double x : xs) s += x;
         return s;
     }
 
+    /**
+     * Puts a curve into a result payload, LTTB-downsampled to {@code points}: {@code key} holds the values and
+     * {@code key + "Index"} their positions in the full curve; {@code key + "Total"} is the full length.
+     */
+    public void putCurve(Map<String, Object> payload, String key, double[] full, int points) {
+        int[] idx = Lttb.select(full, points);
+        payload.put(key, Lttb.pick(full, idx));
+        payload.put(key + "Index", idx);
+        payload.put(key + "Total", full.length);
+    }
+
     public String format2(double v) {
         return String.format("%.2f", v);
     }
@@ -120,6 +156,33 @@ public class BacktestUtils {
         }
     }
 
+    /**
+     * Number of candles to request for `years` of history at a granularity, plus a warmup buffer.
+     */
+    public int candlesCountFromYears(int years, String granularity, int warmup) {
+        int perDay;
+        try {
+            if (granularity.startsWith("M")) {
+                int minutes = Integer.parseInt(granularity.substring(1));
+                perDay = (24 * 60) / Math.max(1, minutes);
+            } else if (granularity.startsWith("H")) {
+                int hours = Integer.parseInt(granularity.substring(1));
+                perDay = 24 / Math.max(1, hours);
+            } else if (granularity.equals("D")) {
+                perDay = 1;
+            } else {
+                // default assume M5
+                perDay = (24 * 60) / 5;
+            }
+        } catch (Exception e) {
+            // fallback to M5 if parsing fails
+            perDay = (24 * 60) / 5;
+        }
+        int base = years * 365 * perDay;
+        int buffer = Math.max(500, warmup * 5);
+        return base + buffer;
+    }
+
     /**
      * Bars/day approx for granularity.
      */
@@ -149,6 +212,26 @@ public class BacktestUtils {
         }
     }
 
+    /**
+     * Bar length in seconds for an OANDA granularity code (S5, M1, H4, D, ...); 0 if unknown.
+     */
+    public long granularitySeconds(String granularity) {
+        if (granularity == null || granularity.isBlank()) return 0;
+        String g = granularity.trim().toUpperCase();
+        try {
+            return switch (g.charAt(0)) {
+                case 'S' -> Long.parseLong(g.substring(1));
+                case 'M' -> 60L * Long.parseLong(g.substring(1));
+                case 'H' -> 3600L * Long.parseLong(g.substring(1));
+                case 'D' -> 86400L;
+                case 'W' -> 7 * 86400L;
+                default -> 0;
+            };
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     public int toUtcDayKey(Object time) {
         try {
             ZonedDateTime zdt;
@@ -0,0 +1,37 @@
+package com.mar.forex.util;
+
+import java.util.Arrays;
+
+/**
+ * Append-only series of primitive doubles, for per-trade curves that would otherwise box one Double per point.
+ */
+public final class DoubleSeries {
+    private double[] values;
+    private int size;
+
+    public DoubleSeries() {
+        this(256);
+    }
+
+    public DoubleSeries(int capacity) {
+        this.values = new double[Math.max(1, capacity)];
+    }
+
+    public void add(double v) {
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = v;
+    }
+
+    public double get(int i) {
+        if (i >= size) throw new IndexOutOfBoundsException(i);
+        return values[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,215 @@
+package com.mar.forex.util;
+
+import lombok.extern.slf4j.Slf4j;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A ring of pre-allocated events passed through a fixed chain of stages, each on its own thread, in the style of the
+ * LMAX Disruptor.
+ *
+ * Producers claim a sequence with {@link #next}, fill the event at {@link #get} in place and {@link #publish} it;
+ * any number of producers may publish without waiting for each other, since each slot records the lap it was last
+ * published in, and the first stage takes events in claim order up to the first one still being filled. Stage
+ * {@code k} handles every event after stage {@code k-1} has, in sequence order, and in batches when it falls behind; a
+ * producer waits when it would overwrite an event the last stage has not handled yet. Sequences are plain counters kept 128 bytes apart so stages
+ * do not contend for a cache line, and nothing on the way through allocates or locks.
+ *
+ * How an idle thread waits is the {@link WaitStrategy}: BUSY_SPIN burns a core per stage for the lowest latency,
+ * YIELD spins briefly then yields, PARK spins and yields briefly then parks for {@value #PARK_NANOS} ns at a time.
+ *
+ * A handler's exception is logged and counted, and the event still moves on to the next stage.
+ */
+@Slf4j
+public final class EventRing<E> {
+    public enum WaitStrategy { BUSY_SPIN, YIELD, PARK }
+
+    public interface Handler<E> {
+        void onEvent(E event) throws Exception;
+    }
+
+    private static final int PAD = 16;              // longs per sequence: 128 bytes
+    private static final int CLAIMED = 0;
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final String name;
+    private final Object[] events;
+    private final int mask;
+    private final int shift;
+    private final AtomicIntegerArray published;    // per slot, the lap it was last published in
+    private final WaitStrategy wait;
+    private final List<Handler<E>> handlers;
+    private final AtomicLongArray seqs;
+    private final AtomicLong errors = new AtomicLong();
+    private final Thread[] threads;
+
+    private volatile boolean running;
+    private volatile boolean stopping;
+    private volatile int stagesDone;
+
+    /**
+     * @param size rounded up to a power of two
+     */
+    public EventRing(String name, int size, Supplier<E> factory, WaitStrategy wait, List<Handler<E>> handlers) {
+        if (handlers.isEmpty()) throw new IllegalArgumentException("No stages");
+        int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+        this.name = name;
+        this.events = new Object[capacity];
+        for (int i = 0; i < capacity; i++) events[i] = factory.get();
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfTrailingZeros(capacity);
+        this.published = new AtomicIntegerArray(capacity);
+        this.wait = wait;
+        this.handlers = List.copyOf(handlers);
+        this.seqs = new AtomicLongArray((1 + handlers.size()) * PAD);
+        this.threads = new Thread[handlers.size()];
+    }
+
+    public synchronized void start() {
+        if (running) throw new IllegalStateException(name + " already running");
+        stopping = false;
+        stagesDone = 0;
+        for (int i = 0; i < 1 + handlers.size(); i++) seqs.set(i * PAD, -1);
+        for (int i = 0; i < published.length(); i++) published.set(i, -1);
+        running = true;
+        for (int k = 0; k < threads.length; k++) {
+            int stage = k;
+            threads[k] = new Thread(() -> run(stage), name + "-" + k);
+            threads[k].setDaemon(true);
+            threads[k].start();
+        }
+    }
+
+    /**
+     * Lets the stages finish what was published and waits up to {@code timeoutMs} for them. Producers must have
+     * stopped publishing; a producer still waiting for a slot gets an {@link IllegalStateException}.
+     */
+    public synchronized void stop(long timeoutMs) throws InterruptedException {
+        if (!running) return;
+        stopping = true;
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (Thread t : threads) {
+            LockSupport.unpark(t);
+            t.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Claims the next sequence, waiting while the ring is full.
+     *
+     * @throws IllegalStateException when the ring is not running
+     */
+    public long next() {
+        if (!running || stopping) throw new IllegalStateException(name + " not running");
+        long seq = seqs.getAndIncrement(CLAIMED * PAD) + 1;
+        long wrap = seq - events.length;
+        int idle = 0;
+        while (seqs.get(stageIndex(handlers.size() - 1)) < wrap) {
+            if (stopping) throw new IllegalStateException(name + " stopped");
+            idle = idle(idle);
+        }
+        return seq;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long seq) {
+        return (E) events[(int) seq & mask];
+    }
+
+    /**
+     * Makes the claimed event visible to the first stage, which takes it once every earlier claim is published.
+     */
+    public void publish(long seq) {
+        published.set((int) seq & mask, (int) (seq >>> shift));
+    }
+
+    public int capacity() {
+        return events.length;
+    }
+
+    /**
+     * Events claimed but not yet through the last stage.
+     */
+    public long backlog() {
+        return seqs.get(CLAIMED * PAD) - seqs.get(stageIndex(handlers.size() - 1));
+    }
+
+    /**
+     * Events the stage has handled since the start.
+     */
+    public long handled(int stage) {
+        return seqs.get(stageIndex(stage)) + 1;
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    private void run(int stage) {
+        Handler<E> handler = handlers.get(stage);
+        int own = stageIndex(stage);
+        long next = seqs.get(own) + 1;
+        int idle = 0;
+        while (true) {
+            // read before the sequence: an upstream that is done has published its last one first
+            boolean upstreamDone = stage == 0 ? stopping : stagesDone >= stage;
+            long available = stage == 0 ? highestPublished(next) : seqs.get(stageIndex(stage - 1));
+            if (available >= next) {
+                for (; next <= available; next++) {
+                    try {
+                        handler.onEvent(get(next));
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                        log.warn("{} stage {} failed: {}", name, stage, e.toString());
+                    }
+                }
+                seqs.set(own, available);
+                idle = 0;
+            } else if (upstreamDone) {
+                break;
+            } else {
+                idle = idle(idle);
+            }
+        }
+        stagesDone = stage + 1;
+    }
+
+    // the end of the run of published events starting at next
+    private long highestPublished(long next) {
+        long claimed = seqs.get(CLAIMED * PAD);
+        for (long seq = next; seq <= claimed; seq++) {
+            if (published.get((int) seq & mask) != (int) (seq >>> shift)) return seq - 1;
+        }
+        return claimed;
+    }
+
+    private int idle(int count) {
+        switch (wait) {
+            case BUSY_SPIN -> Thread.onSpinWait();
+            case YIELD -> {
+                if (count < SPINS) Thread.onSpinWait();
+                else Thread.yield();
+            }
+            case PARK -> {
+                if (count < SPINS) Thread.onSpinWait();
+                else if (count < 2 * SPINS) Thread.yield();
+                else LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        return count == Integer.MAX_VALUE ? count : count + 1;
+    }
+
+    private static int stageIndex(int stage) {
+        return (1 + stage) * PAD;
+    }
+}
@@ -0,0 +1,92 @@
+package com.mar.forex.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram over nanoseconds with log-linear buckets: values below 32 ns are exact, larger ones fall
+ * into 16 buckets per power of two, so any percentile is within ~6% of the true value from nanoseconds to hours.
+ * Recording is a handful of atomic updates and never allocates, so it can sit on hot paths; readers
+ * see a consistent-enough view without stopping writers.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int EXACT = 1 << SUB_BITS;       // 32 exact buckets
+    private static final int HALF = EXACT >>> 1;          // 16 buckets per power of two above them
+    private static final int BUCKETS = EXACT + (63 - SUB_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts.incrementAndGet(index(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public double meanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / (double) n / 1e6;
+    }
+
+    public double maxMillis() {
+        return max.get() / 1e6;
+    }
+
+    /**
+     * The value at quantile {@code q} (0..1) in milliseconds: the upper bound of the bucket holding that rank, capped
+     * at the observed maximum. 0 when empty.
+     */
+    public double percentileMillis(double q) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), max.get()) / 1e6;
+        }
+        return max.get() / 1e6;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * One-line summary: count, mean, p50, p99, p999 and max in milliseconds.
+     */
+    public String summary() {
+        return String.format("n=%d mean=%.3fms p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms", count(), meanMillis(),
+            percentileMillis(0.5), percentileMillis(0.99), percentileMillis(0.999), maxMillis());
+    }
+
+    static int index(long v) {
+        if (v < EXACT) return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - (SUB_BITS - 1);
+        int mantissa = (int) (v >>> shift);                // in [HALF, EXACT)
+        return EXACT + (shift - 1) * HALF + (mantissa - HALF);
+    }
+
+    static long upperBound(int index) {
+        if (index < EXACT) return index;
+        int shift = (index - EXACT) / HALF + 1;
+        long mantissa = HALF + (index - EXACT) % HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
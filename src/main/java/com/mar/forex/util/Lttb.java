@@ -0,0 +1,67 @@
+package com.mar.forex.util;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a series sampled at x = 0..n-1.
+ *
+ * Keeps the first and last point and, from each of the {@code points - 2} equal buckets in between, the point that
+ * forms the largest triangle with the previously kept point and the average of the next bucket. Peaks and troughs
+ * of an equity curve survive, which plain striding would drop.
+ */
+public final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * Indices of the kept points, ascending. Returns every index when the series already has at most
+     * {@code points} points or {@code points < 3}.
+     */
+    public static int[] select(double[] y, int points) {
+        int n = y.length;
+        if (points < 3 || points >= n) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) all[i] = i;
+            return all;
+        }
+        int[] out = new int[points];
+        double every = (double) (n - 2) / (points - 2);
+        int a = 0;
+        out[0] = 0;
+        for (int b = 0; b < points - 2; b++) {
+            // average of the next bucket (the last point when this is the final bucket)
+            int avgStart = (int) Math.floor((b + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((b + 2) * every) + 1, n);
+            double avgX = 0, avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += j;
+                avgY += y[j];
+            }
+            int len = avgEnd - avgStart;
+            avgX /= len;
+            avgY /= len;
+
+            int from = (int) Math.floor(b * every) + 1;
+            int to = (int) Math.floor((b + 1) * every) + 1;
+            double ay = y[a];
+            double maxArea = -1;
+            int next = from;
+            for (int j = from; j < to; j++) {
+                double area = Math.abs((a - avgX) * (y[j] - ay) - (a - j) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            out[b + 1] = next;
+            a = next;
+        }
+        out[points - 1] = n - 1;
+        return out;
+    }
+
+    public static double[] pick(double[] y, int[] idx) {
+        double[] out = new double[idx.length];
+        for (int i = 0; i < idx.length; i++) out[i] = y[idx[i]];
+        return out;
+    }
+}
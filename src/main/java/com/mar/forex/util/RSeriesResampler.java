@@ -0,0 +1,170 @@
+package com.mar.forex.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import com.mar.forex.domain.model.Resampling;
+import com.mar.forex.domain.model.ResamplingReport;
+
+/**
+ * Monte Carlo analysis of a trade R-series: i.i.d. bootstrap, permutation (order shuffle) or circular block
+ * bootstrap.
+ *
+ * Simulations are split into a fixed number of chunks, each driven by its own {@link SplittableRandom} split from the
+ * seed in chunk order, so results depend only on the seed and never on how many threads ran the chunks.
+ */
+public class RSeriesResampler {
+
+    public enum Method { BOOTSTRAP, PERMUTATION, BLOCK }
+
+    private static final int CHUNKS = 64;
+    private static final int DD_BINS = 20;
+
+    public static ResamplingReport analyze(double[] r, Method method, int simulations, int blockLength,
+                                           double confidence, long seed) {
+        int n = r.length;
+        int sims = Math.max(1, simulations);
+        double[] totals = new double[sims];
+        double[] pfs = new double[sims];
+        double[] dds = new double[sims];
+
+        if (n > 0) {
+            int block = blockLength > 0 ? Math.min(blockLength, n) : Math.max(1, (int) Math.round(Math.sqrt(n)));
+            SplittableRandom root = new SplittableRandom(seed);
+            SplittableRandom[] rngs = new SplittableRandom[CHUNKS];
+            for (int c = 0; c < CHUNKS; c++) rngs[c] = root.split();
+
+            IntStream.range(0, CHUNKS).parallel().forEach(c -> {
+                int from = (int) ((long) sims * c / CHUNKS);
+                int to = (int) ((long) sims * (c + 1) / CHUNKS);
+                SplittableRandom rng = rngs[c];
+                double[] scratch = (method == Method.PERMUTATION) ? r.clone() : null;
+                double[] out = new double[3];
+                for (int s = from; s < to; s++) {
+                    switch (method) {
+                        case PERMUTATION -> permutation(scratch, rng, out);
+                        case BLOCK -> block(r, block, rng, out);
+                        default -> bootstrap(r, rng, out);
+                    }
+                    totals[s] = out[0];
+                    pfs[s] = out[1];
+                    dds[s] = out[2];
+                }
+            });
+        }
+
+        long losses = 0;
+        for (double t : totals) if (t < 0) losses++;
+
+        Arrays.sort(totals);
+        Arrays.sort(pfs);
+        Arrays.sort(dds);
+        double alpha = (1.0 - Math.min(0.9999, Math.max(0.0, confidence))) / 2.0;
+
+        double maxDd = dds[sims - 1];
+        double[] edges = new double[DD_BINS + 1];
+        int[] counts = new int[DD_BINS];
+        double width = maxDd > 0 ? maxDd / DD_BINS : 1.0;
+        for (int b = 0; b <= DD_BINS; b++) edges[b] = b * width;
+        for (double d : dds) counts[Math.min(DD_BINS - 1, (int) (d / width))]++;
+
+        return new ResamplingReport(method.name(), sims, n, confidence, seed,
+            interval(totals, alpha), interval(pfs, alpha), interval(dds, alpha),
+            (double) losses / sims, edges, counts);
+    }
+
+    public static ResamplingReport analyze(List<Double> r, Method method, int simulations, int blockLength,
+                                           double confidence, long seed) {
+        double[] xs = new double[r.size()];
+        for (int i = 0; i < xs.length; i++) xs[i] = r.get(i);
+        return analyze(xs, method, simulations, blockLength, confidence, seed);
+    }
+
+    /**
+     * Runs the configured analysis, or returns null when resampling is disabled.
+     */
+    public static ResamplingReport analyze(List<Double> r, Resampling cfg) {
+        if (cfg == null || !cfg.isEnabled()) return null;
+        return analyze(r, Method.valueOf(cfg.getMethod()), cfg.getSimulations(), cfg.getBlockLength(),
+            cfg.getConfidence(), cfg.getSeed());
+    }
+
+    // ---- one simulated path each; out = {totalR, profitFactor, maxDrawdownR} ----
+
+    private static void bootstrap(double[] r, SplittableRandom rng, double[] out) {
+        int n = r.length;
+        double equity = 0, peak = 0, maxDD = 0, gross = 0, loss = 0;
+        for (int k = 0; k < n; k++) {
+            double x = r[rng.nextInt(n)];
+            if (x > 0) gross += x; else loss -= x;
+            equity += x;
+            if (equity > peak) peak = equity;
+            if (peak - equity > maxDD) maxDD = peak - equity;
+        }
+        finish(equity, gross, loss, maxDD, out);
+    }
+
+    private static void permutation(double[] scratch, SplittableRandom rng, double[] out) {
+        int n = scratch.length;
+        for (int k = n - 1; k > 0; k--) {
+            int j = rng.nextInt(k + 1);
+            double tmp = scratch[k];
+            scratch[k] = scratch[j];
+            scratch[j] = tmp;
+        }
+        double equity = 0, peak = 0, maxDD = 0, gross = 0, loss = 0;
+        for (double x : scratch) {
+            if (x > 0) gross += x; else loss -= x;
+            equity += x;
+            if (equity > peak) peak = equity;
+            if (peak - equity > maxDD) maxDD = peak - equity;
+        }
+        finish(equity, gross, loss, maxDD, out);
+    }
+
+    private static void block(double[] r, int block, SplittableRandom rng, double[] out) {
+        int n = r.length;
+        double equity = 0, peak = 0, maxDD = 0, gross = 0, loss = 0;
+        int drawn = 0;
+        while (drawn < n) {
+            int start = rng.nextInt(n);
+            for (int k = 0; k < block && drawn < n; k++, drawn++) {
+                double x = r[(start + k) % n];
+                if (x > 0) gross += x; else loss -= x;
+                equity += x;
+                if (equity > peak) peak = equity;
+                if (peak - equity > maxDD) maxDD = peak - equity;
+            }
+        }
+        finish(equity, gross, loss, maxDD, out);
+    }
+
+    private static void finish(double equity, double gross, double loss, double maxDD, double[] out) {
+        out[0] = equity;
+        out[1] = loss == 0 ? (gross == 0 ? 0 : Double.POSITIVE_INFINITY) : gross / loss;
+        out[2] = maxDD;
+    }
+
+    private static ResamplingReport.Interval interval(double[] sorted, double alpha) {
+        double sum = 0;
+        int finite = 0;
+        for (double v : sorted) {
+            if (Double.isFinite(v)) { sum += v; finite++; }
+        }
+        return new ResamplingReport.Interval(
+            quantile(sorted, alpha),
+            quantile(sorted, 0.5),
+            quantile(sorted, 1.0 - alpha),
+            finite == 0 ? Double.NaN : sum / finite);
+    }
+
+    private static double quantile(double[] sorted, double q) {
+        if (sorted.length == 1) return sorted[0];
+        double rank = q * (sorted.length - 1);
+        int lo = (int) Math.floor(rank), hi = (int) Math.ceil(rank);
+        if (lo == hi || sorted[lo] == sorted[hi]) return sorted[lo];
+        double w = rank - lo;
+        return sorted[lo] * (1.0 - w) + sorted[hi] * w;
+    }
+}
@@ -0,0 +1,63 @@
+package com.mar.forex.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares executors on blocking, I/O-shaped work: each task parks for {@code latencyMs}, the way a thread waits on
+ * an HTTP response or a slow SSE client. Reports wall time, throughput and the peak number of platform threads.
+ */
+public final class ThreadModeBenchmark {
+
+    public record Result(String mode, int tasks, long latencyMs, long wallMs, double tasksPerSecond,
+                         int peakPlatformThreads) {
+    }
+
+    private ThreadModeBenchmark() {
+    }
+
+    /**
+     * Runs the same workload on a fixed platform pool, a thread-per-task platform executor and virtual threads.
+     */
+    public static List<Result> compare(int tasks, long latencyMs, int platformPoolSize) throws InterruptedException {
+        return List.of(
+            run("platform-pool-" + platformPoolSize, Executors.newFixedThreadPool(platformPoolSize), tasks, latencyMs),
+            run("platform-per-task", Executors.newCachedThreadPool(), tasks, latencyMs),
+            run("virtual", Executors.newVirtualThreadPerTaskExecutor(), tasks, latencyMs)
+        );
+    }
+
+    public static Result run(String mode, ExecutorService executor, int tasks, long latencyMs)
+            throws InterruptedException {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        try {
+            mx.resetPeakThreadCount();
+            CountDownLatch done = new CountDownLatch(tasks);
+            long t0 = System.nanoTime();
+            for (int i = 0; i < tasks; i++) {
+                executor.execute(() -> {
+                    try {
+                        Thread.sleep(latencyMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+            long wallMs = (System.nanoTime() - t0) / 1_000_000;
+            double tps = wallMs == 0 ? tasks : tasks * 1000.0 / wallMs;
+            return new Result(mode, tasks, latencyMs, wallMs, tps, mx.getPeakThreadCount());
+        } finally {
+            // let idle workers exit so they don't count toward the next mode's peak
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
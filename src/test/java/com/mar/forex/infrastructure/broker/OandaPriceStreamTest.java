@@ -0,0 +1,117 @@
+package com.mar.forex.infrastructure.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import okhttp3.OkHttpClient;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.domain.model.PriceTick;
+
+/**
+ * {@link OandaPriceStream} against the {@link OandaStandIn}'s pricing stream: reconnects after a dropped or silent
+ * connection, heartbeats, unparseable lines, and per-instrument tick order across reconnects.
+ */
+class OandaPriceStreamTest {
+    private static final List<String> INSTRUMENTS = List.of("EUR_USD", "GBP_USD", "USD_JPY");
+
+    private OandaStandIn standIn;
+    private OandaPriceStream stream;
+    private final AtomicLong received = new AtomicLong();
+    private final List<String> outOfOrder = new CopyOnWriteArrayList<>();
+    private final Map<String, Instant> last = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        standIn = OandaStandIn.start(0);
+        AppProperties props = new AppProperties();
+        props.getOanda().setUrl(standIn.baseUrl());
+        props.getOanda().setStreamUrl(standIn.baseUrl());
+        props.getOanda().setApiKey("test");
+        props.getOanda().setAccountId("test");
+        props.getOanda().setStreamTimeoutSeconds(1);
+        stream = new OandaPriceStream(new OkHttpClient(), props);
+        stream.subscribe(this::onTick);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stream.stop();
+        standIn.close();
+    }
+
+    @Test
+    void reconnectsAfterDropsWithoutReplayingTicks() throws Exception {
+        standIn.tickRate(2000).dropStreamsAfter(1);
+        stream.start(INSTRUMENTS);
+        await(() -> stream.stats().reconnects() >= 3, 15_000);
+        long before = received.get();
+        await(() -> received.get() > before + 1000, 5_000);
+        stream.stop();
+
+        var stats = stream.stats();
+        assertTrue(stats.replayedDropped() > 0, "the snapshot replayed on reconnect is dropped");
+        assertEquals(stats.ticks(), received.get());
+        assertEquals(0, stats.parseErrors());
+        assertTrue(outOfOrder.isEmpty(), () -> "ticks out of order: " + outOfOrder);
+    }
+
+    @Test
+    void silentConnectionTripsTheHeartbeatWatchdog() throws Exception {
+        standIn.tickRate(200).stallStreamsAfter(1);
+        stream.start(INSTRUMENTS);
+        await(() -> stream.stats().reconnects() >= 2, 15_000);
+        stream.stop();
+
+        // every connection is fresh for one second and then silent past the one-second read timeout
+        assertTrue(received.get() > 200, "ticks flow again after each reconnect");
+        assertTrue(outOfOrder.isEmpty(), () -> "ticks out of order: " + outOfOrder);
+    }
+
+    @Test
+    void countsHeartbeats() throws Exception {
+        standIn.tickRate(10).heartbeatMillis(100);
+        stream.start(INSTRUMENTS);
+        await(() -> stream.stats().heartbeats() >= 5, 5_000);
+        stream.stop();
+
+        assertEquals(0, stream.stats().reconnects());
+        assertEquals(0, stream.stats().parseErrors());
+    }
+
+    @Test
+    void skipsUnparseableLinesWithoutReconnecting() throws Exception {
+        standIn.tickRate(1000).garbageEvery(50);
+        stream.start(INSTRUMENTS);
+        await(() -> stream.stats().parseErrors() >= 10, 5_000);
+        stream.stop();
+
+        var stats = stream.stats();
+        assertTrue(stats.parseErrors() <= standIn.garbageLines());
+        assertTrue(stats.ticks() >= 49 * stats.parseErrors(), "the lines around a bad one still arrive");
+        assertEquals(0, stats.reconnects());
+        assertTrue(outOfOrder.isEmpty(), () -> "ticks out of order: " + outOfOrder);
+    }
+
+    private void onTick(PriceTick t) {
+        received.incrementAndGet();
+        Instant prev = last.put(t.instrument(), t.time());
+        if (prev != null && t.time().isBefore(prev)) outOfOrder.add(t.instrument() + " " + t.time() + " < " + prev);
+    }
+
+    private static void await(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("timed out after " + timeoutMs + " ms");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,644 @@
+package com.mar.forex.infrastructure.broker;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mar.forex.util.BacktestUtils;
+
+/**
+ * A local stand-in for the OANDA v3 REST API, for exercising the live loop without a broker account.
+ *
+ * Serves {@code GET /v3/instruments/{instrument}/candles} ({@code count}, {@code from}, {@code to}) from a synthetic
+ * price path aligned to the wall clock: bar {@code t} of an instrument is a deterministic function of the instrument
+ * and {@code t}, so repeated and overlapping pulls agree, and the bar in progress is returned with
+ * {@code complete=false} exactly like the real API.
+ *
+ * Also serves {@code GET /v3/accounts/{id}/pricing} (one batched quote per instrument) and
+ * {@code GET /v3/accounts/{id}/pricing/stream}: a chunked newline-delimited feed of PRICE lines at
+ * {@link #tickRate} ticks per second (round-robin over the requested instruments, starting with one snapshot per
+ * instrument as OANDA does: the last price sent for it, if any, again) and a HEARTBEAT every 5 s. To exercise the
+ * client, {@link #dropStreamsAfter} cuts each stream after a number of seconds, {@link #stallStreamsAfter} leaves it
+ * open but silent, {@link #garbageEvery} mixes in unparseable lines and {@link #heartbeatMillis} shortens the
+ * heartbeat.
+ *
+ * As a broker it accepts FOK market orders ({@code POST /v3/accounts/{id}/orders}), filling them at the synthetic
+ * price and refusing a reused clientExtensions id with CLIENT_ORDER_ID_ALREADY_EXISTS like OANDA, and answers
+ * {@code GET .../orders/@{clientId}} and {@code GET .../transactions/{id}}. {@link #orderFaults} injects latency,
+ * 503s before an order is recorded, lost acknowledgements (the order is placed but the connection closes without a
+ * reply) and broker cancels, so idempotent retries can be checked against {@link #ordersPlaced()}.
+ *
+ * Fills are netted into per-instrument positions on a {@value #START_BALANCE} account, closing units realising P/L
+ * (the quote currency is taken as the account's) into the balance, and every fill and cancel is a transaction in a
+ * ledger. {@code GET /v3/accounts/{id}} and {@code GET .../changes?sinceTransactionID=N} answer from that ledger like
+ * OANDA: the transactions after N with their {@code accountBalance}, the positions they touched, and NAV and margin
+ * (50:1) at the current synthetic price.
+ *
+ * Point {@code forex.oanda.url} and {@code forex.oanda.streamUrl} at {@link #baseUrl()}.
+ */
+@Slf4j
+public final class OandaStandIn implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong streamed = new AtomicLong();
+    private volatile int ticksPerSecond = 1000;
+    private volatile int dropAfterSeconds;
+    private volatile int stallAfterSeconds;
+    private volatile int garbageEvery;
+    private volatile int heartbeatMillis = 5000;
+    private final AtomicLong garbage = new AtomicLong();
+    private final Map<String, String> lastPrices = new ConcurrentHashMap<>();
+    private volatile double wideSpreadRate;
+    private volatile boolean closed;
+
+    private record PlacedOrder(String id, String state, String fillTransactionId) {
+    }
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private final Map<String, PlacedOrder> orders = new ConcurrentHashMap<>();
+    private final Map<String, String> transactions = new ConcurrentHashMap<>();
+    private final AtomicLong transactionIds = new AtomicLong(1000);
+    private final AtomicLong reusedClientIds = new AtomicLong();
+    private volatile int orderLatencyMs;
+    private volatile double failureRate;
+    private volatile double lostAckRate;
+    private volatile double cancelRate;
+
+    private static final double START_BALANCE = 100_000;
+    private record Tx(String instrument, String json) {
+    }
+
+    private static final class Position {
+        long units;
+        double avgPrice;
+    }
+
+    // account state; ids are allocated and recorded under this lock so a reader never sees an id before its entry
+    private final Object ledgerLock = new Object();
+    private final NavigableMap<Long, Tx> ledger = new TreeMap<>();
+    private final Map<String, Position> positions = new HashMap<>();
+    private double balance = START_BALANCE;
+
+    private OandaStandIn(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the stand-in on localhost; port 0 picks a free port.
+     */
+    public static OandaStandIn start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(32, r -> {
+            Thread t = new Thread(r, "oanda-standin");
+            t.setDaemon(true);
+            return t;
+        });
+        var standIn = new OandaStandIn(server, executor);
+        server.createContext("/v3/instruments/", standIn::candles);
+        server.createContext("/v3/accounts/", standIn::accounts);
+        server.setExecutor(executor);
+        server.start();
+        log.info("OANDA stand-in listening on {}", standIn.baseUrl());
+        return standIn;
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v3";
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    /**
+     * PRICE lines written across all streams so far.
+     */
+    public long streamedTicks() {
+        return streamed.get();
+    }
+
+    /**
+     * Unparseable lines written across all streams so far.
+     */
+    public long garbageLines() {
+        return garbage.get();
+    }
+
+    public OandaStandIn tickRate(int ticksPerSecond) {
+        this.ticksPerSecond = Math.max(1, ticksPerSecond);
+        return this;
+    }
+
+    /**
+     * Ends every pricing stream this many seconds after it opened; 0 keeps streams open.
+     */
+    public OandaStandIn dropStreamsAfter(int seconds) {
+        this.dropAfterSeconds = Math.max(0, seconds);
+        return this;
+    }
+
+    /**
+     * Stops writing anything, heartbeats included, this many seconds after a pricing stream opened, but keeps the
+     * connection open; 0 never stalls.
+     */
+    public OandaStandIn stallStreamsAfter(int seconds) {
+        this.stallAfterSeconds = Math.max(0, seconds);
+        return this;
+    }
+
+    /**
+     * Follows every n-th PRICE line with a truncated one; 0 sends none.
+     */
+    public OandaStandIn garbageEvery(int n) {
+        this.garbageEvery = Math.max(0, n);
+        return this;
+    }
+
+    public OandaStandIn heartbeatMillis(int millis) {
+        this.heartbeatMillis = Math.max(1, millis);
+        return this;
+    }
+
+    /**
+     * Fraction of seconds in which quotes carry five times the usual spread (0.8 pips), to exercise spread gating.
+     */
+    public OandaStandIn wideSpreads(double rate) {
+        this.wideSpreadRate = rate;
+        return this;
+    }
+
+    /**
+     * Fault injection for order and order-lookup calls: mean latency (uniform over 0.5x..1.5x), and the chances of a
+     * 503 before anything is recorded, of a lost acknowledgement after the order is placed, and of a broker cancel.
+     */
+    public OandaStandIn orderFaults(int latencyMs, double failureRate, double lostAckRate, double cancelRate) {
+        this.orderLatencyMs = Math.max(0, latencyMs);
+        this.failureRate = failureRate;
+        this.lostAckRate = lostAckRate;
+        this.cancelRate = cancelRate;
+        return this;
+    }
+
+    /**
+     * Orders recorded per state (FILLED, CANCELLED).
+     */
+    public Map<String, Long> ordersPlaced() {
+        Map<String, Long> byState = new HashMap<>();
+        for (PlacedOrder o : orders.values()) byState.merge(o.state(), 1L, Long::sum);
+        return byState;
+    }
+
+    /**
+     * Net units held in an instrument after all fills so far.
+     */
+    public long position(String instrument) {
+        synchronized (ledgerLock) {
+            Position p = positions.get(instrument);
+            return p == null ? 0 : p.units;
+        }
+    }
+
+    /**
+     * Order submissions refused because their clientExtensions id was already used.
+     */
+    public long reusedClientIds() {
+        return reusedClientIds.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void candles(HttpExchange ex) throws IOException {
+        requests.incrementAndGet();
+        try (ex) {
+            String[] path = ex.getRequestURI().getPath().split("/");
+            // /v3/instruments/{instrument}/candles
+            if (path.length != 5 || !"candles".equals(path[4])) {
+                respond(ex, 404, "{\"errorMessage\":\"Not found\"}");
+                return;
+            }
+            String instrument = path[3];
+            Map<String, String> q = query(ex.getRequestURI().getRawQuery());
+            String granularity = q.getOrDefault("granularity", "S5");
+            long bar = BacktestUtils.granularitySeconds(granularity);
+            if (bar <= 0) {
+                respond(ex, 400, "{\"errorMessage\":\"Invalid granularity\"}");
+                return;
+            }
+            long now = Instant.now().getEpochSecond();
+            long current = Math.floorDiv(now, bar);
+            long last = q.containsKey("to") ? Math.floorDiv(Instant.parse(q.get("to")).getEpochSecond() - 1, bar)
+                : current;
+            long first = q.containsKey("from")
+                ? Math.floorDiv(Instant.parse(q.get("from")).getEpochSecond() + bar - 1, bar)
+                : last - Math.max(1, Integer.parseInt(q.getOrDefault("count", "500"))) + 1;
+            last = Math.min(last, current);
+
+            long seed = instrument.hashCode();
+            double base = instrument.endsWith("JPY") ? 150.0 : 1.1;
+            StringBuilder sb = new StringBuilder(256 + (int) Math.max(0, last - first + 1) * 140);
+            sb.append("{\"instrument\":\"").append(instrument).append("\",\"granularity\":\"").append(granularity)
+              .append("\",\"candles\":[");
+            for (long t = first; t <= last; t++) {
+                double o = price(base, seed, t - 1);
+                double c = price(base, seed, t);
+                double h = Math.max(o, c) * (1 + 0.0002 * unit(seed ^ 0x5bd1e995L, t));
+                double l = Math.min(o, c) * (1 - 0.0002 * unit(seed ^ 0x27d4eb2fL, t));
+                if (t > first) sb.append(',');
+                sb.append("{\"complete\":").append(t < current)
+                  .append(",\"volume\":").append(50 + (long) (100 * unit(seed, t)))
+                  .append(",\"time\":\"").append(Instant.ofEpochSecond(t * bar)).append('"')
+                  .append(",\"mid\":{\"o\":\"").append(fmt(o)).append("\",\"h\":\"").append(fmt(h))
+                  .append("\",\"l\":\"").append(fmt(l)).append("\",\"c\":\"").append(fmt(c)).append("\"}}");
+            }
+            sb.append("]}");
+            respond(ex, 200, sb.toString());
+        } catch (RuntimeException e) {
+            log.warn("OANDA stand-in request failed: {}", e.toString());
+        }
+    }
+
+    private void accounts(HttpExchange ex) throws IOException {
+        requests.incrementAndGet();
+        try (ex) {
+            String path = ex.getRequestURI().getPath();
+            String method = ex.getRequestMethod();
+            if (path.endsWith("/pricing/stream")) {
+                pricingStream(ex);
+            } else if ("GET".equals(method) && path.endsWith("/pricing")) {
+                pricing(ex);
+            } else if ("POST".equals(method) && path.endsWith("/orders")) {
+                placeOrder(ex);
+            } else if ("GET".equals(method) && path.contains("/orders/@")) {
+                orderByClientId(ex, path.substring(path.indexOf("/orders/@") + 9));
+            } else if ("GET".equals(method) && path.endsWith("/changes")) {
+                accountChanges(ex);
+            } else if ("GET".equals(method) && path.split("/").length == 4) {
+                account(ex);
+            } else if ("GET".equals(method) && path.contains("/transactions/")) {
+                String body = transactions.get(path.substring(path.lastIndexOf('/') + 1));
+                if (body == null) respond(ex, 404, "{\"errorMessage\":\"Transaction not found\"}");
+                else respond(ex, 200, body);
+            } else {
+                respond(ex, 404, "{\"errorMessage\":\"Not found\"}");
+            }
+        } catch (RuntimeException e) {
+            log.warn("OANDA stand-in request failed: {}", e.toString());
+        }
+    }
+
+    private void placeOrder(HttpExchange ex) throws IOException {
+        JsonNode order = JSON.readTree(ex.getRequestBody()).path("order");
+        if (injectFault(ex)) return;
+        String clientId = order.path("clientExtensions").path("id").asText(null);
+        String instrument = order.path("instrument").asText("EUR_USD");
+        long units = order.path("units").asLong();
+        boolean cancel = Math.random() < cancelRate;
+        String body;
+        synchronized (ledgerLock) {
+            long orderTx = transactionIds.incrementAndGet();
+            long outcomeTx = transactionIds.incrementAndGet();
+            String orderId = Long.toString(orderTx);
+            String fillId = Long.toString(outcomeTx);
+            var placed = new PlacedOrder(orderId, cancel ? "CANCELLED" : "FILLED", cancel ? null : fillId);
+            if (clientId != null && orders.putIfAbsent(clientId, placed) != null) {
+                body = null;
+            } else {
+                String create = "{\"id\":\"" + orderId + "\",\"type\":\"MARKET_ORDER\",\"instrument\":\"" + instrument
+                    + "\",\"units\":\"" + units + "\"}";
+                if (cancel) {
+                    String cancelTx = "{\"id\":\"" + fillId + "\",\"type\":\"ORDER_CANCEL\",\"orderID\":\"" + orderId
+                        + "\",\"reason\":\"INSUFFICIENT_MARGIN\"}";
+                    ledger.put(outcomeTx, new Tx(instrument, cancelTx));
+                    body = "{\"orderCreateTransaction\":" + create + ",\"orderCancelTransaction\":" + cancelTx + "}";
+                } else {
+                    double half = (instrument.endsWith("JPY") ? 0.008 : 0.00008) / 2;
+                    double price = units >= 0 ? mid(instrument) + half : mid(instrument) - half;
+                    double pl = applyFill(instrument, units, price);
+                    String fill = "{\"id\":\"" + fillId + "\",\"type\":\"ORDER_FILL\",\"orderID\":\"" + orderId
+                        + "\",\"instrument\":\"" + instrument + "\",\"units\":\"" + units + "\",\"price\":\""
+                        + fmt(price) + "\",\"pl\":\"" + money(pl) + "\",\"accountBalance\":\"" + money(balance)
+                        + "\",\"tradeOpened\":{\"tradeID\":\"" + fillId + "\",\"units\":\"" + units + "\"}}";
+                    transactions.put(fillId, "{\"transaction\":" + fill + "}");
+                    ledger.put(outcomeTx, new Tx(instrument, fill));
+                    body = "{\"orderCreateTransaction\":" + create + ",\"orderFillTransaction\":" + fill + "}";
+                }
+            }
+        }
+        if (body == null) {
+            reusedClientIds.incrementAndGet();
+            respond(ex, 400, "{\"orderRejectTransaction\":{\"type\":\"MARKET_ORDER_REJECT\",\"rejectReason\":"
+                + "\"CLIENT_ORDER_ID_ALREADY_EXISTS\"},\"errorCode\":\"CLIENT_ORDER_ID_ALREADY_EXISTS\","
+                + "\"errorMessage\":\"The client Order ID specified is already in use\"}");
+            return;
+        }
+        if (Math.random() < lostAckRate) return; // placed, but the reply never arrives
+        respond(ex, 201, body);
+    }
+
+    private void orderByClientId(HttpExchange ex, String clientId) throws IOException {
+        if (injectFault(ex)) return;
+        PlacedOrder o = orders.get(clientId);
+        if (o == null) {
+            respond(ex, 404, "{\"errorCode\":\"NO_SUCH_ORDER\",\"errorMessage\":\"The order ClientID specified "
+                + "does not exist\"}");
+            return;
+        }
+        String fill = o.fillTransactionId() == null ? ""
+            : ",\"fillingTransactionID\":\"" + o.fillTransactionId() + "\",\"tradeOpenedID\":\""
+                + o.fillTransactionId() + "\"";
+        respond(ex, 200, "{\"order\":{\"id\":\"" + o.id() + "\",\"state\":\"" + o.state() + "\""
+            + fill + ",\"clientExtensions\":{\"id\":\"" + clientId + "\"}}}");
+    }
+
+    // nets a fill into the instrument's position; the units it closes realise P/L into the balance
+    private double applyFill(String instrument, long units, double price) {
+        if (units == 0) return 0;
+        Position p = positions.computeIfAbsent(instrument, k -> new Position());
+        if (p.units == 0 || Long.signum(p.units) == Long.signum(units)) {
+            p.avgPrice = (p.units * p.avgPrice + units * price) / (p.units + units);
+            p.units += units;
+            return 0;
+        }
+        long closed = Long.signum(p.units) * Math.min(Math.abs(units), Math.abs(p.units));
+        double pl = closed * (price - p.avgPrice);
+        balance += pl;
+        p.units -= closed;
+        long opened = units + closed;
+        if (opened != 0) {
+            p.units = opened;
+            p.avgPrice = price;
+        }
+        return pl;
+    }
+
+    private void account(HttpExchange ex) throws IOException {
+        String body;
+        synchronized (ledgerLock) {
+            var sb = new StringBuilder(512).append("{\"account\":{");
+            appendState(sb).append(",\"balance\":\"").append(money(balance)).append("\",\"positions\":[");
+            boolean first = true;
+            for (String instrument : new TreeSet<>(positions.keySet())) {
+                if (!first) sb.append(',');
+                appendPosition(sb, instrument);
+                first = false;
+            }
+            sb.append("],\"lastTransactionID\":\"").append(transactionIds.get()).append("\"},\"lastTransactionID\":\"")
+                .append(transactionIds.get()).append("\"}");
+            body = sb.toString();
+        }
+        respond(ex, 200, body);
+    }
+
+    private void accountChanges(HttpExchange ex) throws IOException {
+        String body;
+        synchronized (ledgerLock) {
+            long since;
+            try {
+                since = Long.parseLong(query(ex.getRequestURI().getRawQuery()).getOrDefault("sinceTransactionID", ""));
+            } catch (NumberFormatException e) {
+                since = -1;
+            }
+            if (since < 0 || since > transactionIds.get()) {
+                body = null;
+            } else {
+                var sb = new StringBuilder(1024).append("{\"changes\":{\"transactions\":[");
+                var touched = new TreeSet<String>();
+                boolean first = true;
+                for (Tx tx : ledger.tailMap(since, false).values()) {
+                    if (!first) sb.append(',');
+                    sb.append(tx.json());
+                    touched.add(tx.instrument());
+                    first = false;
+                }
+                sb.append("],\"positions\":[");
+                first = true;
+                for (String instrument : touched) {
+                    if (!first) sb.append(',');
+                    appendPosition(sb, instrument);
+                    first = false;
+                }
+                sb.append("]},\"state\":{");
+                appendState(sb).append("},\"lastTransactionID\":\"").append(transactionIds.get()).append("\"}");
+                body = sb.toString();
+            }
+        }
+        if (body == null) {
+            respond(ex, 400, "{\"errorCode\":\"INVALID_TRANSACTION_ID\",\"errorMessage\":\"Invalid value specified "
+                + "for 'sinceTransactionID'\"}");
+        } else {
+            respond(ex, 200, body);
+        }
+    }
+
+    // NAV, unrealized P/L and margin at the current price; caller holds ledgerLock
+    private StringBuilder appendState(StringBuilder sb) {
+        double unrealized = 0;
+        double margin = 0;
+        for (var e : positions.entrySet()) {
+            Position p = e.getValue();
+            double mid = mid(e.getKey());
+            unrealized += p.units * (mid - p.avgPrice);
+            margin += Math.abs(p.units) * mid / 50;
+        }
+        double nav = balance + unrealized;
+        return sb.append("\"NAV\":\"").append(money(nav)).append("\",\"unrealizedPL\":\"").append(money(unrealized))
+            .append("\",\"marginUsed\":\"").append(money(margin)).append("\",\"marginAvailable\":\"")
+            .append(money(Math.max(0, nav - margin))).append('"');
+    }
+
+    // OANDA's Position shape: long units positive, short units negative; caller holds ledgerLock
+    private void appendPosition(StringBuilder sb, String instrument) {
+        Position p = positions.get(instrument);
+        long units = p == null ? 0 : p.units;
+        sb.append("{\"instrument\":\"").append(instrument).append("\",\"long\":{\"units\":\"")
+            .append(Math.max(0, units)).append("\"},\"short\":{\"units\":\"").append(Math.min(0, units)).append("\"}}");
+    }
+
+    // sleeps the injected latency; answers 503 (and returns true) for an injected failure
+    private boolean injectFault(HttpExchange ex) throws IOException {
+        int latency = orderLatencyMs;
+        if (latency > 0) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos((long) (latency * (0.5 + Math.random()))));
+        if (Math.random() < failureRate) {
+            respond(ex, 503, "{\"errorMessage\":\"Service unavailable\"}");
+            return true;
+        }
+        return false;
+    }
+
+    private void pricingStream(HttpExchange ex) throws IOException {
+        try {
+            String[] instruments = query(ex.getRequestURI().getRawQuery()).getOrDefault("instruments", "EUR_USD")
+                .split(",");
+            ex.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            ex.sendResponseHeaders(200, 0);
+            var out = new BufferedOutputStream(ex.getResponseBody(), 1 << 16);
+            var line = new StringBuilder(256);
+            long start = System.nanoTime();
+            long deadline = dropAfterSeconds > 0 ? start + TimeUnit.SECONDS.toNanos(dropAfterSeconds) : Long.MAX_VALUE;
+            long stallAt = stallAfterSeconds > 0 ? start + TimeUnit.SECONDS.toNanos(stallAfterSeconds) : Long.MAX_VALUE;
+            long heartbeat = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+            long nextHeartbeat = start + heartbeat;
+            long sent = 0;
+            for (String instrument : instruments) {
+                String last = lastPrices.get(instrument);
+                if (last == null) {
+                    writePrice(out, line, instrument);
+                } else {
+                    writeLine(out, line.append(last));
+                }
+            }
+            out.flush();
+            while (!closed) {
+                long now = System.nanoTime();
+                if (now >= deadline) break;
+                if (now >= stallAt) {
+                    LockSupport.parkNanos(10_000_000);
+                    continue;
+                }
+                long due = (long) ((now - start) / 1e9 * ticksPerSecond) - sent;
+                for (long k = 0; k < due; k++, sent++) {
+                    writePrice(out, line, instruments[(int) (sent % instruments.length)]);
+                    int every = garbageEvery;
+                    if (every > 0 && (sent + 1) % every == 0) {
+                        writeLine(out, line.append("{\"type\":\"PRICE\",\"instrument\":"));
+                        garbage.incrementAndGet();
+                    }
+                }
+                if (now >= nextHeartbeat) {
+                    writeLine(out, line.append("{\"type\":\"HEARTBEAT\",\"time\":\"").append(Instant.now())
+                        .append("\"}"));
+                    nextHeartbeat += heartbeat;
+                }
+                out.flush();
+                LockSupport.parkNanos(1_000_000);
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    private void writePrice(OutputStream out, StringBuilder line, String instrument) throws IOException {
+        appendPrice(line, instrument, Instant.now());
+        lastPrices.put(instrument, line.toString());
+        writeLine(out, line);
+        streamed.incrementAndGet();
+    }
+
+    // GET /v3/accounts/{id}/pricing?instruments=A,B: one PRICE object per instrument, as the stream would send now
+    private void pricing(HttpExchange ex) throws IOException {
+        String[] instruments = query(ex.getRequestURI().getRawQuery()).getOrDefault("instruments", "EUR_USD")
+            .split(",");
+        Instant now = Instant.now();
+        var sb = new StringBuilder(256 * instruments.length).append("{\"time\":\"").append(now)
+            .append("\",\"prices\":[");
+        for (int k = 0; k < instruments.length; k++) {
+            if (k > 0) sb.append(',');
+            appendPrice(sb, instruments[k], now);
+        }
+        respond(ex, 200, sb.append("]}").toString());
+    }
+
+    private void appendPrice(StringBuilder line, String instrument, Instant now) {
+        long seed = instrument.hashCode();
+        double base = instrument.endsWith("JPY") ? 150.0 : 1.1;
+        double mid = price(base, seed, now.getEpochSecond() / 5) * (1 + 0.00002 * (unit(seed, now.getNano()) - 0.5));
+        double half = (instrument.endsWith("JPY") ? 0.008 : 0.00008) / 2;
+        // whole seconds of 5x the usual spread, deterministic per instrument
+        if (unit(seed ^ 0x9e3779b9L, now.getEpochSecond()) < wideSpreadRate) half *= 5;
+        String bid = fmt(mid - half);
+        String ask = fmt(mid + half);
+        line.append("{\"type\":\"PRICE\",\"time\":\"").append(now)
+            .append("\",\"bids\":[{\"price\":\"").append(bid).append("\",\"liquidity\":1000000}]")
+            .append(",\"asks\":[{\"price\":\"").append(ask).append("\",\"liquidity\":1000000}]")
+            .append(",\"closeoutBid\":\"").append(bid).append("\",\"closeoutAsk\":\"").append(ask)
+            .append("\",\"status\":\"tradeable\",\"tradeable\":true,\"instrument\":\"").append(instrument)
+            .append("\"}");
+    }
+
+    private static void writeLine(OutputStream out, StringBuilder line) throws IOException {
+        line.append('\n');
+        out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        line.setLength(0);
+    }
+
+    private static double mid(String instrument) {
+        return price(instrument.endsWith("JPY") ? 150.0 : 1.1, instrument.hashCode(), Instant.now().getEpochSecond() / 5);
+    }
+
+    // a smooth cycle plus bounded noise, so the path is deterministic per bar yet not trivially predictable
+    private static double price(double base, long seed, long t) {
+        double phase = (seed & 0xffff) / 1000.0;
+        return base * Math.exp(0.002 * Math.sin(t / 37.0 + phase) + 0.001 * Math.sin(t / 7.3)
+            + 0.0006 * (2 * unit(seed, t) - 1));
+    }
+
+    // deterministic value in [0, 1) from (seed, t) via the SplitMix64 finalizer
+    private static double unit(long seed, long t) {
+        long z = seed * 0x9E3779B97F4A7C15L + t;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    // fixed 5 decimals; String.format is too slow for the tick stream
+    private static String fmt(double v) {
+        long scaled = Math.round(v * 100_000);
+        String frac = Long.toString(scaled % 100_000);
+        return (scaled / 100_000) + "." + "00000".substring(frac.length()) + frac;
+    }
+
+    private static String money(double v) {
+        return BigDecimal.valueOf(v).setScale(4, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> q = new HashMap<>();
+        if (raw == null) return q;
+        for (String kv : raw.split("&")) {
+            int eq = kv.indexOf('=');
+            if (eq > 0) {
+                q.put(URLDecoder.decode(kv.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(kv.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return q;
+    }
+
+    private static void respond(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.mar.forex.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mar.forex.application.Application;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.config.PropsOverrides;
+import com.mar.forex.domain.model.BacktestSummary;
+import com.mar.forex.domain.model.Candle;
+
+/**
+ * The same configuration backtested concurrently must give exactly the serial result; any difference means runs
+ * share state they should not (the paper engine, calibration bins, the risk engine). The filters are opened up so the
+ * random walk trades, and the model and its calibration tables exist before the first run.
+ */
+@SpringBootTest(classes = Application.class, properties = {
+    "OANDA_API_KEY=test", "OANDA_ACCOUNT_ID=test", "forex.trading.granularity=H1"})
+class HeadlessBacktestConcurrencyTest {
+    private static final int RUNS = 8;
+
+    @MockBean
+    DataService dataService;
+
+    @Autowired
+    HeadlessBacktestService headless;
+
+    @Autowired
+    PropsOverrides propsOverrides;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    SignalService signalService;
+
+    private AppProperties cfg;
+
+    @BeforeAll
+    static void emptyWorkDir() throws Exception {
+        TestWorkDir.reset();
+    }
+
+    @BeforeEach
+    void trainModel() throws Exception {
+        when(dataService.loadCandlesPaged(anyString(), anyString(), anyInt()))
+            .thenAnswer(inv -> randomWalk(inv.<Integer>getArgument(2)));
+        cfg = propsOverrides.snapshot(objectMapper.readTree("""
+            {"execution": {"signalThreshold": 0.0},
+             "filter": {"evMargin": 0.0, "evMarginR": -1.0, "atrPercentile": 0, "session": "00:00-24:00Z",
+                        "rsiLong": 0, "rsiShort": 100}}
+            """));
+        var t = cfg.getTrading();
+        signalService.resolveModel(cfg, dataService.loadCandlesPaged(t.getInstrument(), t.getGranularity(), 5000),
+            t.getInstrument());
+    }
+
+    @Test
+    void concurrentRunsMatchTheSerialResult() throws Exception {
+        BacktestSummary first = headless.run(cfg, "serial", null);
+        assertTrue(first.trades() > 0, "the serial run opened no trades");
+        JsonNode serial = objectMapper.valueToTree(first);
+
+        ExecutorService pool = Executors.newFixedThreadPool(RUNS);
+        try {
+            List<Future<BacktestSummary>> futures = new ArrayList<>(RUNS);
+            for (int i = 0; i < RUNS; i++) {
+                String name = "concurrent-" + i;
+                futures.add(pool.submit(() -> headless.run(cfg, name, null)));
+            }
+            for (int i = 0; i < RUNS; i++) {
+                assertEquals(serial, objectMapper.valueToTree(futures.get(i).get()), "concurrent run " + i);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // hourly bars of a seeded random walk, the same series on every call
+    static List<Candle> randomWalk(int count) {
+        Random rnd = new Random(7);
+        List<Candle> out = new ArrayList<>(count);
+        Instant t = Instant.parse("2024-01-01T00:00:00Z");
+        double price = 1.10;
+        for (int i = 0; i < count; i++) {
+            double open = price;
+            double close = open + rnd.nextGaussian() * 0.001;
+            double high = Math.max(open, close) + Math.abs(rnd.nextGaussian()) * 0.0005;
+            double low = Math.min(open, close) - Math.abs(rnd.nextGaussian()) * 0.0005;
+            out.add(new Candle(t, open, high, low, close, 100 + rnd.nextInt(900)));
+            t = t.plus(Duration.ofHours(1));
+            price = close;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,151 @@
+package com.mar.forex.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import com.mar.forex.application.Application;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.infrastructure.broker.OandaPriceStream;
+import com.mar.forex.infrastructure.broker.OandaStandIn;
+
+/**
+ * The live loop end to end against the {@link OandaStandIn}: bootstrap, bar pickup, scoring and account sync, with
+ * candles polled and with bars built from the pricing stream. Orders stay disabled, so intents are only logged.
+ */
+@SpringBootTest(classes = Application.class, properties = {
+    "OANDA_API_KEY=test", "OANDA_ACCOUNT_ID=test", "forex.live.poll-seconds=1", "forex.live.settle-seconds=0"})
+class LiveSchedulerTest {
+    private static final List<String> INSTRUMENTS = List.of("EUR_USD", "GBP_USD", "USD_JPY");
+    private static final String GRANULARITY = "S5";
+    // the bootstrap scores each instrument's newest bar; two more S5 bars take about ten seconds
+    private static final int SCORED = INSTRUMENTS.size() * 3;
+    private static final OandaStandIn STAND_IN = startStandIn();
+
+    @Autowired
+    LiveScheduler scheduler;
+
+    @Autowired
+    LiveTradingService trading;
+
+    @Autowired
+    LivePipeline pipeline;
+
+    @Autowired
+    AccountState account;
+
+    @Autowired
+    OandaPriceStream priceStream;
+
+    @Autowired
+    DataService data;
+
+    @Autowired
+    MLService ml;
+
+    @Autowired
+    AppProperties props;
+
+    @TempDir
+    Path dir;
+
+    @DynamicPropertySource
+    static void standIn(DynamicPropertyRegistry registry) {
+        registry.add("forex.oanda.url", STAND_IN::baseUrl);
+        registry.add("forex.oanda.stream-url", STAND_IN::baseUrl);
+    }
+
+    @BeforeAll
+    static void emptyWorkDir() throws Exception {
+        TestWorkDir.reset();
+    }
+
+    @BeforeEach
+    void trainModel() throws Exception {
+        if (trading.hasModel()) return;
+        var t = props.getTrading();
+        var tr = ml.trainClassifier(data.loadCandles("EUR_USD", GRANULARITY, 2000), "EUR_USD", t.getFastSma(),
+            t.getSlowSma(), props.getPaper().getAtrPeriod());
+        Path model = dir.resolve("model.zip");
+        ml.save(tr.getModel(), model);
+        trading.loadModel(new FileSystemResource(model));
+        Files.delete(model);
+    }
+
+    @AfterEach
+    void stopScheduler() {
+        scheduler.stop();
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        STAND_IN.close();
+    }
+
+    @Test
+    void pollingScoresNewBarsOfEveryInstrument() throws Exception {
+        long before = pipeline.stats().scored();
+        scheduler.start(INSTRUMENTS, GRANULARITY, "POLL");
+        await(() -> pipeline.stats().scored() - before >= SCORED, 30_000);
+        await(() -> account.snapshot() != null, 5_000);
+        scheduler.stop();
+
+        var stats = scheduler.stats();
+        assertTrue(stats.cycles() > 0);
+        assertEquals(0, pipeline.stats().errors());
+        assertNotNull(account.snapshot());
+    }
+
+    @Test
+    void streamingBuildsBarsFromTicks() throws Exception {
+        STAND_IN.tickRate(200);
+        long before = pipeline.stats().scored();
+        scheduler.start(INSTRUMENTS, GRANULARITY, "STREAM");
+        await(() -> pipeline.stats().scored() - before >= SCORED, 30_000);
+        scheduler.stop();
+
+        assertTrue(priceStream.stats().ticks() > 0);
+        assertEquals(0, priceStream.stats().parseErrors());
+        assertEquals(0, pipeline.stats().errors());
+    }
+
+    @Test
+    void refusesASecondStart() throws Exception {
+        scheduler.start(INSTRUMENTS, GRANULARITY, "POLL");
+        assertThrows(IllegalStateException.class, () -> scheduler.start(INSTRUMENTS, GRANULARITY, "STREAM"));
+        assertTrue(scheduler.isRunning());
+    }
+
+    private static OandaStandIn startStandIn() {
+        try {
+            return OandaStandIn.start(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.mar.forex.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mar.forex.config.AppProperties;
+import com.mar.forex.config.HttpClientConfig;
+import com.mar.forex.config.IoExecutor;
+import com.mar.forex.domain.model.AccountSnapshot;
+import com.mar.forex.domain.model.OrderIntent;
+import com.mar.forex.domain.model.OrderResult;
+import com.mar.forex.infrastructure.broker.OandaClient;
+import com.mar.forex.infrastructure.broker.OandaStandIn;
+
+/**
+ * {@link OrderPipeline} and {@link AccountState} against the {@link OandaStandIn} broker with injected 503s, lost
+ * acknowledgements and cancels: every client id resolves to exactly one outcome, matching the orders the broker
+ * actually holds, and no retry ever places an order twice.
+ */
+class OrderPipelineTest {
+    private static final String INSTRUMENT = "EUR_USD";
+
+    private OandaStandIn standIn;
+    private IoExecutor io;
+    private OrderPipeline pipeline;
+    private AccountState account;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        standIn = OandaStandIn.start(0);
+        AppProperties props = new AppProperties();
+        props.getOanda().setUrl(standIn.baseUrl());
+        props.getOanda().setApiKey("test");
+        props.getOanda().setAccountId("test");
+        // at a 10-20% fault rate, 20 attempts leave an order without a known outcome about once in a million
+        props.getOrders().setMaxAttempts(20);
+        props.getOrders().setRetryBackoffMs(1);
+        props.getAccount().setPollSeconds(1);
+        ObjectMapper mapper = new ObjectMapper();
+        io = new IoExecutor(props);
+        var oanda = new OandaClient(new HttpClientConfig().okHttpClient(io, props), props, mapper);
+        pipeline = new OrderPipeline(oanda, props, io, mapper);
+        account = new AccountState(oanda, props, mapper, pipeline);
+    }
+
+    @AfterEach
+    void tearDown() {
+        account.stop();
+        standIn.close();
+        io.shutdown();
+    }
+
+    @Test
+    void everyPlacedOrderHasExactlyOneOutcome() throws Exception {
+        standIn.orderFaults(5, 0.1, 0.1, 0.05);
+        int count = 500;
+        var rnd = new Random(42);
+        List<OrderIntent> intents = new ArrayList<>();
+        Map<String, CompletableFuture<OrderResult>> first = new HashMap<>();
+        for (int k = 0; k < count; k++) {
+            OrderIntent intent = !intents.isEmpty() && rnd.nextDouble() < 0.1
+                ? intents.get(rnd.nextInt(intents.size()))
+                : new OrderIntent("test-" + k, INSTRUMENT, rnd.nextBoolean() ? 1000 : -1000, null, null);
+            intents.add(intent);
+            var future = pipeline.submit(intent);
+            var earlier = first.putIfAbsent(intent.clientId(), future);
+            if (earlier != null) assertSame(earlier, future, "a duplicate intent shares the first submission");
+        }
+
+        long filled = 0;
+        long cancelled = 0;
+        for (var f : first.values()) {
+            var r = f.get(30, TimeUnit.SECONDS);
+            if (r.status() == OrderResult.Status.FILLED) filled++;
+            else if (r.status() == OrderResult.Status.CANCELLED) cancelled++;
+        }
+        var s = pipeline.stats();
+        var placed = standIn.ordersPlaced();
+        assertEquals(first.size(), s.submitted());
+        assertEquals(count - first.size(), s.duplicateIntents());
+        assertEquals(first.size(), filled + cancelled, "every order reached a known outcome");
+        assertEquals(0, s.unknown());
+        assertEquals(placed.getOrDefault("FILLED", 0L), filled);
+        assertEquals(placed.getOrDefault("CANCELLED", 0L), cancelled);
+        assertTrue(s.recovered() > 0, "lost acknowledgements were resolved by lookup");
+    }
+
+    @Test
+    void lostAcknowledgementsAreLookedUpNotResent() throws Exception {
+        standIn.orderFaults(0, 0, 1.0, 0);
+        List<CompletableFuture<OrderResult>> futures = new ArrayList<>();
+        for (int k = 0; k < 20; k++) {
+            futures.add(pipeline.submit(new OrderIntent("lost-" + k, INSTRUMENT, 1000, null, null)));
+        }
+        for (var f : futures) assertEquals(OrderResult.Status.FILLED, f.get(30, TimeUnit.SECONDS).status());
+
+        assertEquals(20, pipeline.stats().recovered());
+        // a resent POST (OkHttp may retry a dropped connection) is refused as a reused client id, never placed twice
+        assertEquals(Map.of("FILLED", 20L), standIn.ordersPlaced());
+        assertEquals(20_000, standIn.position(INSTRUMENT));
+    }
+
+    @Test
+    void serverErrorsBeforePlacementAreRetried() throws Exception {
+        standIn.orderFaults(0, 0.2, 0, 0);
+        List<CompletableFuture<OrderResult>> futures = new ArrayList<>();
+        for (int k = 0; k < 50; k++) {
+            futures.add(pipeline.submit(new OrderIntent("err-" + k, INSTRUMENT, -1000, null, null)));
+        }
+        for (var f : futures) assertEquals(OrderResult.Status.FILLED, f.get(30, TimeUnit.SECONDS).status());
+
+        assertTrue(pipeline.stats().retries() > 0);
+        assertEquals(Map.of("FILLED", 50L), standIn.ordersPlaced());
+        assertEquals(-50_000, standIn.position(INSTRUMENT));
+    }
+
+    @Test
+    void accountPositionFollowsTheBroker() throws Exception {
+        standIn.orderFaults(5, 0.1, 0.1, 0.05);
+        account.start();
+        var rnd = new Random(7);
+        List<CompletableFuture<OrderResult>> futures = new ArrayList<>();
+        for (int k = 0; k < 100; k++) {
+            futures.add(pipeline.submit(new OrderIntent("acct-" + k, INSTRUMENT, rnd.nextBoolean() ? 1000 : -2000,
+                null, null)));
+        }
+        for (var f : futures) f.get(30, TimeUnit.SECONDS);
+
+        // the last fill queued a refresh; allow a couple of polls for it to land
+        long deadline = System.currentTimeMillis() + 5_000;
+        AccountSnapshot acct = account.snapshot();
+        while ((acct == null || acct.position(INSTRUMENT) != standIn.position(INSTRUMENT))
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            acct = account.snapshot();
+        }
+        assertEquals(standIn.position(INSTRUMENT), acct == null ? 0 : acct.position(INSTRUMENT));
+    }
+}
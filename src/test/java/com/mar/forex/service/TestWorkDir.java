@@ -0,0 +1,28 @@
+package com.mar.forex.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * The model, calibration and data files the services resolve against the working directory. Test classes that train
+ * or load them start from an empty directory, so no class sees another's model or calibration tables.
+ */
+final class TestWorkDir {
+    private static final String[] DIRS = {"models", "data", "results"};
+
+    private TestWorkDir() {
+    }
+
+    static void reset() throws IOException {
+        for (String dir : DIRS) {
+            Path root = Path.of(dir);
+            if (!Files.exists(root)) continue;
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+            }
+        }
+    }
+}